@@ -0,0 +1,57 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * CatalogPriceLookup reading the catalog from the app assets.
+ *
+ * The snapshot is memory mapped when the asset is stored uncompressed and read into
+ * memory otherwise.
+ */
+public class AssetPriceLookup extends CatalogPriceLookup {
+
+    public AssetPriceLookup(Context context) {
+        super(new AssetSource(context.getApplicationContext()));
+    }
+
+    private static final class AssetSource implements Source {
+        private final Context context;
+
+        AssetSource(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public byte[] readJson() throws IOException {
+            try {
+                return CatalogSnapshotWriter.readFully(context.getAssets().open(CATALOG_JSON));
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public ByteBuffer readSnapshot() throws IOException {
+            AssetFileDescriptor descriptor;
+            try {
+                descriptor = context.getAssets().openFd(CATALOG_SNAPSHOT);
+            } catch (FileNotFoundException e) {
+                // Compressed assets have no file descriptor, read them instead
+                return ByteBuffer.wrap(CatalogSnapshotWriter.readFully(context.getAssets().open(CATALOG_SNAPSHOT)));
+            }
+            try (FileInputStream in = descriptor.createInputStream()) {
+                // The mapping stays valid after the channel is closed
+                return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        descriptor.getStartOffset(), descriptor.getLength());
+            } finally {
+                descriptor.close();
+            }
+        }
+    }
+}
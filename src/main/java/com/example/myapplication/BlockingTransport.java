@@ -0,0 +1,126 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport that runs every request on its own blocking socket and executor thread
+ */
+public class BlockingTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger("BlockingTransport");
+
+    private final String serverIP;
+    private final int serverPort;
+    private final ExecutorService executor;
+    private final TransportStats stats = new TransportStats();
+
+    /**
+     * Constructor, requests run on a cached thread pool
+     */
+    public BlockingTransport(String serverIP, int serverPort) {
+        this(serverIP, serverPort, Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "MasterClient-io");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Constructor
+     * @param executor Executor the blocking socket exchanges run on
+     */
+    public BlockingTransport(String serverIP, int serverPort, ExecutorService executor) {
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Object> send(final String requestType, final Object[] params, final int readTimeoutMs) {
+        final Call future = new Call();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                Socket socket = new Socket();
+                future.setSocket(socket);
+                try {
+                    socket.connect(new InetSocketAddress(serverIP, serverPort));
+                    socket.setSoTimeout(readTimeoutMs);
+                    ObjectOutputStream out = new ObjectOutputStream(stats.count(socket.getOutputStream()));
+                    out.flush();
+                    ObjectInputStream in = new ObjectInputStream(stats.count(socket.getInputStream()));
+
+                    out.writeObject(requestType);
+                    for (Object param : params) {
+                        out.writeObject(param);
+                    }
+                    out.flush();
+                    Object response = in.readObject();
+                    stats.requestCompleted();
+                    future.complete(response);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    closeQuietly(socket);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor was shut down
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return Wire cost of the requests sent so far, for comparison with SessionTransport
+     */
+    public TransportStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Error closing socket", e);
+        }
+    }
+
+    /**
+     * Future of a running request, cancelling it closes the request socket
+     */
+    private static final class Call extends CompletableFuture<Object> {
+        private volatile Socket socket;
+
+        void setSocket(Socket socket) {
+            this.socket = socket;
+            if (isCancelled()) {
+                closeQuietly(socket);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            closeQuietly(socket);
+            return cancelled;
+        }
+    }
+}
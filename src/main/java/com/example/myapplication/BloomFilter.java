@@ -0,0 +1,97 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * Bloom filter of string keys, built by the master and sent to the client.
+ *
+ * mightContain() never returns false for a key that was put, so a false answer
+ * means the key is certainly unknown. Keys are trimmed and lower-cased first,
+ * which only makes the filter match more keys, never fewer. The hash is defined
+ * here rather than taken from String.hashCode, so a filter built by one JVM
+ * answers the same on another.
+ */
+public class BloomFilter implements Serializable {
+    private static final long serialVersionUID = 2792631455367108960L;
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    private int keyCount;
+
+    /**
+     * @param bitCount Size of the filter in bits
+     * @param hashCount Bits set per key
+     */
+    public BloomFilter(int bitCount, int hashCount) {
+        if (bitCount <= 0 || hashCount <= 0) {
+            throw new IllegalArgumentException("bitCount and hashCount must be positive");
+        }
+        this.bits = new long[(bitCount + 63) / 64];
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Size a filter for the expected number of keys and false positive rate
+     */
+    public static BloomFilter create(int expectedKeys, double falsePositiveRate) {
+        int keys = Math.max(expectedKeys, 1);
+        int bitCount = (int) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * Math.log(2)));
+        return new BloomFilter(Math.max(bitCount, 64), hashCount);
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        keyCount++;
+    }
+
+    /**
+     * @return False if the key was certainly never put
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * @return Size of the filter in bytes
+     */
+    public int getSizeBytes() {
+        return bits.length * 8;
+    }
+
+    /**
+     * @return False positive rate expected for the number of keys put
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * keyCount / bitCount), hashCount);
+    }
+
+    /**
+     * Hash of the normalized key
+     */
+    private static long hash(String key) {
+        return KeyHash.hash(key.trim().toLowerCase(Locale.ROOT));
+    }
+}
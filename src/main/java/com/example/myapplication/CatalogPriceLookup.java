@@ -0,0 +1,137 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * PriceLookup backed by the store catalog, wherever it is stored.
+ *
+ * The catalog is loaded once, from the store.bin snapshot that CatalogSnapshotWriter
+ * compiles from store.json at build time. If the snapshot is missing, of another format
+ * version or compiled from a different store.json, store.json is parsed instead.
+ *
+ * Only depends on the JDK. The app reads the catalog from its assets with
+ * AssetPriceLookup, on a plain JVM fromFiles() reads it from disk.
+ */
+public class CatalogPriceLookup implements PriceLookup {
+    private static final Logger LOG = Logger.getLogger("CatalogPriceLookup");
+
+    static final String CATALOG_JSON = "store.json";
+    static final String CATALOG_SNAPSHOT = "store.bin";
+
+    /**
+     * Where the catalog files are read from
+     */
+    public interface Source {
+        /**
+         * @return The bytes of store.json, or null if there is none
+         */
+        byte[] readJson() throws IOException;
+
+        /**
+         * @return The store.bin snapshot, mapped or read into memory
+         */
+        ByteBuffer readSnapshot() throws IOException;
+    }
+
+    private final Source source;
+    private CatalogSnapshot catalog;
+    private boolean loaded;
+
+    public CatalogPriceLookup(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Catalog read from store.json and store.bin in a directory, the snapshot memory mapped
+     */
+    public static CatalogPriceLookup fromFiles(final File directory) {
+        return new CatalogPriceLookup(new Source() {
+            @Override
+            public byte[] readJson() throws IOException {
+                File json = new File(directory, CATALOG_JSON);
+                return json.exists() ? CatalogSnapshotWriter.readFully(new FileInputStream(json)) : null;
+            }
+
+            @Override
+            public ByteBuffer readSnapshot() throws IOException {
+                try (FileInputStream in = new FileInputStream(new File(directory, CATALOG_SNAPSHOT))) {
+                    // The mapping stays valid after the channel is closed
+                    return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.getChannel().size());
+                }
+            }
+        });
+    }
+
+    /**
+     * Load the catalog before the first priced response arrives
+     */
+    @Override
+    public void warmUp() {
+        catalog();
+    }
+
+    /**
+     * @return The catalog, loaded on first use, or null if there is none
+     */
+    public CatalogSnapshot getCatalog() {
+        return catalog();
+    }
+
+    // Βοηθητική μέθοδος για εύρεση τιμής προϊόντος από τον κατάλογο
+    @Override
+    public double getPrice(String storeName, String productName) {
+        CatalogSnapshot current = catalog();
+        // Αν δεν βρεθεί τιμή, επιστρέφει 0
+        return current != null ? current.getPrice(storeName, productName) : 0.0;
+    }
+
+    private synchronized CatalogSnapshot catalog() {
+        if (!loaded) {
+            loaded = true;
+            long start = System.nanoTime();
+            catalog = load();
+            LOG.fine("Catalog loaded in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        return catalog;
+    }
+
+    private CatalogSnapshot load() {
+        // Only read, not parsed, to check that the snapshot is up to date
+        byte[] json = null;
+        try {
+            json = source.readJson();
+            if (json == null) {
+                LOG.fine("No " + CATALOG_JSON + " in the catalog");
+            }
+        } catch (IOException e) {
+            LOG.fine("Cannot read " + CATALOG_JSON + ": " + e.getMessage());
+        }
+
+        try {
+            CatalogSnapshot snapshot = CatalogSnapshot.read(source.readSnapshot());
+            if (json == null || snapshot.getSourceCrc() == CatalogSnapshotWriter.checksum(json)) {
+                return snapshot;
+            }
+            LOG.fine("Catalog snapshot is out of date, falling back to " + CATALOG_JSON);
+        } catch (IOException | RuntimeException e) {
+            // A damaged mapped file may also fail with a runtime exception, e.g. on a truncated read
+            LOG.fine("No usable catalog snapshot, falling back to " + CATALOG_JSON + ": " + e);
+        }
+
+        if (json == null) {
+            return null;
+        }
+        try {
+            return CatalogSnapshot.read(ByteBuffer.wrap(CatalogSnapshotWriter.compile(json)));
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error parsing " + CATALOG_JSON, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Read-only view of the binary store catalog written by CatalogSnapshotWriter.
+ *
+ * Layout, big endian:
+ *
+ *   header    int magic, int version, long sourceCrc, int stringCount, int storeCount,
+ *             int productCount, int reserved
+ *   stores    storeCount records of STORE_RECORD bytes:
+ *             int name, int category, int logo, int reviews, int firstProduct, int productCount,
+ *             double latitude, double longitude, double stars
+ *   products  productCount records of PRODUCT_RECORD bytes:
+ *             int name, int type, int available, int reserved, double price
+ *   strings   (stringCount + 1) int offsets into the string data, then the UTF-8 string data
+ *
+ * Strings are referenced by their index in the string table. The buffer may be memory
+ * mapped: records are read in place and strings are decoded the first time they are used.
+ *
+ * read() checks the counts and the string offsets against the buffer, so a damaged
+ * snapshot fails with an IOException up front rather than with an index out of bounds later.
+ */
+public class CatalogSnapshot {
+    public static final int MAGIC = 0x43534E50; // "CSNP"
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+    static final int STORE_RECORD = 48;
+    static final int PRODUCT_RECORD = 24;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final long sourceCrc;
+    private final int storeCount;
+    private final int productCount;
+    private final int productsStart;
+    private final int offsetsStart;
+    private final int stringsStart;
+    private final String[] strings;
+
+    // Lower case store name to store index, built on first lookup
+    private HashMap<String, Integer> storeIndex;
+
+    private CatalogSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalog snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported catalog snapshot version " + version);
+        }
+        this.sourceCrc = buffer.getLong(8);
+        int stringCount = buffer.getInt(16);
+        this.storeCount = buffer.getInt(20);
+        this.productCount = buffer.getInt(24);
+        if (stringCount < 0 || storeCount < 0 || productCount < 0) {
+            throw new IOException("Catalog snapshot has negative counts");
+        }
+        // In long, counts near Integer.MAX_VALUE would overflow an int
+        long products = HEADER_SIZE + (long) storeCount * STORE_RECORD;
+        long offsets = products + (long) productCount * PRODUCT_RECORD;
+        long data = offsets + (stringCount + 1L) * 4;
+        if (data > buffer.limit()) {
+            throw new IOException("Catalog snapshot is truncated");
+        }
+        this.productsStart = (int) products;
+        this.offsetsStart = (int) offsets;
+        this.stringsStart = (int) data;
+        checkStringOffsets(stringCount);
+        this.strings = new String[stringCount];
+    }
+
+    /**
+     * The offsets must start at 0, never decrease and end inside the buffer
+     */
+    private void checkStringOffsets(int stringCount) throws IOException {
+        int previous = 0;
+        for (int i = 0; i <= stringCount; i++) {
+            int offset = buffer.getInt(offsetsStart + i * 4);
+            if ((i == 0 && offset != 0) || offset < previous) {
+                throw new IOException("Catalog snapshot has invalid string offset " + offset + " at " + i);
+            }
+            previous = offset;
+        }
+        if ((long) stringsStart + previous > buffer.limit()) {
+            throw new IOException("Catalog snapshot is truncated");
+        }
+    }
+
+    /**
+     * @param buffer Snapshot bytes, e.g. a mapped file; it is not copied
+     */
+    public static CatalogSnapshot read(ByteBuffer buffer) throws IOException {
+        return new CatalogSnapshot(buffer);
+    }
+
+    /**
+     * @return CRC32 of the store.json the snapshot was compiled from
+     */
+    public long getSourceCrc() {
+        return sourceCrc;
+    }
+
+    public int getStoreCount() {
+        return storeCount;
+    }
+
+    public int getProductCount() {
+        return productCount;
+    }
+
+    public String getStoreName(int store) {
+        return string(buffer.getInt(storeRecord(store)));
+    }
+
+    public String getStoreCategory(int store) {
+        return string(buffer.getInt(storeRecord(store) + 4));
+    }
+
+    public String getStoreLogo(int store) {
+        return string(buffer.getInt(storeRecord(store) + 8));
+    }
+
+    public int getStoreReviews(int store) {
+        return buffer.getInt(storeRecord(store) + 12);
+    }
+
+    public double getStoreLatitude(int store) {
+        return buffer.getDouble(storeRecord(store) + 24);
+    }
+
+    public double getStoreLongitude(int store) {
+        return buffer.getDouble(storeRecord(store) + 32);
+    }
+
+    public double getStoreStars(int store) {
+        return buffer.getDouble(storeRecord(store) + 40);
+    }
+
+    /**
+     * @return Index of the first product of the store, its products are consecutive
+     */
+    public int getFirstProduct(int store) {
+        return buffer.getInt(storeRecord(store) + 16);
+    }
+
+    public int getStoreProductCount(int store) {
+        return buffer.getInt(storeRecord(store) + 20);
+    }
+
+    public String getProductName(int product) {
+        return string(buffer.getInt(productRecord(product)));
+    }
+
+    public String getProductType(int product) {
+        return string(buffer.getInt(productRecord(product) + 4));
+    }
+
+    public int getProductAvailable(int product) {
+        return buffer.getInt(productRecord(product) + 8);
+    }
+
+    public double getProductPrice(int product) {
+        return buffer.getDouble(productRecord(product) + 16);
+    }
+
+    /**
+     * @return Index of the store, ignoring case, or -1
+     */
+    public synchronized int findStore(String storeName) {
+        if (storeIndex == null) {
+            storeIndex = new HashMap<>(storeCount * 2);
+            for (int i = 0; i < storeCount; i++) {
+                storeIndex.put(getStoreName(i).toLowerCase(Locale.ROOT), i);
+            }
+        }
+        Integer store = storeIndex.get(storeName.toLowerCase(Locale.ROOT));
+        return store != null ? store : -1;
+    }
+
+    /**
+     * @return Price of a product of a store, ignoring case, or 0 if it is not in the catalog
+     */
+    public double getPrice(String storeName, String productName) {
+        int store = findStore(storeName);
+        if (store < 0) {
+            return 0.0;
+        }
+        int first = getFirstProduct(store);
+        int end = first + getStoreProductCount(store);
+        for (int product = first; product < end; product++) {
+            if (productName.equalsIgnoreCase(getProductName(product))) {
+                return getProductPrice(product);
+            }
+        }
+        return 0.0;
+    }
+
+    private int storeRecord(int store) {
+        if (store < 0 || store >= storeCount) {
+            throw new IndexOutOfBoundsException("Store " + store);
+        }
+        return HEADER_SIZE + store * STORE_RECORD;
+    }
+
+    private int productRecord(int product) {
+        if (product < 0 || product >= productCount) {
+            throw new IndexOutOfBoundsException("Product " + product);
+        }
+        return productsStart + product * PRODUCT_RECORD;
+    }
+
+    private synchronized String string(int index) {
+        if (index < 0 || index >= strings.length) {
+            throw new IndexOutOfBoundsException("String " + index);
+        }
+        String value = strings[index];
+        if (value == null) {
+            int start = buffer.getInt(offsetsStart + index * 4);
+            int end = buffer.getInt(offsetsStart + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer data = buffer.duplicate();
+            data.position(stringsStart + start);
+            data.get(bytes);
+            value = StringPool.intern(new String(bytes, UTF_8));
+            strings[index] = value;
+        }
+        return value;
+    }
+}
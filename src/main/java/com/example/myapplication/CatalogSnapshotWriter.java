@@ -0,0 +1,163 @@
+package com.example.myapplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compiles the store.json catalog into the binary CatalogSnapshot format.
+ *
+ * Run at build time, before the assets are packaged, through CatalogSnapshotTool in
+ * the test sources, which does not ship in the app.
+ *
+ * The snapshot records the CRC32 of the JSON it was compiled from, so the app can tell
+ * when it is out of date. The app also uses compile() itself when it has to fall back
+ * to the JSON file.
+ */
+public final class CatalogSnapshotWriter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CatalogSnapshotWriter() {
+    }
+
+    /**
+     * @return CRC32 of the catalog JSON, as stored in the snapshot header
+     */
+    public static long checksum(byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json, 0, json.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Compile the catalog JSON to a snapshot
+     */
+    public static byte[] compile(byte[] json) throws IOException, ParseException {
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(json), UTF_8);
+        JSONArray stores = (JSONArray) new JSONParser().parse(reader);
+        return compile(stores, checksum(json));
+    }
+
+    static byte[] compile(JSONArray stores, long sourceCrc) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream storeBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream productBytes = new ByteArrayOutputStream();
+        DataOutputStream storeOut = new DataOutputStream(storeBytes);
+        DataOutputStream productOut = new DataOutputStream(productBytes);
+
+        int productCount = 0;
+        for (Object storeObj : stores) {
+            JSONObject store = (JSONObject) storeObj;
+            JSONArray products = (JSONArray) store.get("Products");
+            int firstProduct = productCount;
+            if (products != null) {
+                for (Object productObj : products) {
+                    JSONObject product = (JSONObject) productObj;
+                    productOut.writeInt(strings.add(text(product.get("ProductName"))));
+                    productOut.writeInt(strings.add(text(product.get("ProductType"))));
+                    productOut.writeInt((int) number(product.get("Available Amount")));
+                    productOut.writeInt(0);
+                    productOut.writeDouble(number(product.get("Price")));
+                    productCount++;
+                }
+            }
+            storeOut.writeInt(strings.add(text(store.get("StoreName"))));
+            storeOut.writeInt(strings.add(text(store.get("FoodCategory"))));
+            storeOut.writeInt(strings.add(text(store.get("StoreLogo"))));
+            storeOut.writeInt((int) number(store.get("NoOfVotes")));
+            storeOut.writeInt(firstProduct);
+            storeOut.writeInt(productCount - firstProduct);
+            storeOut.writeDouble(number(store.get("Latitude")));
+            storeOut.writeDouble(number(store.get("Longitude")));
+            storeOut.writeDouble(number(store.get("Stars")));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CatalogSnapshot.HEADER_SIZE
+                + storeBytes.size() + productBytes.size() + strings.data.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CatalogSnapshot.MAGIC);
+        out.writeInt(CatalogSnapshot.VERSION);
+        out.writeLong(sourceCrc);
+        out.writeInt(strings.offsets.size() - 1);
+        out.writeInt(stores.size());
+        out.writeInt(productCount);
+        out.writeInt(0);
+        storeBytes.writeTo(out);
+        productBytes.writeTo(out);
+        for (int offset : strings.offsets) {
+            out.writeInt(offset);
+        }
+        strings.data.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(in.available(), 4096));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String text(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                // Same as a missing value
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Deduplicated strings, stored once as UTF-8 and referenced by index
+     */
+    private static final class StringTable {
+        final HashMap<String, Integer> indexes = new HashMap<>();
+        final ArrayList<Integer> offsets = new ArrayList<>();
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        StringTable() {
+            offsets.add(0);
+        }
+
+        int add(String value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                byte[] bytes = value.getBytes(UTF_8);
+                data.write(bytes, 0, bytes.length);
+                index = offsets.size() - 1;
+                offsets.add(data.size());
+                indexes.put(value, index);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Approximate sales of one product category, small enough to send in a single reply.
+ *
+ * Workers keep one sketch per category and add every purchase to it as it lands, the
+ * master merges the sketches of its workers. Quantities per store and per product are
+ * count-min estimates, distinct customers per store HyperLogLog estimates and purchase
+ * amounts a t-digest. The size grows with the number of stores, not with the number
+ * of purchases: about 400 KB for 350 stores, however long the history.
+ * Each estimate comes with its error bound.
+ */
+public class CategorySketch implements Serializable {
+    private static final long serialVersionUID = 1630188065920831199L;
+
+    // Quantity estimates exceed the truth by at most 0.1% of the total, failing with probability 0.7%
+    private static final double RELATIVE_ERROR = 0.001;
+    private static final double FAILURE_PROBABILITY = 0.007;
+    private static final int TRACKED_KEYS = 64;
+    // 512 registers per store, 4.6% standard error
+    private static final int CUSTOMER_PRECISION = 9;
+    private static final double SPEND_COMPRESSION = 100;
+
+    private final String category;
+    private final CountMinSketch storeSales;
+    private final CountMinSketch productSales;
+    private final HashMap<String, HyperLogLog> customersByStore;
+    private final TDigest spend;
+
+    public CategorySketch(String category) {
+        this.category = category;
+        this.storeSales = CountMinSketch.create(RELATIVE_ERROR, FAILURE_PROBABILITY, TRACKED_KEYS);
+        this.productSales = CountMinSketch.create(RELATIVE_ERROR, FAILURE_PROBABILITY, TRACKED_KEYS);
+        this.customersByStore = new HashMap<>();
+        this.spend = new TDigest(SPEND_COMPRESSION);
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * Count the products of the category in a purchase from a store
+     */
+    public void add(String storeName, Purchase purchase) {
+        double amount = 0;
+        boolean matched = false;
+        for (Product product : purchase.getPurchasedProducts()) {
+            if (!category.equalsIgnoreCase(product.getCategory())) {
+                continue;
+            }
+            matched = true;
+            storeSales.add(storeName, product.getQuantity());
+            productSales.add(product.getName(), product.getQuantity());
+            amount += product.getPrice() * product.getQuantity();
+        }
+        if (!matched) {
+            return;
+        }
+        HyperLogLog customers = customersByStore.get(storeName);
+        if (customers == null) {
+            customers = new HyperLogLog(CUSTOMER_PRECISION);
+            customersByStore.put(storeName, customers);
+        }
+        if (purchase.getCustomerEmail() != null) {
+            customers.add(purchase.getCustomerEmail().trim().toLowerCase(Locale.ROOT));
+        }
+        spend.add(amount);
+    }
+
+    /**
+     * Add the sales of another sketch of the same category
+     * @return This sketch
+     */
+    public CategorySketch merge(CategorySketch other) {
+        storeSales.merge(other.storeSales);
+        productSales.merge(other.productSales);
+        for (Map.Entry<String, HyperLogLog> entry : other.customersByStore.entrySet()) {
+            HyperLogLog customers = customersByStore.get(entry.getKey());
+            if (customers == null) {
+                customersByStore.put(entry.getKey(), entry.getValue());
+            } else {
+                customers.merge(entry.getValue());
+            }
+        }
+        spend.merge(other.spend);
+        return this;
+    }
+
+    /**
+     * Rank the stores by estimated quantity. The total is exact, the store quantities
+     * may exceed the truth by up to getQuantityErrorBound().
+     */
+    public TopKResult topStores(TopKRequest request) {
+        HashMap<String, Integer> estimates = new HashMap<>();
+        for (Map.Entry<String, Long> entry : storeSales.getHeavyHitters()) {
+            estimates.put(entry.getKey(), (int) Math.min(entry.getValue(), Integer.MAX_VALUE));
+        }
+        TopKResult ranked = TopKSelector.select(estimates, request);
+        String[] storeNames = new String[ranked.size()];
+        int[] quantities = new int[ranked.size()];
+        for (int i = 0; i < ranked.size(); i++) {
+            storeNames[i] = ranked.getStoreName(i);
+            quantities[i] = ranked.getQuantity(i);
+        }
+        return new TopKResult(storeNames, quantities, (int) storeSales.getTotalCount(), ranked.getMatchingStores());
+    }
+
+    /**
+     * @return The best selling products with their estimated quantities
+     */
+    public List<Map.Entry<String, Long>> topProducts() {
+        return productSales.getHeavyHitters();
+    }
+
+    public long estimateStoreQuantity(String storeName) {
+        return storeSales.estimate(storeName);
+    }
+
+    public long estimateProductQuantity(String productName) {
+        return productSales.estimate(productName);
+    }
+
+    /**
+     * @return How much a quantity estimate may exceed the truth, with probability getConfidence()
+     */
+    public long getQuantityErrorBound() {
+        return storeSales.getErrorBound();
+    }
+
+    public double getConfidence() {
+        return 1 - storeSales.getFailureProbability();
+    }
+
+    /**
+     * @return Estimated distinct customers of the store, within about getCustomerRelativeError()
+     */
+    public long estimateDistinctCustomers(String storeName) {
+        HyperLogLog customers = customersByStore.get(storeName);
+        return customers != null ? customers.estimate() : 0;
+    }
+
+    public double getCustomerRelativeError() {
+        return 1.04 / Math.sqrt(1 << CUSTOMER_PRECISION);
+    }
+
+    /**
+     * @param q Quantile of the purchase amounts, 0.5 for the median
+     */
+    public double spendQuantile(double q) {
+        return spend.quantile(q);
+    }
+
+    /**
+     * @return Number of purchases with products of the category
+     */
+    public long getPurchaseCount() {
+        return spend.size();
+    }
+
+    public long getTotalQuantity() {
+        return storeSales.getTotalCount();
+    }
+
+    @Override
+    public String toString() {
+        return "CategorySketch{" +
+                "category='" + category + '\'' +
+                ", purchases=" + getPurchaseCount() +
+                ", quantity=" + getTotalQuantity() +
+                ", stores=" + customersByStore.size() +
+                ", error=±" + getQuantityErrorBound() +
+                '}';
+    }
+}
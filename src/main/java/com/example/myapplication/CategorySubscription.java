@@ -0,0 +1,274 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Live view of the sales of one category.
+ *
+ * Sends the REQUEST_SUBSCRIBE_CATEGORY request and keeps the connection open. The master
+ * answers with the current sales map and then pushes a SalesDelta whenever purchases of
+ * the category land. The subscription applies the deltas to its own salesByStore map and
+ * total, so the full map is only sent once.
+ *
+ * With a coalescing interval the listener is called at most once per interval with the
+ * state after all deltas received so far; without one it is called for every delta.
+ * If the connection drops or a delta is missing, the subscription reconnects and starts
+ * again from a new snapshot, backing off up to MAX_RETRY_DELAY_MS between attempts.
+ *
+ * A connection can also die without being closed, e.g. when the network changes. The
+ * master sends a heartbeat delta every HEARTBEAT_INTERVAL_MS, and a connection that
+ * stays silent for READ_TIMEOUT_MS is taken for dead and reconnected. A master that
+ * sends no heartbeats only costs a reconnect after that long without sales.
+ */
+public class CategorySubscription {
+    private static final Logger LOG = Logger.getLogger("CategorySubscription");
+
+    public static final String REQUEST_SUBSCRIBE_CATEGORY = "subscribeCategory";
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    // Expected from the master while a category has no sales
+    public static final int HEARTBEAT_INTERVAL_MS = 30000;
+    // Several heartbeats missed in a row
+    private static final int READ_TIMEOUT_MS = 3 * HEARTBEAT_INTERVAL_MS;
+    private static final long FIRST_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 30000;
+
+    // Shared timer for coalesced notifications
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "CategorySubscription-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Receives the sales of the category, on the subscription or timer thread
+     */
+    public interface Listener {
+        /**
+         * @param salesByStore Copy of the current quantity per store
+         * @param totalSales Sum of the quantities
+         */
+        void onSalesChanged(HashMap<String, Integer> salesByStore, int totalSales);
+
+        /**
+         * The master does not support subscriptions, nothing more will be delivered
+         */
+        void onSubscriptionFailed(Throwable error);
+    }
+
+    private final String serverIP;
+    private final int serverPort;
+    private final String category;
+    private final long coalesceMs;
+    private final int readTimeoutMs;
+    private final Listener listener;
+
+    // Materialized state, guarded by this
+    private final HashMap<String, Integer> salesByStore = new HashMap<>();
+    private int totalSales;
+    private long lastSequence;
+    private boolean notificationScheduled;
+
+    private long retryDelay = FIRST_RETRY_DELAY_MS;
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private Thread thread;
+
+    /**
+     * @param coalesceMs Minimum time between listener calls, 0 to call it for every delta
+     */
+    public CategorySubscription(String serverIP, int serverPort, String category, long coalesceMs,
+                                Listener listener) {
+        this(serverIP, serverPort, category, coalesceMs, READ_TIMEOUT_MS, listener);
+    }
+
+    /**
+     * @param readTimeoutMs Silence after which the connection is taken for dead
+     */
+    CategorySubscription(String serverIP, int serverPort, String category, long coalesceMs, int readTimeoutMs,
+                         Listener listener) {
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+        this.category = category;
+        this.coalesceMs = coalesceMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.listener = listener;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public synchronized void start() {
+        if (thread == null && !closed) {
+            thread = new Thread(this::run, "CategorySubscription-" + category);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop receiving updates and close the connection
+     */
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                subscribe();
+            } catch (ProtocolException | ClassNotFoundException e) {
+                // Not a subscription stream, retrying would not help
+                if (!closed) {
+                    LOG.log(Level.FINE, "Subscription to " + category + " not supported", e);
+                    listener.onSubscriptionFailed(e);
+                }
+                return;
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                LOG.log(Level.FINE, "Subscription to " + category + " dropped", e);
+            }
+            long delay;
+            synchronized (this) {
+                delay = retryDelay;
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * One connection: read the snapshot, then apply deltas until the connection ends
+     */
+    private void subscribe() throws IOException, ClassNotFoundException {
+        Socket newSocket = new Socket();
+        socket = newSocket;
+        try {
+            if (closed) {
+                return;
+            }
+            newSocket.connect(new InetSocketAddress(serverIP, serverPort), CONNECT_TIMEOUT_MS);
+            // A read blocked longer than this throws SocketTimeoutException and the subscription reconnects
+            newSocket.setSoTimeout(readTimeoutMs);
+            newSocket.setKeepAlive(true);
+            ObjectOutputStream out = new ObjectOutputStream(newSocket.getOutputStream());
+            out.writeObject(REQUEST_SUBSCRIBE_CATEGORY);
+            out.writeObject(category);
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(newSocket.getInputStream()));
+
+            Object snapshot = in.readObject();
+            if (!(snapshot instanceof HashMap)) {
+                throw new ProtocolException("Unexpected response from server");
+            }
+            @SuppressWarnings("unchecked")
+            HashMap<String, Integer> initial = (HashMap<String, Integer>) snapshot;
+            applySnapshot(initial);
+
+            while (!closed) {
+                Object message = in.readObject();
+                if (!(message instanceof SalesDelta)) {
+                    throw new ProtocolException("Unexpected message from server: " + message);
+                }
+                if (((SalesDelta) message).isHeartbeat()) {
+                    continue;
+                }
+                if (!applyDelta((SalesDelta) message)) {
+                    // A delta is missing, start over from a new snapshot
+                    return;
+                }
+            }
+        } finally {
+            closeQuietly(newSocket);
+        }
+    }
+
+    private void applySnapshot(HashMap<String, Integer> sales) {
+        synchronized (this) {
+            // Connected fine, the next drop is retried quickly again
+            retryDelay = FIRST_RETRY_DELAY_MS;
+            salesByStore.clear();
+            totalSales = 0;
+            for (Map.Entry<String, Integer> entry : sales.entrySet()) {
+                salesByStore.put(StringPool.intern(entry.getKey()), entry.getValue());
+                totalSales += entry.getValue();
+            }
+            lastSequence = 0;
+        }
+        // A new snapshot is shown at once
+        notifyListener();
+    }
+
+    /**
+     * @return False if the delta does not follow the previous one
+     */
+    private boolean applyDelta(SalesDelta delta) {
+        synchronized (this) {
+            if (delta.getSequence() != lastSequence + 1) {
+                LOG.fine("Expected delta " + (lastSequence + 1) + " but got " + delta.getSequence());
+                return false;
+            }
+            lastSequence = delta.getSequence();
+            for (Map.Entry<String, Integer> change : delta.getChanges().entrySet()) {
+                String store = StringPool.intern(change.getKey());
+                Integer quantity = salesByStore.get(store);
+                salesByStore.put(store, (quantity != null ? quantity : 0) + change.getValue());
+                totalSales += change.getValue();
+            }
+            if (coalesceMs > 0) {
+                if (!notificationScheduled) {
+                    notificationScheduled = true;
+                    TIMER.schedule(this::notifyListener, coalesceMs, TimeUnit.MILLISECONDS);
+                }
+                return true;
+            }
+        }
+        notifyListener();
+        return true;
+    }
+
+    private void notifyListener() {
+        HashMap<String, Integer> copy;
+        int total;
+        synchronized (this) {
+            notificationScheduled = false;
+            copy = new HashMap<>(salesByStore);
+            total = totalSales;
+        }
+        if (!closed) {
+            listener.onSalesChanged(copy, total);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Error closing socket", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Count-min sketch of string keys, with the heaviest keys tracked by name.
+ *
+ * estimate() never returns less than the true count, and exceeds it by more than
+ * getErrorBound() only with probability getFailureProbability(). Sketches with the
+ * same dimensions are merged by adding their counters, so every worker can count
+ * its own purchases and the master adds the sketches up.
+ *
+ * The counters alone cannot list their keys, so the sketch also keeps the
+ * trackedKeys keys with the highest estimates seen so far.
+ */
+public class CountMinSketch implements Serializable {
+    private static final long serialVersionUID = -1866079035922648259L;
+
+    private final long[] counts;
+    private final int width;
+    private final int depth;
+    private final int trackedKeys;
+    private final HashMap<String, Long> tracked;
+    // Lowest estimate among the tracked keys, may lag behind as their counts grow
+    private long lightestTracked;
+    private long totalCount;
+
+    /**
+     * @param width Counters per row, the error bound is e / width of the total count
+     * @param depth Rows, the bound fails with probability e^-depth
+     * @param trackedKeys Number of heaviest keys kept by name
+     */
+    public CountMinSketch(int width, int depth, int trackedKeys) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        this.counts = new long[width * depth];
+        this.width = width;
+        this.depth = depth;
+        this.trackedKeys = trackedKeys;
+        this.tracked = new HashMap<>();
+    }
+
+    /**
+     * Size a sketch for a relative error and failure probability
+     * @param relativeError Error bound as a fraction of the total count
+     */
+    public static CountMinSketch create(double relativeError, double failureProbability, int trackedKeys) {
+        int width = (int) Math.ceil(Math.E / relativeError);
+        int depth = (int) Math.ceil(Math.log(1 / failureProbability));
+        return new CountMinSketch(width, Math.max(depth, 1), trackedKeys);
+    }
+
+    public void add(String key, long count) {
+        long hash = KeyHash.hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+            counts[index] += count;
+            estimate = Math.min(estimate, counts[index]);
+        }
+        totalCount += count;
+        track(key, estimate);
+    }
+
+    /**
+     * @return Count of the key, never below the true count
+     */
+    public long estimate(String key) {
+        long hash = KeyHash.hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * width + ((h1 + row * h2) & Integer.MAX_VALUE) % width]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Add the counts of another sketch of the same dimensions
+     * @return This sketch
+     */
+    public CountMinSketch merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Sketch dimensions differ");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        // Keys heavy in either sketch, estimated again over the merged counters
+        ArrayList<String> keys = new ArrayList<>(tracked.keySet());
+        keys.addAll(other.tracked.keySet());
+        tracked.clear();
+        lightestTracked = 0;
+        for (String key : keys) {
+            track(key, estimate(key));
+        }
+        return this;
+    }
+
+    /**
+     * @return The tracked keys with their estimates, heaviest first
+     */
+    public List<Map.Entry<String, Long>> getHeavyHitters() {
+        ArrayList<Map.Entry<String, Long>> entries = new ArrayList<>(tracked.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries;
+    }
+
+    /**
+     * @return Sum of all counts added, exact
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return How much an estimate may exceed the true count, with probability 1 - getFailureProbability()
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * totalCount);
+    }
+
+    public double getFailureProbability() {
+        return Math.exp(-depth);
+    }
+
+    /**
+     * @return Size of the counters in bytes
+     */
+    public int getSizeBytes() {
+        return counts.length * 8;
+    }
+
+    private void track(String key, long estimate) {
+        if (trackedKeys <= 0) {
+            return;
+        }
+        if (tracked.containsKey(key) || tracked.size() < trackedKeys) {
+            tracked.put(key, estimate);
+            return;
+        }
+        if (estimate <= lightestTracked) {
+            return;
+        }
+        // Replace the lightest tracked key if this one is heavier
+        String lightest = null;
+        long lightestCount = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : tracked.entrySet()) {
+            if (entry.getValue() < lightestCount) {
+                lightest = entry.getKey();
+                lightestCount = entry.getValue();
+            }
+        }
+        lightestTracked = lightestCount;
+        if (estimate > lightestCount) {
+            tracked.remove(lightest);
+            tracked.put(key, estimate);
+        }
+    }
+}
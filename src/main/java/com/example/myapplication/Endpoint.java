@@ -0,0 +1,84 @@
+package com.example.myapplication;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Address of one master, with the health and load the router tracks for it
+ */
+public class Endpoint {
+    private static final long FIRST_DOWN_MS = 1000;
+    private static final long MAX_DOWN_MS = 30000;
+
+    private final String host;
+    private final int port;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // Health, guarded by this
+    private int consecutiveFailures;
+    private long downUntil;
+
+    public Endpoint(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param address "host:port"
+     */
+    public static Endpoint parse(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException("Expected host:port but got " + address);
+        }
+        return new Endpoint(address.substring(0, colon).trim(), Integer.parseInt(address.substring(colon + 1).trim()));
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return Requests sent to this master that have not completed
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    void requestStarted() {
+        outstanding.incrementAndGet();
+    }
+
+    void requestFinished() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * @return False while the master is marked down after failures
+     */
+    public synchronized boolean isHealthy() {
+        return System.currentTimeMillis() >= downUntil;
+    }
+
+    synchronized void succeeded() {
+        consecutiveFailures = 0;
+        downUntil = 0;
+    }
+
+    /**
+     * Mark the master down, for longer after each consecutive failure
+     */
+    synchronized void failed() {
+        consecutiveFailures++;
+        long downMs = Math.min(FIRST_DOWN_MS << Math.min(consecutiveFailures - 1, 16), MAX_DOWN_MS);
+        downUntil = System.currentTimeMillis() + downMs;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
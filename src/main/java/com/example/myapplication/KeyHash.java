@@ -0,0 +1,29 @@
+package com.example.myapplication;
+
+/**
+ * 64-bit hash of string keys for the Bloom filter, the sketches and the routing ring.
+ * Defined here rather than taken from String.hashCode, so a structure built by one
+ * JVM answers the same on another.
+ */
+final class KeyHash {
+
+    private KeyHash() {
+    }
+
+    /**
+     * FNV-1a over the characters, finished with the MurmurHash3 mixer
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
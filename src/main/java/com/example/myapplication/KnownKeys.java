@@ -0,0 +1,48 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+
+/**
+ * Bloom filters of the product categories and customer emails the master knows,
+ * published in answer to the knownKeys request
+ */
+public class KnownKeys implements Serializable {
+    private static final long serialVersionUID = -5959201653286390074L;
+
+    private BloomFilter categories;
+    private BloomFilter customerEmails;
+    private long publishedAt;
+
+    /**
+     * Constructor
+     * @param categories Every product category that has sales
+     * @param customerEmails Every customer email that has a purchase
+     * @param publishedAt Time the filters were built, in milliseconds since the epoch
+     */
+    public KnownKeys(BloomFilter categories, BloomFilter customerEmails, long publishedAt) {
+        this.categories = categories;
+        this.customerEmails = customerEmails;
+        this.publishedAt = publishedAt;
+    }
+
+    public BloomFilter getCategories() {
+        return categories;
+    }
+
+    public BloomFilter getCustomerEmails() {
+        return customerEmails;
+    }
+
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "KnownKeys{" +
+                "categories=" + (categories != null ? categories.getKeyCount() : 0) +
+                ", customerEmails=" + (customerEmails != null ? customerEmails.getKeyCount() : 0) +
+                ", publishedAt=" + publishedAt +
+                '}';
+    }
+}
@@ -1,12 +1,12 @@
 package com.example.myapplication;
 
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.ListView;
@@ -14,7 +14,14 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Main activity class for the application
@@ -29,28 +36,29 @@ public class MainActivity extends AppCompatActivity {
     private Button btnViewCategory;
     private Button btnViewCustomerPurchases;
     private EditText etCustomerEmail;
-    private EditText etProductCategory;
+    private AutoCompleteTextView etProductCategory;
+    private CheckBox cbApproximate;
     private EditText etCustomerName;
-    private EditText etStoreName;
+    private AutoCompleteTextView etStoreName;
     private TextView tvPurchaseInfo;
     private LinearLayout listViewHeader;
+    private TextView tvHeaderStore;
+    private TextView tvHeaderCategory;
+    private TextView tvHeaderQuantity;
+    private TextView tvHeaderAmount;
     private MyAdapter adapter;
-    private ArrayList<Product> productList;
-    private Handler handler;
     private ProgressBar progressBar;
+    private RequestViewModel viewModel;
 
-    // Server connection details
-    private static final String SERVER_IP = "192.168.56.1"; // Master server IP address
-    private static final int SERVER_PORT = 4321;            // Master server port
+    // Master servers, host:port entries of R.array.master_endpoints
+    private List<Endpoint> masters;
 
-    // Message types
-    public static final int MSG_ERROR = 0;
-    public static final int MSG_PRODUCT_CATEGORY = 1;
-    public static final int MSG_PURCHASE = 2;
-    public static final int MSG_CONNECTION_ERROR = 3;
+    // Category view shows the best selling stores only
+    private static final int CATEGORY_TOP_K = 10;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
@@ -59,16 +67,24 @@ public class MainActivity extends AppCompatActivity {
         // Initialize UI components
         initializeUIComponents();
 
-        // Initialize product list and adapter
-        productList = new ArrayList<>();
-        adapter = new MyAdapter(this, productList);
+        // Requests and their results are retained across configuration changes
+        viewModel = new ViewModelProvider(this).get(RequestViewModel.class);
+        masters = readMasters();
+        viewModel.init(this, masters);
+
+        // Initialize adapter over the retained product list
+        adapter = new MyAdapter(this, viewModel.getRows());
         purchaseListView.setAdapter(adapter);
+        purchaseListView.setOnScrollListener(viewModel.getPagedLoader());
 
-        // Initialize handler to update UI from background thread
-        initializeHandler();
+        // Suggest catalog names while typing, so a typo does not cost a round trip
+        etProductCategory.setAdapter(new SuggestionAdapter(this, viewModel, PrefixIndex.Kind.CATEGORY));
+        etStoreName.setAdapter(new SuggestionAdapter(this, viewModel, PrefixIndex.Kind.STORE));
 
         // Set click listeners for buttons
         setupButtonListeners();
+        setupHeaderListeners();
+        showRowOrder(viewModel.getRowOrder());
 
         // Restore state if available
         if (savedInstanceState != null) {
@@ -87,6 +103,27 @@ public class MainActivity extends AppCompatActivity {
                 etCustomerEmail.setText(savedInstanceState.getString("customerEmail"));
             }
         }
+
+        // Show the rows kept by the view model, unless purchase info was restored above
+        if (!viewModel.getRows().isEmpty() && tvPurchaseInfo.getVisibility() != View.VISIBLE) {
+            showList();
+        }
+        if (viewModel.isLoading()) {
+            showProgressBar();
+        }
+
+        // Receive results, including those that arrived while the activity was recreated
+        viewModel.attach(requestListener);
+
+        // Connect and load classes in the background before the first click
+        viewModel.startWarmUp(SystemClock.elapsedRealtime() - createStart);
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Results are kept by the view model until the next activity attaches
+        viewModel.detach(requestListener);
+        super.onDestroy();
     }
 
     @Override
@@ -131,12 +168,17 @@ public class MainActivity extends AppCompatActivity {
         btnConnect = findViewById(R.id.btnConnect);
         btnViewCategory = findViewById(R.id.btnViewPurchase); // Αναφορά στο υπάρχον ID, θα αλλάξουμε τη λειτουργία
         etProductCategory = findViewById(R.id.etProductCategory);
+        cbApproximate = findViewById(R.id.cbApproximate);
         etCustomerEmail = findViewById(R.id.etCustomerEmail);
         etCustomerName = findViewById(R.id.etCustomerName);
         etStoreName = findViewById(R.id.etStoreName);
         btnViewCustomerPurchases = findViewById(R.id.btnViewCustomerPurchases);
         tvPurchaseInfo = findViewById(R.id.tvPurchaseInfo);
         listViewHeader = findViewById(R.id.listViewHeader);
+        tvHeaderStore = findViewById(R.id.tvHeaderStore);
+        tvHeaderCategory = findViewById(R.id.tvHeaderCategory);
+        tvHeaderQuantity = findViewById(R.id.tvHeaderQuantity);
+        tvHeaderAmount = findViewById(R.id.tvHeaderAmount);
         progressBar = findViewById(R.id.progressBar);
 
         // Αλλαγή κειμένων κουμπιών ώστε να αντανακλούν τη νέα λειτουργικότητα
@@ -144,51 +186,6 @@ public class MainActivity extends AppCompatActivity {
         btnViewCategory.setText("Προβολή Κατηγορίας Προϊόντος");
     }
 
-    /**
-     * Initialize handler for communication with background threads
-     */
-    private void initializeHandler() {
-        Log.d(TAG, "Initializing handler");
-
-        handler = new Handler(Looper.getMainLooper()) {
-            @Override
-            public void handleMessage(Message msg) {
-                Log.d(TAG, "Handler received message, type: " + msg.what);
-                hideProgressBar();
-
-                switch (msg.what) {
-                    case MSG_PRODUCT_CATEGORY: // Product category data
-                        Log.d(TAG, "Handler processing product category message");
-                        handleProductCategoryResponse(msg);
-                        break;
-
-                    case MSG_PURCHASE: // Purchase data
-                        Log.d(TAG, "Handler processing purchase message");
-                        handlePurchaseResponse(msg);
-                        break;
-
-                    case MSG_ERROR: // Error
-                        Log.d(TAG, "Handler processing error message");
-                        handleErrorResponse(msg);
-                        break;
-
-                    case MSG_CONNECTION_ERROR: // Connection error
-                        Log.d(TAG, "Handler processing connection error message");
-                        handleConnectionError(msg);
-                        break;
-
-                    case MyThread.MSG_CUSTOMER_PURCHASES:
-                        handleCustomerPurchasesResponse(msg);
-                        break;
-
-                    default:
-                        Log.d(TAG, "Unknown message type: " + msg.what);
-                        break;
-                }
-            }
-        };
-    }
-
     /**
      * Set up click listeners for buttons
      */
@@ -204,10 +201,8 @@ public class MainActivity extends AppCompatActivity {
                     Log.d(TAG, "Requesting last purchase for email: " + customerEmail);
                     showProgressBar();
 
-                    // Start thread to connect to server for the last purchase data
-                    MyThread thread = new MyThread(handler, SERVER_IP, SERVER_PORT,
-                            MyThread.REQUEST_LAST_PURCHASE, customerEmail);
-                    thread.start();
+                    // Ask the server for the last purchase data
+                    viewModel.loadLastPurchase(customerEmail);
                     Toast.makeText(MainActivity.this, "Λήψη τελευταίας αγοράς...", Toast.LENGTH_SHORT).show();
                 } else {
                     Log.d(TAG, "Customer email field is empty");
@@ -225,10 +220,9 @@ public class MainActivity extends AppCompatActivity {
                     Log.d(TAG, "Requesting product category data for: " + productCategory);
                     showProgressBar();
 
-                    // Start thread to connect to server for product category data
-                    MyThread thread = new MyThread(handler, SERVER_IP, SERVER_PORT,
-                            MyThread.REQUEST_PRODUCT_CATEGORY, productCategory);
-                    thread.start();
+                    // Ask the server for the top stores of the category
+                    viewModel.loadCategory(new TopKRequest(productCategory, CATEGORY_TOP_K, true, 0),
+                            cbApproximate.isChecked());
                     Toast.makeText(MainActivity.this, "Σύνδεση με διακομιστή...", Toast.LENGTH_SHORT).show();
                 } else {
                     Log.d(TAG, "Product category field is empty");
@@ -244,10 +238,10 @@ public class MainActivity extends AppCompatActivity {
                 String storeName = etStoreName.getText().toString().trim();
                 if (!customerName.isEmpty() && !storeName.isEmpty()) {
                     showProgressBar();
-                    String param = customerName + ";" + storeName;
-                    MyThread thread = new MyThread(handler, SERVER_IP, SERVER_PORT,
-                            MyThread.REQUEST_CUSTOMER_PURCHASES_BY_STORE, param);
-                    thread.start();
+
+                    // Purchases are loaded page by page while the list is scrolled
+                    viewModel.loadCustomerPurchases(customerName, storeName);
+                    purchaseListView.setOnScrollListener(viewModel.getPagedLoader());
                     Toast.makeText(MainActivity.this, "Ανάκτηση αγορών πελάτη...", Toast.LENGTH_SHORT).show();
                 } else {
                     Toast.makeText(MainActivity.this, "Συμπλήρωσε όνομα πελάτη και κατάστημα", Toast.LENGTH_SHORT).show();
@@ -257,54 +251,119 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Handle product category response
-     * @param msg Message containing product category data
+     * Sort the list by a header column. Tapping the sorted column again reverses it,
+     * a long tap on the category column groups the rows by category with subtotals.
      */
-    private void handleProductCategoryResponse(Message msg) {
-        Log.d(TAG, "Handling product category response");
+    private void setupHeaderListeners() {
+        // Names sort A to Z first, numbers largest first
+        tvHeaderStore.setOnClickListener(v -> sortBy(RowSorter.SortKey.STORE_NAME, false));
+        tvHeaderCategory.setOnClickListener(v -> sortBy(RowSorter.SortKey.CATEGORY, false));
+        tvHeaderQuantity.setOnClickListener(v -> sortBy(RowSorter.SortKey.QUANTITY, true));
+        tvHeaderAmount.setOnClickListener(v -> sortBy(RowSorter.SortKey.AMOUNT, true));
+        tvHeaderCategory.setOnLongClickListener(v -> {
+            RowSorter.Order current = viewModel.getRowOrder();
+            RowSorter.Order order = current != null
+                    ? new RowSorter.Order(current.getKey(), current.isDescending(), !current.isGroupByCategory())
+                    : new RowSorter.Order(RowSorter.SortKey.QUANTITY, true, true);
+            viewModel.sortRows(order);
+            showRowOrder(order);
+            return true;
+        });
+    }
 
-        try {
-            // Update UI with received products
-            @SuppressWarnings("unchecked")
-            ArrayList<Product> receivedProducts = (ArrayList<Product>) msg.obj;
+    private void sortBy(RowSorter.SortKey key, boolean descendingFirst) {
+        RowSorter.Order current = viewModel.getRowOrder();
+        RowSorter.Order order;
+        if (current != null && current.getKey() == key) {
+            order = current.reversed();
+        } else {
+            order = new RowSorter.Order(key, descendingFirst, current != null && current.isGroupByCategory());
+        }
+        Log.d(TAG, "Sorting rows by " + order);
+        viewModel.sortRows(order);
+        showRowOrder(order);
+    }
 
-            if (receivedProducts == null) {
-                Log.e(TAG, "Received products list is null");
-                Toast.makeText(this, "Δεν ελήφθησαν δεδομένα", Toast.LENGTH_SHORT).show();
-                return;
-            }
+    /**
+     * Mark the sorted column of the header with its direction
+     */
+    private void showRowOrder(RowSorter.Order order) {
+        RowSorter.SortKey key = order != null ? order.getKey() : null;
+        String arrow = order != null && order.isDescending() ? " ▼" : " ▲";
+        tvHeaderStore.setText("Κατάστημα" + (key == RowSorter.SortKey.STORE_NAME ? arrow : ""));
+        tvHeaderCategory.setText("Κατηγορία" + (key == RowSorter.SortKey.CATEGORY ? arrow : ""));
+        tvHeaderQuantity.setText("Ποσότητα" + (key == RowSorter.SortKey.QUANTITY ? arrow : ""));
+        tvHeaderAmount.setText("Ποσό" + (key == RowSorter.SortKey.AMOUNT ? arrow : ""));
+    }
 
-            Log.d(TAG, "Received " + receivedProducts.size() + " products");
+    /**
+     * Receives the results of the view model requests
+     */
+    private final RequestViewModel.Listener requestListener = new RequestViewModel.Listener() {
+        @Override
+        public void onCategoryLoaded(int storeCount, boolean complete, long errorBound) {
+            hideProgressBar();
+            handleProductCategoryResponse(storeCount, complete, errorBound);
+        }
 
-            // Clear existing list and add new products
-            productList.clear();
-            productList.addAll(receivedProducts);
+        @Override
+        public void onCategoryUpdated(int storeCount) {
             adapter.notifyDataSetChanged();
+        }
 
-            // Update UI visibility
-            tvPurchaseInfo.setVisibility(View.GONE);
-            purchaseListView.setVisibility(View.VISIBLE);
-            listViewHeader.setVisibility(View.VISIBLE);
+        @Override
+        public void onPageLoaded(boolean firstPage, int shift) {
+            hideProgressBar();
+            handlePageResponse(shift);
+        }
 
-            Toast.makeText(MainActivity.this,
-                    "Ελήφθησαν " + (receivedProducts.size()-1) + " καταστήματα",
-                    Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            Log.e(TAG, "Error in handleProductCategoryResponse: " + e.getMessage(), e);
-            Toast.makeText(this, "Σφάλμα επεξεργασίας δεδομένων: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        @Override
+        public void onPurchaseLoaded(Purchase purchase) {
+            hideProgressBar();
+            handlePurchaseResponse(purchase);
+        }
+
+        @Override
+        public void onRowsSorted(RowSorter.Order order) {
+            adapter.notifyDataSetChanged();
+        }
+
+        @Override
+        public void onRequestFailed(Throwable error) {
+            hideProgressBar();
+            handleErrorResponse(error);
         }
+    };
+
+    /**
+     * Handle product category response
+     * @param storeCount Number of store rows, the view model list also holds the total row
+     * @param complete False if some workers did not answer in time
+     * @param errorBound Largest overestimate of the quantities, 0 when they are exact
+     */
+    private void handleProductCategoryResponse(int storeCount, boolean complete, long errorBound) {
+        Log.d(TAG, "Handling product category response");
+
+        // Category rows are not paged
+        purchaseListView.setOnScrollListener(null);
+        adapter.notifyDataSetChanged();
+        showList();
+
+        Toast.makeText(MainActivity.this,
+                "Ελήφθησαν " + storeCount + " καταστήματα"
+                        + (errorBound > 0 ? " (εκτίμηση, έως +" + errorBound + " τεμάχια)" : "")
+                        + (complete ? "" : " (μερικά αποτελέσματα, κάποιοι workers δεν απάντησαν)"),
+                Toast.LENGTH_SHORT).show();
     }
 
     /**
      * Handle purchase response
-     * @param msg Message containing purchase data
+     * @param purchase Purchase received from the server
      */
-    private void handlePurchaseResponse(Message msg) {
+    private void handlePurchaseResponse(Purchase purchase) {
         Log.d(TAG, "Handling purchase response");
 
         try {
-            // Get the purchase from the message
-            Purchase purchase = (Purchase) msg.obj;
             if (purchase == null) {
                 Log.e(TAG, "Purchase object is null!");
                 Toast.makeText(this, "Δεν βρέθηκαν στοιχεία αγοράς", Toast.LENGTH_SHORT).show();
@@ -375,19 +434,18 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Handle customer purchases response
-     * @param msg Message containing customer purchases data
+     * Handle one page of a paged response, the page rows are already in the view model list
      */
-    private void handleCustomerPurchasesResponse(Message msg) {
-        @SuppressWarnings("unchecked")
-        ArrayList<Product> purchases = (ArrayList<Product>) msg.obj;
-        productList.clear();
-        if (purchases != null && !purchases.isEmpty()) {
-            productList.addAll(purchases);
-            adapter.notifyDataSetChanged();
-            purchaseListView.setVisibility(View.VISIBLE);
-            listViewHeader.setVisibility(View.VISIBLE);
-            tvPurchaseInfo.setVisibility(View.GONE);
+    private void handlePageResponse(int shift) {
+        // Keep the same rows in view when pages were added or dropped above them
+        int first = purchaseListView.getFirstVisiblePosition();
+        View top = purchaseListView.getChildAt(0);
+        adapter.notifyDataSetChanged();
+        if (shift != 0 && viewModel.getRowOrder() == null) {
+            purchaseListView.setSelectionFromTop(Math.max(0, first + shift), top != null ? top.getTop() : 0);
+        }
+        if (!viewModel.getRows().isEmpty()) {
+            showList();
         } else {
             tvPurchaseInfo.setText("Δεν βρέθηκαν αγορές για αυτόν τον πελάτη στο κατάστημα.");
             tvPurchaseInfo.setVisibility(View.VISIBLE);
@@ -396,33 +454,69 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Show the product list and hide the purchase info
+     */
+    private void showList() {
+        tvPurchaseInfo.setVisibility(View.GONE);
+        purchaseListView.setVisibility(View.VISIBLE);
+        listViewHeader.setVisibility(View.VISIBLE);
+    }
+
     /**
      * Handle error response
-     * @param msg Message containing error information
+     * @param error Failure of the request
      */
-    private void handleErrorResponse(Message msg) {
+    private void handleErrorResponse(Throwable error) {
         Log.d(TAG, "Handling error response");
 
-        String errorMessage = (String) msg.obj;
-        Log.e(TAG, "Error received: " + errorMessage);
+        if (error instanceof ConnectException) {
+            // The master could not be reached at all
+            handleConnectionError("Αδυναμία σύνδεσης με τον διακομιστή: " + error.getMessage());
+            return;
+        }
+
+        String errorMessage;
+        if (error instanceof SocketTimeoutException || error instanceof TimeoutException) {
+            errorMessage = "Λήξη χρόνου σύνδεσης. Παρακαλώ δοκιμάστε ξανά.";
+        } else if (error instanceof ProtocolException) {
+            errorMessage = error.getMessage();
+        } else if (error instanceof ClassNotFoundException) {
+            errorMessage = "Data format error: " + error.getMessage();
+        } else if (error instanceof IOException) {
+            errorMessage = "Network error: " + error.getMessage();
+        } else {
+            errorMessage = error.getMessage();
+        }
+        Log.e(TAG, "Error received: " + errorMessage, error);
         Toast.makeText(MainActivity.this, "Σφάλμα: " + errorMessage, Toast.LENGTH_LONG).show();
     }
 
+    /**
+     * Read the master addresses from the resources
+     */
+    private List<Endpoint> readMasters() {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String address : getResources().getStringArray(R.array.master_endpoints)) {
+            endpoints.add(Endpoint.parse(address));
+        }
+        return endpoints;
+    }
+
     /**
      * Handle connection error
-     * @param msg Message containing connection error information
+     * @param errorMessage Connection error information
      */
-    private void handleConnectionError(Message msg) {
+    private void handleConnectionError(String errorMessage) {
         Log.d(TAG, "Handling connection error");
 
-        String errorMessage = (String) msg.obj;
         Log.e(TAG, "Connection error: " + errorMessage);
         Toast.makeText(MainActivity.this, errorMessage, Toast.LENGTH_LONG).show();
 
         // Display detailed error message
         tvPurchaseInfo.setText("Σφάλμα Σύνδεσης\n\n" + errorMessage +
                 "\n\nΠαρακαλώ ελέγξτε τη σύνδεση και τις ρυθμίσεις του διακομιστή." +
-                "\n\nΔιακομιστής: " + SERVER_IP + ":" + SERVER_PORT);
+                "\n\nΔιακομιστές: " + masters);
         tvPurchaseInfo.setVisibility(View.VISIBLE);
         purchaseListView.setVisibility(View.GONE);
         listViewHeader.setVisibility(View.GONE);
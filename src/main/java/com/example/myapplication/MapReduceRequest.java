@@ -8,6 +8,9 @@ import java.util.List;
  * Request class for server communication, containing filter parameters
  */
 public class MapReduceRequest implements Serializable {
+    // UID of the class before the deadline and cancel token, so requests still decode on older
+    // masters and workers, which leave the new fields at 0 and null
+    private static final long serialVersionUID = 3573589831040265664L;
 
     private double clientLatitude;
     private double clientLongitude;
@@ -16,6 +19,8 @@ public class MapReduceRequest implements Serializable {
     private String priceCategory;
     private double radius;
     private String requestId;
+    private long deadline;
+    private String cancelToken;
 
     /**
      * Default constructor
@@ -40,6 +45,21 @@ public class MapReduceRequest implements Serializable {
         this.requestId = requestId;
     }
 
+    /**
+     * Copy constructor, the copy gets its own list of categories
+     */
+    MapReduceRequest(MapReduceRequest other) {
+        this.clientLatitude = other.clientLatitude;
+        this.clientLongitude = other.clientLongitude;
+        this.foodCategories = other.foodCategories != null ? new ArrayList<>(other.foodCategories) : null;
+        this.minStars = other.minStars;
+        this.priceCategory = other.priceCategory;
+        this.radius = other.radius;
+        this.requestId = other.requestId;
+        this.deadline = other.deadline;
+        this.cancelToken = other.cancelToken;
+    }
+
     // Getters and Setters
     public double getClientLatitude() {
         return clientLatitude;
@@ -97,6 +117,35 @@ public class MapReduceRequest implements Serializable {
         this.requestId = requestId;
     }
 
+    /**
+     * @return Time in epoch milliseconds after which nobody reads the answer, 0 for none
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return Token the master and workers look the work up by when the client cancels it
+     */
+    public String getCancelToken() {
+        return cancelToken;
+    }
+
+    public void setCancelToken(String cancelToken) {
+        this.cancelToken = cancelToken;
+    }
+
+    /**
+     * @return True once the deadline has passed, work on the request is wasted from then on
+     */
+    public boolean isExpired() {
+        return deadline > 0 && System.currentTimeMillis() > deadline;
+    }
+
     @Override
     public String toString() {
         return "MapReduceRequest{" +
@@ -107,6 +156,8 @@ public class MapReduceRequest implements Serializable {
                 ", priceCategory='" + priceCategory + '\'' +
                 ", radius=" + radius +
                 ", requestId='" + requestId + '\'' +
+                ", deadline=" + deadline +
+                ", cancelToken='" + cancelToken + '\'' +
                 '}';
     }
 }
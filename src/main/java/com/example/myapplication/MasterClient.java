@@ -0,0 +1,919 @@
+package com.example.myapplication;
+
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client of the master server. Every request returns a typed CompletableFuture,
+ * so requests can be combined (e.g. a category and a last purchase query run in
+ * parallel and joined with thenCombine), bounded with withTimeout and cancelled.
+ * Cancelling a future returned by this class aborts its exchange.
+ *
+ * Requests go through a Transport, by default a NioTransport that serves all
+ * requests in flight from one selector thread. Responses are mapped to their
+ * typed results off the transport thread.
+ *
+ * Category and last purchase lookups first ask the NegativeCache, which answers
+ * keys the master certainly does not know without a round trip.
+ *
+ * The class only depends on the JDK, so it can be used and tested on a plain JVM.
+ * UiDelivery brings the results back to the Android main thread.
+ */
+public class MasterClient {
+    private static final Logger LOG = Logger.getLogger("MasterClient");
+
+    // Constants for request types
+    public static final String REQUEST_PRODUCT_CATEGORY = "productCategory";
+    public static final String REQUEST_PRODUCT_CATEGORY_TOP_K = "productCategoryTopK";
+    public static final String REQUEST_CLIENT = "client";
+    public static final String REQUEST_FETCH_PRODUCTS = "fetchProducts";
+    public static final String REQUEST_FETCH_PRODUCTS_PAGE = "fetchProductsPage";
+    public static final String REQUEST_LAST_PURCHASE = "fetchLastUserPurchase";
+    public static final String REQUEST_CUSTOMER_PURCHASES_BY_STORE = "customerPurchasesByStore";
+    public static final String REQUEST_CUSTOMER_PURCHASES_BY_STORE_PAGE = "customerPurchasesByStorePage";
+    public static final String REQUEST_KNOWN_KEYS = "knownKeys";
+    public static final String REQUEST_SHARD_MAP = "shardMap";
+    public static final String REQUEST_CATEGORY_SKETCH = "categorySketch";
+    public static final String REQUEST_CANCEL = "cancel";
+    public static final String REQUEST_CLIENT_STREAM = "clientStream";
+    public static final String REQUEST_CATEGORY_SALES_WINDOW = "categorySalesWindow";
+
+    // Default number of rows per page for paged requests
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int READ_TIMEOUT_MS = 30000;          // 30 seconds
+    private static final int FALLBACK_READ_TIMEOUT_MS = 15000; // 15 seconds for the purchase info attempts
+    private static final long KNOWN_KEYS_REFRESH_MS = 5 * 60 * 1000; // 5 minutes
+    private static final long SHARD_MAP_REFRESH_MS = 5 * 60 * 1000;  // 5 minutes
+    public static final int SHARD_TIMEOUT_MS = 3000;                 // 3 seconds per worker
+    private static final int CANCEL_TIMEOUT_MS = 2000;               // 2 seconds to deliver a cancel
+    // A streamed store above this is not decoded, and a purchase lists at most this many products
+    private static final int STREAM_MEMORY_BUDGET_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_PURCHASE_PRODUCTS = 1000;
+
+    // Shared timer thread for withTimeout
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "MasterClient-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Transport transport;
+    private final PriceLookup priceLookup;
+    private final StartupTimings timings = new StartupTimings();
+    private final NegativeCache negativeCache = new NegativeCache();
+    private ScheduledFuture<?> knownKeysRefresh;
+    private final WastedWork wastedWork = new WastedWork();
+    // Cancels still being delivered, shutdown waits for them
+    private final Set<CompletableFuture<Object>> pendingCancels = new HashSet<>();
+    private final ScatterGather scatterGather = new ScatterGather(
+            worker -> new NioTransport(worker.getHost(), worker.getPort()), wastedWork, this::sendCancel);
+    // Cached shard map, an empty one when the master has no workers to offer
+    private volatile ShardMap shardMap;
+    private volatile long shardMapFetchedAt;
+    // The master of the single-master constructor, the only one streams can be opened to
+    private Endpoint singleMaster;
+
+    /**
+     * Constructor, requests share one non-blocking selector thread
+     * @param priceLookup Catalog used to price products the master returns without a price
+     */
+    public MasterClient(String serverIP, int serverPort, PriceLookup priceLookup) {
+        this(new NioTransport(serverIP, serverPort), priceLookup);
+        this.singleMaster = new Endpoint(serverIP, serverPort);
+    }
+
+    /**
+     * Constructor for several masters, each category or store is kept on one of them
+     * and requests fail over to the next master when theirs cannot be reached
+     * @param priceLookup Catalog used to price products the master returns without a price
+     */
+    public MasterClient(List<Endpoint> endpoints, PriceLookup priceLookup) {
+        this(new RoutingTransport(endpoints, RoutingTransport.Strategy.CONSISTENT_HASH,
+                endpoint -> new NioTransport(endpoint.getHost(), endpoint.getPort())), priceLookup);
+    }
+
+    /**
+     * Constructor
+     * @param transport Transport the requests are sent with
+     * @param priceLookup Catalog used to price products the master returns without a price
+     */
+    public MasterClient(Transport transport, PriceLookup priceLookup) {
+        this.transport = transport;
+        this.priceLookup = priceLookup;
+    }
+
+    /**
+     * @return Master that requests about the key go to, null if there is only one
+     */
+    public Endpoint endpointFor(String key) {
+        return transport instanceof RoutingTransport ? ((RoutingTransport) transport).route(key) : null;
+    }
+
+    /**
+     * Quantity sold per store for a product category
+     */
+    public CompletableFuture<HashMap<String, Integer>> productCategory(final String category) {
+        if (negativeCache.isUnknownCategory(category)) {
+            return CompletableFuture.completedFuture(new HashMap<String, Integer>());
+        }
+        return request(REQUEST_PRODUCT_CATEGORY, READ_TIMEOUT_MS, response -> {
+            HashMap<String, Integer> sales = readSalesMap(response);
+            if (sales.isEmpty()) {
+                negativeCache.categoryNotFound(category);
+            }
+            return sales;
+        }, category);
+    }
+
+    /**
+     * The top stores of a product category, ranked and totalled by the master
+     */
+    public CompletableFuture<TopKResult> productCategoryTopK(final TopKRequest request) {
+        if (negativeCache.isUnknownCategory(request.getCategory())) {
+            return CompletableFuture.completedFuture(new TopKResult(new String[0], new int[0], 0, 0));
+        }
+        return request(REQUEST_PRODUCT_CATEGORY_TOP_K, READ_TIMEOUT_MS, response -> {
+            TopKResult result;
+            if (response instanceof TopKResult) {
+                result = (TopKResult) response;
+            } else {
+                // Older masters answer with the full map, rank it here instead
+                LOG.fine("Full sales map received, ranking it on the client");
+                result = TopKSelector.select(readSalesMap(response), request);
+            }
+            if (result.getTotalSales() == 0 && result.size() == 0) {
+                negativeCache.categoryNotFound(request.getCategory());
+            }
+            return result;
+        }, request);
+    }
+
+    /**
+     * Quantity sold per store for a category between two purchase times, answered by the
+     * master from its SalesTimeIndex without scanning the purchases. Parts of the range older
+     * than a week are not counted, the SalesWindow tells the range actually counted.
+     * @param fromMs Start of the range, in milliseconds since the epoch
+     * @param toMs End of the range, exclusive
+     */
+    public CompletableFuture<SalesWindow> categorySalesWindow(final String category, long fromMs, long toMs) {
+        if (negativeCache.isUnknownCategory(category)) {
+            return CompletableFuture.completedFuture(new SalesWindow(category, fromMs, toMs,
+                    new HashMap<String, Integer>()));
+        }
+        return request(REQUEST_CATEGORY_SALES_WINDOW, READ_TIMEOUT_MS, response -> {
+            if (!(response instanceof SalesWindow)) {
+                throw new ProtocolException("Μη αναμενόμενος τύπος απάντησης από τον διακομιστή.");
+            }
+            return (SalesWindow) response;
+        }, category, fromMs, toMs);
+    }
+
+    /**
+     * Quantity sold per store for a category in the last windowMs, e.g. the last hour
+     */
+    public CompletableFuture<SalesWindow> categorySalesLast(String category, long windowMs) {
+        long now = System.currentTimeMillis();
+        return categorySalesWindow(category, now - windowMs, now);
+    }
+
+    /**
+     * The top stores of a product category, aggregated by the workers directly.
+     * The client sends the category to every worker of the shard map and merges their
+     * sales, a worker that does not answer within shardTimeoutMs is left out of the
+     * result. Masters without workers answer the request themselves.
+     */
+    public CompletableFuture<PartialResult<TopKResult>> productCategoryTopKFromWorkers(final TopKRequest request,
+                                                                                      final int shardTimeoutMs) {
+        if (negativeCache.isUnknownCategory(request.getCategory())) {
+            return CompletableFuture.completedFuture(new PartialResult<>(
+                    new TopKResult(new String[0], new int[0], 0, 0), 1, new ArrayList<String>()));
+        }
+        return compose(shardMap(), shards -> {
+            if (shards.size() == 0) {
+                return map(productCategoryTopK(request), result ->
+                        new PartialResult<>(result, 1, new ArrayList<String>()));
+            }
+            Object[] params = {defaultMapReduceRequest("scatter-", request.getCategory())};
+            return map(scatterGather.gather(shards, REQUEST_PRODUCT_CATEGORY, params, shardTimeoutMs,
+                    MasterClient::readSalesMap, ScatterGather::mergeSales), sales -> {
+                        shardsAnswered(sales);
+                        TopKResult result = TopKSelector.select(sales.getValue(), request);
+                        if (sales.isComplete() && result.getTotalSales() == 0 && result.size() == 0) {
+                            negativeCache.categoryNotFound(request.getCategory());
+                        }
+                        return new PartialResult<>(result, sales.getShardCount(), sales.getMissingShards());
+                    });
+        });
+    }
+
+    /**
+     * Approximate sales of a product category, answered from the sketches the workers
+     * keep up to date instead of aggregating the purchase history. The workers' sketches
+     * are fetched and merged here, masters without workers send their merged sketch.
+     */
+    public CompletableFuture<PartialResult<CategorySketch>> categorySketch(final String category,
+                                                                          final int shardTimeoutMs) {
+        return compose(shardMap(), shards -> {
+            if (shards.size() == 0) {
+                return map(request(REQUEST_CATEGORY_SKETCH, READ_TIMEOUT_MS, MasterClient::readSketch, category),
+                        sketch -> new PartialResult<>(sketch, 1, new ArrayList<String>()));
+            }
+            return map(scatterGather.gather(shards, REQUEST_CATEGORY_SKETCH, new Object[]{category},
+                    shardTimeoutMs, MasterClient::readSketch, CategorySketch::merge), sketch -> {
+                        shardsAnswered(sketch);
+                        return sketch;
+                    });
+        });
+    }
+
+    /**
+     * Stores matching a MapReduce request, searched by the workers directly.
+     * Fails if the master has no workers, since only workers answer store searches.
+     */
+    public CompletableFuture<PartialResult<ArrayList<Store>>> storesFromWorkers(final MapReduceRequest request,
+                                                                             final int shardTimeoutMs) {
+        return compose(shardMap(), shards -> {
+            if (shards.size() == 0) {
+                CompletableFuture<PartialResult<ArrayList<Store>>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new ProtocolException("Master has no workers"));
+                return failed;
+            }
+            return map(scatterGather.gather(shards, REQUEST_CLIENT, new Object[]{request}, shardTimeoutMs,
+                    MasterClient::readStores, ScatterGather::mergeStores), stores -> {
+                        shardsAnswered(stores);
+                        return stores;
+                    });
+        });
+    }
+
+    /**
+     * The workers of the master, fetched once and then every SHARD_MAP_REFRESH_MS.
+     * A master that does not publish a shard map gets an empty one.
+     */
+    public CompletableFuture<ShardMap> shardMap() {
+        ShardMap cached = shardMap;
+        if (cached != null && System.currentTimeMillis() - shardMapFetchedAt < SHARD_MAP_REFRESH_MS) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return send(REQUEST_SHARD_MAP, READ_TIMEOUT_MS, response -> {
+            if (!(response instanceof ShardMap)) {
+                throw new ProtocolException("Unexpected response from server");
+            }
+            return (ShardMap) response;
+        }, false, new Object[0]).handle((shards, error) -> {
+            if (error != null) {
+                LOG.log(Level.FINE, "No shard map, querying the master", error);
+                shards = new ShardMap(new ArrayList<String>(), -1);
+            }
+            shardMap = shards;
+            shardMapFetchedAt = System.currentTimeMillis();
+            return shards;
+        });
+    }
+
+    /**
+     * The last confirmed purchase of a customer. When the master has none,
+     * a fallback purchase is built from the email.
+     */
+    public CompletableFuture<Purchase> lastPurchase(final String customerEmail) {
+        if (negativeCache.isUnknownEmail(customerEmail)) {
+            // Same answer the master would give, without the round trip
+            return CompletableFuture.completedFuture(createFallbackPurchase(customerEmail));
+        }
+        return request(REQUEST_LAST_PURCHASE, READ_TIMEOUT_MS, response -> {
+            if (response instanceof Purchase) {
+                return (Purchase) response;
+            }
+            if (response == null) {
+                LOG.fine("No purchases found for user: " + customerEmail);
+                negativeCache.emailNotFound(customerEmail);
+                return createFallbackPurchase(customerEmail);
+            }
+            throw new ProtocolException("Μη αναμενόμενος τύπος απάντησης από τον διακομιστή.");
+        }, customerEmail);
+    }
+
+    /**
+     * Purchase information for a store or category: tries fetchProducts first, then a
+     * client MapReduce request, and falls back to a locally built purchase. Cancelling
+     * stops the chain at the step that is running, later steps are not started.
+     */
+    public CompletableFuture<Purchase> purchaseInfo(final String requestParam) {
+        return map(compose(fetchProductsPurchase(requestParam), purchase -> purchase != null
+                        ? CompletableFuture.completedFuture(purchase)
+                        : clientRequestPurchase(requestParam)),
+                purchase -> purchase != null ? purchase : createFallbackPurchase(requestParam));
+    }
+
+    /**
+     * Products a customer bought from a store, priced from the catalog
+     */
+    public CompletableFuture<ArrayList<Product>> customerPurchasesByStore(final String customerName,
+                                                                          final String storeName) {
+        return request(REQUEST_CUSTOMER_PURCHASES_BY_STORE, READ_TIMEOUT_MS, response -> {
+            HashMap<String, Integer> purchases = readSalesMap(response);
+            ArrayList<Product> products = new ArrayList<>(purchases.size());
+            for (Map.Entry<String, Integer> entry : purchases.entrySet()) {
+                double price = priceLookup.getPrice(storeName, entry.getKey());
+                products.add(new Product(entry.getKey(), "", entry.getValue(), price));
+            }
+            return products;
+        }, customerName, storeName);
+    }
+
+    /**
+     * One page of the products a customer bought from a store, priced from the catalog
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     */
+    public CompletableFuture<ResultPage> customerPurchasesByStorePage(final String customerName, final String storeName,
+                                                                     final String cursor, final int pageSize) {
+        return request(REQUEST_CUSTOMER_PURCHASES_BY_STORE_PAGE, READ_TIMEOUT_MS, response -> {
+            ResultPage page = readPage(response);
+            // The server only knows quantities, prices come from the catalog
+            for (Product product : page.getItems()) {
+                product.setPrice(priceLookup.getPrice(storeName, product.getName()));
+            }
+            return page;
+        }, customerName, storeName, cursor, Integer.valueOf(pageSize));
+    }
+
+    /**
+     * One page of the products of a store
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     */
+    public CompletableFuture<ResultPage> fetchProductsPage(final String storeName, final String cursor,
+                                                          final int pageSize) {
+        return request(REQUEST_FETCH_PRODUCTS_PAGE, READ_TIMEOUT_MS, MasterClient::readPage,
+                storeName, cursor, Integer.valueOf(pageSize));
+    }
+
+    /**
+     * Prepare for the first query off the main thread: connect to the master ahead of
+     * time, load the codec and model classes, then warm the price catalog. The connection
+     * is skipped when a query has already been sent, since that query has paid for it.
+     * Warm-up failures are only logged, the first query reports its own errors.
+     */
+    public CompletableFuture<Void> warmUp() {
+        final long start = System.nanoTime();
+        CompletableFuture<Void> connected = timings.isFirstQuerySent()
+                ? CompletableFuture.<Void>completedFuture(null)
+                : transport.warmUp();
+        CompletableFuture<Void> codec = CompletableFuture.runAsync(() -> {
+            try {
+                ObjectCodec.warmUp();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        return CompletableFuture.allOf(connected, codec)
+                .handle((ignored, error) -> {
+                    if (error != null) {
+                        LOG.log(Level.FINE, "Warm-up failed", error);
+                    }
+                    // Only the customer purchase queries use the catalog, so it goes last
+                    priceLookup.warmUp();
+                    timings.warmUpFinished(start);
+                    LOG.fine("Warm-up finished in " + timings.getWarmUpMs() + " ms");
+                    return null;
+                });
+    }
+
+    /**
+     * @return Warm-up and first query timings of this client
+     */
+    public StartupTimings getStartupTimings() {
+        return timings;
+    }
+
+    /**
+     * Fetch the Bloom filters of known categories and customer emails from the master
+     */
+    public CompletableFuture<KnownKeys> refreshKnownKeys() {
+        return send(REQUEST_KNOWN_KEYS, READ_TIMEOUT_MS, response -> {
+            if (!(response instanceof KnownKeys)) {
+                throw new ProtocolException("Unexpected response from server");
+            }
+            KnownKeys knownKeys = (KnownKeys) response;
+            negativeCache.update(knownKeys);
+            LOG.fine("Known keys refreshed: " + knownKeys);
+            return knownKeys;
+        }, false, new Object[0]);
+    }
+
+    /**
+     * Fetch the known keys now and then every KNOWN_KEYS_REFRESH_MS, until shutdown.
+     * Masters that do not publish them leave the negative cache empty.
+     */
+    public synchronized void startKnownKeysRefresh() {
+        if (knownKeysRefresh != null) {
+            return;
+        }
+        knownKeysRefresh = TIMER.scheduleWithFixedDelay(() -> refreshKnownKeys().exceptionally(error -> {
+            LOG.log(Level.FINE, "Known keys refresh failed", error);
+            return null;
+        }), 0, KNOWN_KEYS_REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Lookups answered locally and false positive counts
+     */
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * @return Requests whose answer was not read, and the cancels sent for them
+     */
+    public WastedWork getWastedWork() {
+        return wastedWork;
+    }
+
+    /**
+     * Shut down the transport, pending requests fail. Cancels already sent are
+     * delivered first, for up to CANCEL_TIMEOUT_MS.
+     */
+    public void shutdown() {
+        CompletableFuture<?>[] cancels;
+        synchronized (this) {
+            if (knownKeysRefresh != null) {
+                knownKeysRefresh.cancel(false);
+            }
+            cancels = pendingCancels.toArray(new CompletableFuture<?>[0]);
+        }
+        withTimeout(CompletableFuture.allOf(cancels), CANCEL_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, error) -> {
+                    transport.shutdown();
+                    scatterGather.shutdown();
+                });
+    }
+
+    /**
+     * Get the actual failure out of the wrappers added by CompletableFuture stages
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Bound a future with a timeout. If the timeout elapses first the returned future
+     * fails with a TimeoutException and the source future is cancelled.
+     * Cancelling the returned future cancels the source future too.
+     */
+    public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final ScheduledFuture<?> timer = TIMER.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Request timed out"))) {
+                future.cancel(true);
+            }
+        }, timeout, unit);
+
+        future.whenComplete((value, error) -> {
+            timer.cancel(false);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Purchase> fetchProductsPurchase(final String requestParam) {
+        CompletableFuture<Purchase> future = request(REQUEST_FETCH_PRODUCTS, FALLBACK_READ_TIMEOUT_MS, response -> {
+            if (response instanceof ArrayList && !((ArrayList<?>) response).isEmpty()
+                    && ((ArrayList<?>) response).get(0) instanceof Product) {
+                @SuppressWarnings("unchecked")
+                ArrayList<Product> products = (ArrayList<Product>) response;
+                return new Purchase(extractCustomerName(requestParam), requestParam, products);
+            }
+            LOG.fine("fetchProducts returned no products: " + response);
+            return null;
+        }, requestParam);
+        // recover rather than exceptionally, so a cancel still reaches the request
+        return recover(future, error -> {
+            LOG.log(Level.FINE, "fetchProducts request failed", error);
+            return null;
+        });
+    }
+
+    /**
+     * Stores matching a client request, streamed one at a time so the whole list is never
+     * held in memory. The consumer runs on the reader thread and may stop the stream; a
+     * store larger than memoryBudgetBytes ends it too. The result tells whether the
+     * stream was truncated. Fails if the master does not support streaming.
+     */
+    public CompletableFuture<RecordStream.Result> streamStores(MapReduceRequest request, int memoryBudgetBytes,
+                                                              RecordStream.Consumer<Store> consumer) {
+        Object[] params = new Object[]{request};
+        Endpoint master = singleMaster != null ? singleMaster
+                : endpointFor(RoutingTransport.routingKey(REQUEST_CLIENT_STREAM, params));
+        if (master == null) {
+            CompletableFuture<RecordStream.Result> unsupported = new CompletableFuture<>();
+            unsupported.completeExceptionally(new ProtocolException("No master address to stream from"));
+            return unsupported;
+        }
+        final MapReduceRequest work = stampWork(params, FALLBACK_READ_TIMEOUT_MS);
+        final CompletableFuture<RecordStream.Result> stream = RecordStream.open(master, REQUEST_CLIENT_STREAM, params,
+                Store.class, memoryBudgetBytes, FALLBACK_READ_TIMEOUT_MS, consumer);
+        stream.whenComplete((result, error) -> {
+            if (stream.isCancelled()) {
+                wastedWork.requestCancelled();
+                sendCancel(transport, work);
+            } else if (result != null && result.isTruncated()) {
+                // The connection is closed, tell the master to stop producing the rest
+                sendCancel(transport, work);
+            }
+        });
+        return stream;
+    }
+
+    /**
+     * Products of the stores matching a client request, at most MAX_PURCHASE_PRODUCTS.
+     * Streams the stores if the master supports it and asks for the whole list otherwise.
+     */
+    private CompletableFuture<Purchase> clientRequestPurchase(final String requestParam) {
+        final MapReduceRequest request = defaultMapReduceRequest("client-", requestParam);
+        final ArrayList<Product> products = new ArrayList<>();
+        CompletableFuture<RecordStream.Result> streamed = streamStores(request, STREAM_MEMORY_BUDGET_BYTES,
+                store -> addProducts(products, store));
+        return compose(recover(streamed, error -> {
+            LOG.log(Level.FINE, "client stream failed, requesting the whole list", error);
+            return null;
+        }), result -> {
+            if (result == null) {
+                // A new request: the streamed one has a deadline that may have passed and a
+                // cancel token the master may already have been told to cancel
+                return bufferedClientRequestPurchase(requestParam, defaultMapReduceRequest("client-", requestParam));
+            }
+            if (result.isTruncated()) {
+                LOG.fine("Purchase for " + requestParam + " truncated to " + products.size() + " products: " + result);
+            }
+            return CompletableFuture.completedFuture(products.isEmpty() ? null
+                    : new Purchase(extractCustomerName(requestParam), requestParam, products));
+        });
+    }
+
+    private CompletableFuture<Purchase> bufferedClientRequestPurchase(final String requestParam,
+                                                                     MapReduceRequest request) {
+        CompletableFuture<Purchase> future = request(REQUEST_CLIENT, FALLBACK_READ_TIMEOUT_MS, response -> {
+            if (response instanceof ArrayList && !((ArrayList<?>) response).isEmpty()
+                    && ((ArrayList<?>) response).get(0) instanceof Store) {
+                @SuppressWarnings("unchecked")
+                ArrayList<Store> stores = (ArrayList<Store>) response;
+                ArrayList<Product> allProducts = new ArrayList<>();
+                for (Store store : stores) {
+                    if (!addProducts(allProducts, store)) {
+                        LOG.fine("Purchase for " + requestParam + " truncated to " + allProducts.size() + " products");
+                        break;
+                    }
+                }
+                if (!allProducts.isEmpty()) {
+                    return new Purchase(extractCustomerName(requestParam), requestParam, allProducts);
+                }
+            }
+            return null;
+        }, request);
+        return recover(future, error -> {
+            // EOF here may indicate a protocol mismatch with the master
+            LOG.log(Level.FINE, "client request failed", error);
+            return null;
+        });
+    }
+
+    /**
+     * @return False once the purchase holds MAX_PURCHASE_PRODUCTS products
+     */
+    private static boolean addProducts(ArrayList<Product> products, Store store) {
+        if (store.getProducts() != null) {
+            for (Product product : store.getProducts()) {
+                if (products.size() == MAX_PURCHASE_PRODUCTS) {
+                    return false;
+                }
+                products.add(product);
+            }
+        }
+        return products.size() < MAX_PURCHASE_PRODUCTS;
+    }
+
+    private static MapReduceRequest defaultMapReduceRequest(String idPrefix, String category) {
+        MapReduceRequest request = new MapReduceRequest();
+        request.setRequestId(idPrefix + System.currentTimeMillis());
+
+        ArrayList<String> categories = new ArrayList<>();
+        categories.add(category);
+        request.setFoodCategories(categories);
+
+        // Set default values for the MapReduceRequest
+        request.setClientLatitude(40.6401); // Thessaloniki coordinates
+        request.setClientLongitude(22.9444);
+        request.setMinStars(0.0);
+        request.setPriceCategory("");
+        request.setRadius(10.0);
+        return request;
+    }
+
+    /**
+     * Workers that did not answer may have moved, fetch the shard map again next time
+     */
+    private void shardsAnswered(PartialResult<?> result) {
+        if (!result.isComplete()) {
+            LOG.fine("Partial result: " + result);
+            shardMapFetchedAt = 0;
+        }
+    }
+
+    /**
+     * Replace the MapReduceRequest among the parameters with a copy that has a deadline and
+     * cancel token filled in if the original had none. The caller's request is left as it
+     * was, so a request sent again gets a fresh deadline and token.
+     * @return The stamped copy, or null if there is no MapReduceRequest
+     */
+    static MapReduceRequest stampWork(Object[] params, int timeoutMs) {
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] instanceof MapReduceRequest) {
+                MapReduceRequest work = new MapReduceRequest((MapReduceRequest) params[i]);
+                if (work.getDeadline() == 0) {
+                    // The answer is not read after the client gives up waiting for it
+                    work.setDeadline(System.currentTimeMillis() + timeoutMs);
+                }
+                if (work.getCancelToken() == null) {
+                    work.setCancelToken(UUID.randomUUID().toString());
+                }
+                params[i] = work;
+                return work;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tell the master or worker to stop working on a request. The cancel carries the
+     * request itself, so it is routed like the request and found by its cancel token.
+     */
+    private void sendCancel(Transport target, final MapReduceRequest work) {
+        final CompletableFuture<Object> cancel = target.send(REQUEST_CANCEL, new Object[]{work}, CANCEL_TIMEOUT_MS);
+        synchronized (this) {
+            pendingCancels.add(cancel);
+        }
+        cancel.whenComplete((response, error) -> {
+            synchronized (this) {
+                pendingCancels.remove(cancel);
+            }
+            if (error != null) {
+                LOG.log(Level.FINE, "Cancel of " + work.getRequestId() + " not delivered", error);
+            }
+            wastedWork.cancelSent(error == null);
+        });
+    }
+
+    /**
+     * thenApply whose result passes a cancel on to the source
+     */
+    private static <T, U> CompletableFuture<U> map(final CompletableFuture<T> source, Function<T, U> mapper) {
+        final CompletableFuture<U> result = source.thenApply(mapper);
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * exceptionally whose result passes a cancel on to the source
+     */
+    private static <T> CompletableFuture<T> recover(final CompletableFuture<T> source,
+                                                    Function<Throwable, T> handler) {
+        final CompletableFuture<T> result = source.handle((value, error) -> error == null ? value : handler.apply(error));
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * thenCompose whose result passes a cancel on to the stage that is running,
+     * the next stage is not started after a cancel
+     */
+    private static <T, U> CompletableFuture<U> compose(final CompletableFuture<T> first,
+                                                       final Function<T, CompletableFuture<U>> next) {
+        final CompletableFuture<U> result = new CompletableFuture<>();
+        first.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            final CompletableFuture<U> stage;
+            try {
+                stage = next.apply(value);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            result.whenComplete((ignored, stageError) -> {
+                if (result.isCancelled()) {
+                    stage.cancel(true);
+                }
+            });
+            stage.whenComplete((stageValue, stageError) -> {
+                if (stageError != null) {
+                    result.completeExceptionally(stageError);
+                } else {
+                    result.complete(stageValue);
+                }
+            });
+        });
+        result.whenComplete((ignored, error) -> {
+            if (result.isCancelled()) {
+                first.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send one request and map its response to the typed result
+     * @param requestType Request type written before the parameters
+     * @param mapper Turns the raw response into the result
+     * @param params Request parameters, in protocol order
+     */
+    private <T> CompletableFuture<T> request(String requestType, int readTimeoutMs,
+                                             final ResponseMapper<T> mapper, Object... params) {
+        return send(requestType, readTimeoutMs, mapper, true, params);
+    }
+
+    /**
+     * @param userQuery False for background requests, which do not count as the first query
+     */
+    private <T> CompletableFuture<T> send(String requestType, int readTimeoutMs, final ResponseMapper<T> mapper,
+                                          boolean userQuery, Object[] params) {
+        final MapReduceRequest work = stampWork(params, readTimeoutMs);
+        if (work != null && work.isExpired()) {
+            // Nobody would read the answer, do not make the master compute it
+            wastedWork.expiredBeforeSend();
+            CompletableFuture<T> expired = new CompletableFuture<>();
+            expired.completeExceptionally(new TimeoutException("Deadline passed before the request was sent"));
+            return expired;
+        }
+        final long start = System.nanoTime();
+        final boolean firstQuery = userQuery && timings.querySent();
+        final CompletableFuture<Object> sent = transport.send(requestType, params, readTimeoutMs);
+        if (firstQuery) {
+            sent.whenComplete((response, error) -> {
+                timings.firstQueryFinished(start);
+                LOG.fine("First query took " + timings.getFirstQueryMs() + " ms");
+            });
+        }
+        // Mapping may look up prices, keep it off the transport thread
+        final CompletableFuture<T> result = sent.thenApplyAsync(response -> {
+            try {
+                return mapper.map(response);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                if (sent.cancel(true)) {
+                    // Still in flight, the master is working on an answer nobody will read
+                    wastedWork.requestCancelled();
+                    if (work != null) {
+                        sendCancel(transport, work);
+                    }
+                }
+            } else if (error != null && unwrap(error) instanceof SocketTimeoutException) {
+                wastedWork.deadlineMissed();
+            }
+        });
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Integer> readSalesMap(Object response) throws ProtocolException {
+        if (response instanceof HashMap) {
+            return (HashMap<String, Integer>) response;
+        }
+        throw new ProtocolException("Unexpected response from server");
+    }
+
+    private static CategorySketch readSketch(Object response) throws ProtocolException {
+        if (response instanceof CategorySketch) {
+            return (CategorySketch) response;
+        }
+        throw new ProtocolException("Unexpected response from server");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Store> readStores(Object response) throws ProtocolException {
+        if (response instanceof ArrayList) {
+            for (Object item : (ArrayList<?>) response) {
+                if (!(item instanceof Store)) {
+                    throw new ProtocolException("Unexpected response from server");
+                }
+            }
+            return (ArrayList<Store>) response;
+        }
+        throw new ProtocolException("Unexpected response from server");
+    }
+
+    private static ResultPage readPage(Object response) throws ProtocolException {
+        if (!(response instanceof ResultPage)) {
+            throw new ProtocolException("Unexpected response from server");
+        }
+        ResultPage page = (ResultPage) response;
+        if (page.getItems() == null) {
+            page.setItems(new ArrayList<Product>());
+        }
+        return page;
+    }
+
+    private static Purchase createFallbackPurchase(String requestParam) {
+        // Extract customer name from parameter
+        String customerName = extractCustomerName(requestParam);
+
+        // Add fallback products based on the request parameter
+        ArrayList<Product> products = new ArrayList<>();
+        String lowerParam = requestParam.toLowerCase();
+        if (lowerParam.contains("pizza") || lowerParam.contains("hut")) {
+            products.add(new Product("Margarita", "Pizza", 1, 9.20));
+            products.add(new Product("Special", "Pizza", 1, 12.00));
+            products.add(new Product("Chef's Salad", "Salad", 1, 5.00));
+        } else if (lowerParam.contains("sushi") || lowerParam.contains("zen")) {
+            products.add(new Product("Salmon Roll", "Sushi", 2, 8.50));
+            products.add(new Product("Tuna Nigiri", "Sushi", 1, 9.00));
+        } else if (lowerParam.contains("greek") || lowerParam.contains("bobos")) {
+            products.add(new Product("Gyros Pork", "Meat", 1, 4.00));
+            products.add(new Product("Souvlaki Chicken", "Meat", 1, 3.50));
+        } else if (lowerParam.contains("healthy") || lowerParam.contains("bites")) {
+            products.add(new Product("Quinoa Salad", "Salad", 1, 6.00));
+            products.add(new Product("Vegan Wrap", "Wrap", 1, 7.00));
+        } else {
+            // Default products for when no specific store pattern is found
+            products.add(new Product("Margarita", "Pizza", 1, 9.20));
+            products.add(new Product("Salmon Roll", "Sushi", 1, 8.50));
+        }
+        return new Purchase(customerName, requestParam, products);
+    }
+
+    /**
+     * Extracts customer name from parameter (usually email)
+     */
+    static String extractCustomerName(String param) {
+        if (param == null || param.isEmpty()) {
+            return "Customer";
+        }
+
+        // For email, extract the part before @
+        if (param.contains("@")) {
+            String localPart = param.split("@")[0];
+            if (!localPart.isEmpty()) {
+                // Capitalize first letter
+                return localPart.substring(0, 1).toUpperCase() +
+                        (localPart.length() > 1 ? localPart.substring(1) : "");
+            }
+        }
+
+        // For non-email, use as is
+        return param;
+    }
+
+    /**
+     * Turns the raw response of a request into its typed result
+     */
+    private interface ResponseMapper<T> {
+        T map(Object response) throws Exception;
+    }
+}
@@ -7,29 +7,43 @@ import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.TextView;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Adapter for displaying product data in a ListView
  */
 public class MyAdapter extends BaseAdapter {
     private Context context;
-    private ArrayList<Product> productList;
+    private List<Product> productList;
     private LayoutInflater inflater;
 
+    // Display rows precomputed from productList, so binding a row allocates nothing
+    private ArrayList<Row> rows;
+
+    // Background colours resolved once instead of on every bind
+    private final int totalRowColor;
+    private final int subtotalRowColor;
+    private final int itemRowColor;
+
     /**
      * Constructor
      * @param context Application context
-     * @param productList List of products to display
+     * @param productList List of products to display, may be a ProductTable view
      */
-    public MyAdapter(Context context, ArrayList<Product> productList) {
+    public MyAdapter(Context context, List<Product> productList) {
         this.context = context;
         this.productList = productList;
         this.inflater = LayoutInflater.from(context);
+        this.totalRowColor = context.getResources().getColor(android.R.color.holo_blue_light);
+        this.subtotalRowColor = context.getResources().getColor(android.R.color.darker_gray);
+        this.itemRowColor = context.getResources().getColor(android.R.color.white);
+        this.rows = new ArrayList<>();
+        rebuildRows();
     }
 
     @Override
     public int getCount() {
-        return productList.size();
+        return rows.size();
     }
 
     @Override
@@ -42,6 +56,13 @@ public class MyAdapter extends BaseAdapter {
         return position;
     }
 
+    @Override
+    public void notifyDataSetChanged() {
+        // The product list was changed by the caller, refresh the display rows first
+        rebuildRows();
+        super.notifyDataSetChanged();
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         ViewHolder holder;
@@ -61,37 +82,67 @@ public class MyAdapter extends BaseAdapter {
             holder = (ViewHolder) convertView.getTag();
         }
 
-        // Get the product at this position
-        Product product = productList.get(position);
+        // Get the precomputed row at this position
+        Row row = rows.get(position);
 
         // Set store name (προϊόν)
-        holder.tvStoreName.setText(product.getName());
+        holder.tvStoreName.setText(row.name);
 
         // Set quantity
-        holder.tvQuantity.setText(String.valueOf(product.getQuantity()));
+        holder.tvQuantity.setText(row.quantityText);
 
         // Set category (if not empty)
-        if (product.getCategory() != null && !product.getCategory().isEmpty()) {
-            holder.tvCategory.setText(product.getCategory());
+        if (row.category != null) {
+            holder.tvCategory.setText(row.category);
             holder.tvCategory.setVisibility(View.VISIBLE);
         } else {
             holder.tvCategory.setVisibility(View.GONE);
         }
 
         // Set amount (ποσότητα * τιμή)
-        double amount = product.getQuantity() * product.getPrice();
-        holder.tvAmount.setText(String.format("%.2f €", amount));
+        holder.tvAmount.setText(row.amountText);
 
-        // Set different background for the "Total Sales" row
-        if (product.getName().equals("Total Sales")) {
-            convertView.setBackgroundColor(context.getResources().getColor(android.R.color.holo_blue_light));
-        } else {
-            convertView.setBackgroundColor(context.getResources().getColor(android.R.color.white));
+        // Set different background for the total and subtotal rows, only when the recycled view had another kind
+        if (holder.boundKind != row.kind) {
+            convertView.setBackgroundColor(row.kind == Product.RowKind.TOTAL ? totalRowColor
+                    : row.kind == Product.RowKind.SUBTOTAL ? subtotalRowColor : itemRowColor);
+            holder.boundKind = row.kind;
         }
 
         return convertView;
     }
 
+    /**
+     * Precompute the display strings of every product in the list
+     */
+    private void rebuildRows() {
+        ArrayList<Row> newRows = new ArrayList<>(productList.size());
+        for (Product product : productList) {
+            newRows.add(new Row(product));
+        }
+        rows = newRows;
+    }
+
+    /**
+     * Display values of a single product row
+     */
+    static final class Row {
+        final Product.RowKind kind;
+        final String name;
+        final String category; // null when the category column is hidden
+        final String quantityText;
+        final String amountText;
+
+        Row(Product product) {
+            this.kind = product.getRowKind();
+            this.name = product.getName();
+            String productCategory = product.getCategory();
+            this.category = (productCategory != null && !productCategory.isEmpty()) ? productCategory : null;
+            this.quantityText = String.valueOf(product.getQuantity());
+            this.amountText = String.format("%.2f €", product.getQuantity() * product.getPrice());
+        }
+    }
+
     /**
      * ViewHolder pattern for smoother scrolling
      */
@@ -100,5 +151,6 @@ public class MyAdapter extends BaseAdapter {
         TextView tvQuantity;
         TextView tvCategory;
         TextView tvAmount; // TextView για το ποσό
+        Product.RowKind boundKind; // kind whose background is currently set
     }
 }
@@ -0,0 +1,166 @@
+package com.example.myapplication;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers lookups of unknown categories and customer emails without a round trip,
+ * using the Bloom filters the master publishes in KnownKeys.
+ *
+ * Until the first filters arrive, or for a key kind the master did not publish,
+ * every lookup goes to the master.
+ *
+ * The filters are only as fresh as the last refresh: MasterClient fetches them every
+ * 5 minutes and the master builds them at KnownKeys.getPublishedAt(). A key another
+ * client added on the master after that is reported unknown for up to a refresh
+ * interval plus the age of the filters. Keys this client wrote itself, the email and
+ * product categories of a purchase it submitted, always go to the master until
+ * published filters hold them, so a customer who just bought sees their purchase.
+ *
+ * Counts how many lookups were answered locally and how many that passed the filter
+ * still came back empty from the master (false positives).
+ */
+public class NegativeCache {
+    private volatile KnownKeys knownKeys;
+    // Keys this client wrote that the current filters may not hold yet, normalized like BloomFilter keys
+    private final Set<String> writtenCategories = ConcurrentHashMap.newKeySet();
+    private final Set<String> writtenEmails = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong answeredLocally = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public void update(KnownKeys knownKeys) {
+        this.knownKeys = knownKeys;
+        if (knownKeys != null) {
+            // Held by the new filters, or a false positive there, the master is asked either way
+            forgetPublished(writtenCategories, knownKeys.getCategories());
+            forgetPublished(writtenEmails, knownKeys.getCustomerEmails());
+        }
+    }
+
+    /**
+     * Record the keys of a purchase this client submitted, lookups of them go to the
+     * master until published filters hold them
+     */
+    public void purchaseWritten(Purchase purchase) {
+        if (purchase.getCustomerEmail() != null) {
+            writtenEmails.add(normalize(purchase.getCustomerEmail()));
+        }
+        if (purchase.getPurchasedProducts() != null) {
+            for (Product product : purchase.getPurchasedProducts()) {
+                if (product.getCategory() != null) {
+                    writtenCategories.add(normalize(product.getCategory()));
+                }
+            }
+        }
+    }
+
+    public KnownKeys getKnownKeys() {
+        return knownKeys;
+    }
+
+    /**
+     * @return True if the master certainly has no sales for the category
+     */
+    public boolean isUnknownCategory(String category) {
+        KnownKeys current = knownKeys;
+        return check(current != null ? current.getCategories() : null, category, writtenCategories);
+    }
+
+    /**
+     * @return True if the master certainly has no purchase of the customer
+     */
+    public boolean isUnknownEmail(String customerEmail) {
+        KnownKeys current = knownKeys;
+        return check(current != null ? current.getCustomerEmails() : null, customerEmail, writtenEmails);
+    }
+
+    /**
+     * Record that the master had no sales for a category, a false positive if the filter passed it
+     */
+    public void categoryNotFound(String category) {
+        KnownKeys current = knownKeys;
+        recordMiss(current != null ? current.getCategories() : null, category);
+    }
+
+    /**
+     * Record that the master had no purchase of a customer, a false positive if the filter passed it
+     */
+    public void emailNotFound(String customerEmail) {
+        KnownKeys current = knownKeys;
+        recordMiss(current != null ? current.getCustomerEmails() : null, customerEmail);
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getAnsweredLocally() {
+        return answeredLocally.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * @return Share of lookups answered without a round trip
+     */
+    public double getHitRate() {
+        long count = lookups.get();
+        return count == 0 ? 0 : (double) answeredLocally.get() / count;
+    }
+
+    /**
+     * @return Share of the lookups sent to the master that came back empty anyway.
+     * Lookups sent before the first filters arrived are included.
+     */
+    public double getFalsePositiveRate() {
+        long sent = lookups.get() - answeredLocally.get();
+        return sent == 0 ? 0 : (double) falsePositives.get() / sent;
+    }
+
+    private void recordMiss(BloomFilter filter, String key) {
+        if (filter != null && key != null && filter.mightContain(key)) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    private boolean check(BloomFilter filter, String key, Set<String> written) {
+        lookups.incrementAndGet();
+        if (filter == null || key == null || filter.mightContain(key) || written.contains(normalize(key))) {
+            return false;
+        }
+        answeredLocally.incrementAndGet();
+        return true;
+    }
+
+    private static void forgetPublished(Set<String> written, BloomFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        Iterator<String> keys = written.iterator();
+        while (keys.hasNext()) {
+            if (filter.mightContain(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static String normalize(String key) {
+        return key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "NegativeCache{" +
+                "lookups=" + lookups.get() +
+                ", hitRate=" + String.format("%.3f", getHitRate()) +
+                ", falsePositiveRate=" + String.format("%.3f", getFalsePositiveRate()) +
+                '}';
+    }
+}
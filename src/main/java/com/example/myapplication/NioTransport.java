@@ -0,0 +1,667 @@
+package com.example.myapplication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking transport: all requests in flight share one selector thread,
+ * so the number of threads does not grow with the number of requests waiting
+ * for their answer.
+ * Requests are encoded on the caller thread and socket reads and writes go
+ * through pooled direct buffers.
+ *
+ * The response is not framed, so its end is only known once it decodes. When its
+ * first bytes arrive a decoder thread starts reading it from a stream the selector
+ * thread feeds with the bytes as they come in; it blocks until the next bytes arrive
+ * and decodes the response exactly once. Corrupt data fails the request right away.
+ *
+ * warmUp() opens a spare connection ahead of time, which the next request takes
+ * over instead of connecting itself.
+ *
+ * The master's host name is looked up on a resolver thread, never on the selector
+ * thread, and kept until a connect to it fails.
+ */
+public class NioTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger("NioTransport");
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // Responses larger than this fail instead of being read further
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    // A spare connection idle for longer may have been dropped by the master
+    private static final long SPARE_MAX_IDLE_MS = 20000;
+
+    // Host name lookups block, they run here instead of on a selector thread
+    private static final ExecutorService RESOLVER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "NioTransport-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Responses are decoded here, a thread only waits while its response is still arriving
+    private static final ExecutorService DECODERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "NioTransport-decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final InetSocketAddress address;
+    // Resolved address, null until looked up or after a connect failed
+    private volatile InetSocketAddress resolved;
+    // Lookup in progress, shared by the connections waiting for it
+    private CompletableFuture<InetSocketAddress> resolving;
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    // Work handed to the selector thread by other threads
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Set under the tasks lock once the selector loop ran the last queued task
+    private boolean stopped;
+
+    // Connections owned by the selector thread
+    private final ArrayList<Connection> connections = new ArrayList<>();
+
+    // Connection opened by warmUp for the next request, owned by the selector thread
+    private Connection spare;
+
+    private Selector selector;
+    private Thread ioThread;
+    private volatile boolean shutdown;
+
+    public NioTransport(String serverIP, int serverPort) {
+        this.address = InetSocketAddress.createUnresolved(serverIP, serverPort);
+    }
+
+    @Override
+    public CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+        final Connection connection = new Connection(readTimeoutMs);
+        try {
+            connection.request = ObjectCodec.encodeRequest(requestType, params);
+            ensureStarted();
+        } catch (IOException e) {
+            connection.future.completeExceptionally(e);
+            return connection.future;
+        }
+
+        runOnIoThread(() -> open(connection));
+        // Cancelling the future closes the connection on the selector thread
+        connection.future.whenComplete((result, error) -> {
+            if (connection.future.isCancelled()) {
+                runOnIoThread(() -> close(connection));
+            }
+        });
+        return connection.future;
+    }
+
+    /**
+     * Open a spare connection for the next request
+     */
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        final CompletableFuture<Void> connected = new CompletableFuture<>();
+        try {
+            ensureStarted();
+        } catch (IOException e) {
+            connected.completeExceptionally(e);
+            return connected;
+        }
+        runOnIoThread(() -> {
+            if (shutdown) {
+                connected.completeExceptionally(new IOException("Transport is shut down"));
+                return;
+            }
+            if (spare != null) {
+                connected.complete(null);
+                return;
+            }
+            Connection connection = new Connection(CONNECT_TIMEOUT_MS);
+            connection.future.whenComplete((result, error) -> {
+                if (error != null) {
+                    connected.completeExceptionally(error);
+                } else {
+                    connected.complete(null);
+                }
+            });
+            spare = connection;
+            connect(connection);
+        });
+        return connected;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private synchronized void ensureStarted() throws IOException {
+        if (shutdown) {
+            throw new IOException("Transport is shut down");
+        }
+        if (ioThread == null) {
+            selector = Selector.open();
+            ioThread = new Thread(this::runLoop, "MasterClient-nio");
+            ioThread.setDaemon(true);
+            ioThread.start();
+        }
+    }
+
+    /**
+     * Queue a task for the selector thread. Once the selector loop has ended the task runs
+     * on the caller instead, it then only fails or drops its request.
+     */
+    private void runOnIoThread(Runnable task) {
+        synchronized (tasks) {
+            if (!stopped) {
+                tasks.add(task);
+                Selector current = selector;
+                if (current != null) {
+                    current.wakeup();
+                }
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Selector loop, the only thread that touches channels and connections
+     */
+    private void runLoop() {
+        try {
+            while (!shutdown) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                selector.select(nextTimeoutMs());
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            onConnectable(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            onWritable(connection);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            onReadable(connection);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        fail(connection, e);
+                    }
+                }
+
+                expireTimedOut();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOG.log(Level.WARNING, "Selector loop failed", e);
+        } finally {
+            // Also when the loop failed, the transport cannot be used any more
+            shutdown = true;
+            for (Connection connection : new ArrayList<>(connections)) {
+                fail(connection, new IOException("Transport is shut down"));
+            }
+            if (spare != null) {
+                fail(spare, new IOException("Transport is shut down"));
+            }
+            synchronized (tasks) {
+                stopped = true;
+            }
+            // Requests queued meanwhile fail, later tasks run on their caller
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Error closing selector", e);
+            }
+        }
+    }
+
+    private void open(Connection connection) {
+        if (connection.future.isDone()) {
+            return;
+        }
+        if (shutdown) {
+            connection.future.completeExceptionally(new IOException("Transport is shut down"));
+            return;
+        }
+        if (takeSpare(connection)) {
+            return;
+        }
+        connect(connection);
+    }
+
+    /**
+     * Connect once the address is known. The connection counts as in flight meanwhile,
+     * so it times out and is failed on shutdown like the others.
+     */
+    private void connect(final Connection connection) {
+        if (!connections.contains(connection)) {
+            connections.add(connection);
+        }
+        connection.deadline = System.currentTimeMillis() + connection.readTimeoutMs;
+        InetSocketAddress target = resolved;
+        if (target != null) {
+            connectTo(connection, target);
+            return;
+        }
+        resolve().whenComplete((result, error) -> runOnIoThread(() -> {
+            if (connection.future.isDone() || !connections.contains(connection)) {
+                // Timed out, cancelled or taken over while resolving
+                return;
+            }
+            if (shutdown) {
+                fail(connection, new IOException("Transport is shut down"));
+            } else if (error != null) {
+                fail(connection, MasterClient.unwrap(error));
+            } else {
+                connectTo(connection, result);
+            }
+        }));
+    }
+
+    /**
+     * @return The address of the master, looked up on the resolver thread the first time
+     */
+    private synchronized CompletableFuture<InetSocketAddress> resolve() {
+        InetSocketAddress current = resolved;
+        if (current != null) {
+            return CompletableFuture.completedFuture(current);
+        }
+        if (resolving != null) {
+            return resolving;
+        }
+        final CompletableFuture<InetSocketAddress> lookup = CompletableFuture.supplyAsync(() -> {
+            InetSocketAddress result = new InetSocketAddress(address.getHostString(), address.getPort());
+            if (result.isUnresolved()) {
+                throw new CompletionException(new UnknownHostException(address.getHostString()));
+            }
+            return result;
+        }, RESOLVER);
+        resolving = lookup;
+        lookup.whenComplete((result, error) -> {
+            synchronized (NioTransport.this) {
+                if (error == null) {
+                    resolved = result;
+                }
+                if (resolving == lookup) {
+                    resolving = null;
+                }
+            }
+        });
+        // Not resolving, the completion above may already have cleared it
+        return lookup;
+    }
+
+    private void connectTo(Connection connection, InetSocketAddress target) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            connection.channel = channel;
+            channel.configureBlocking(false);
+            if (channel.connect(target)) {
+                connection.key = channel.register(selector, 0, connection);
+                onConnected(connection);
+            } else {
+                connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+            }
+        } catch (IOException e) {
+            fail(connection, e);
+        }
+    }
+
+    /**
+     * Hand the spare connection over to a request
+     * @return False if there is no usable spare connection
+     */
+    private boolean takeSpare(Connection connection) {
+        Connection warm = spare;
+        if (warm == null) {
+            return false;
+        }
+        spare = null;
+        if (warm.channel == null) {
+            // Still resolving, the request connects on its own and warm-up is over
+            close(warm);
+            warm.future.complete(null);
+            return false;
+        }
+        if (warm.connectedAt != 0 && System.currentTimeMillis() - warm.connectedAt > SPARE_MAX_IDLE_MS) {
+            close(warm);
+            return false;
+        }
+        connections.remove(warm);
+        connection.channel = warm.channel;
+        connection.key = warm.key;
+        connection.key.attach(connection);
+        connection.fromSpare = true;
+        connection.connected = warm.connected;
+        connection.deadline = System.currentTimeMillis() + connection.readTimeoutMs;
+        connections.add(connection);
+        if (warm.connectedAt != 0) {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+        }
+        // Still connecting otherwise, onConnectable moves on to writing
+        warm.future.complete(null);
+        return true;
+    }
+
+    private void onConnectable(Connection connection) throws IOException {
+        if (connection.channel.finishConnect()) {
+            onConnected(connection);
+        }
+    }
+
+    private void onConnected(Connection connection) {
+        connection.connected = true;
+        if (connection.request == null) {
+            // Spare connection, idle until a request takes it over
+            connections.remove(connection);
+            connection.connectedAt = System.currentTimeMillis();
+            connection.key.interestOps(0);
+            connection.future.complete(null);
+        } else {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void onWritable(Connection connection) throws IOException {
+        if (connection.writeBuffer == null) {
+            connection.writeBuffer = bufferPool.acquire();
+            connection.writeBuffer.limit(0);
+        }
+        ByteBuffer buffer = connection.writeBuffer;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                // Refill the direct buffer with the next chunk of the request
+                int chunk = Math.min(buffer.capacity(), connection.request.length - connection.written);
+                if (chunk == 0) {
+                    break;
+                }
+                buffer.clear();
+                buffer.put(connection.request, connection.written, chunk);
+                buffer.flip();
+                connection.written += chunk;
+            }
+            if (connection.channel.write(buffer) == 0) {
+                // Socket send buffer is full, wait for the next OP_WRITE
+                return;
+            }
+        }
+
+        // Whole request sent, start waiting for the response
+        bufferPool.release(buffer);
+        connection.writeBuffer = null;
+        connection.deadline = System.currentTimeMillis() + connection.readTimeoutMs;
+        connection.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Hand the bytes received to the decoder, starting it with the first ones
+     */
+    private void onReadable(Connection connection) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            int read;
+            while ((read = connection.channel.read(buffer)) > 0) {
+                buffer.flip();
+                if (connection.stream == null) {
+                    startDecoding(connection);
+                }
+                connection.receive(buffer);
+                buffer.clear();
+            }
+            if (read < 0) {
+                if (connection.stream == null) {
+                    throw new IOException("Connection closed by server before the whole response arrived");
+                }
+                // The decoder fails if the response is cut short
+                connection.stream.end();
+                connection.key.interestOps(0);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void startDecoding(final Connection connection) {
+        final ResponseStream stream = new ResponseStream();
+        connection.stream = stream;
+        DECODERS.execute(() -> {
+            try {
+                final Object response = ObjectCodec.decode(stream);
+                runOnIoThread(() -> decoded(connection, stream, response, null));
+            } catch (EOFException e) {
+                final IOException error = new IOException(
+                        "Connection closed by server before the whole response arrived", e);
+                runOnIoThread(() -> decoded(connection, stream, null, error));
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                runOnIoThread(() -> decoded(connection, stream, null, e));
+            }
+        });
+    }
+
+    /**
+     * Complete a request with the response its decoder read, on the selector thread
+     */
+    private void decoded(Connection connection, ResponseStream stream, Object response, Throwable error) {
+        if (connection.stream != stream || connection.future.isDone()) {
+            // Timed out, cancelled or retried on a new connection while decoding
+            return;
+        }
+        if (error != null) {
+            fail(connection, error);
+            return;
+        }
+        close(connection);
+        connection.future.complete(response);
+    }
+
+    private long nextTimeoutMs() {
+        long next = Long.MAX_VALUE;
+        for (Connection connection : connections) {
+            next = Math.min(next, connection.deadline);
+        }
+        if (next == Long.MAX_VALUE) {
+            return 0; // no deadline, block until woken up
+        }
+        return Math.max(1, next - System.currentTimeMillis());
+    }
+
+    private void expireTimedOut() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (connection.deadline <= now) {
+                fail(connection, new SocketTimeoutException("Read timed out"));
+            }
+        }
+    }
+
+    private void fail(Connection connection, Throwable error) {
+        close(connection);
+        if (!connection.connected && error instanceof IOException) {
+            // The master may have moved, look its address up again next time
+            resolved = null;
+        }
+        if (connection.fromSpare && !shutdown && error instanceof IOException
+                && !(error instanceof SocketTimeoutException) && !connection.future.isDone()) {
+            // The master may have dropped the idle spare connection, retry once on a new one.
+            // Requests are queries, so sending one again is harmless.
+            LOG.fine("Spare connection failed, reconnecting: " + error);
+            connection.fromSpare = false;
+            connection.connected = false;
+            connection.written = 0;
+            connection.stream = null;
+            connection.receivedLength = 0;
+            connect(connection);
+            return;
+        }
+        connection.future.completeExceptionally(error);
+    }
+
+    private void close(Connection connection) {
+        if (spare == connection) {
+            spare = null;
+        }
+        connections.remove(connection);
+        if (connection.writeBuffer != null) {
+            bufferPool.release(connection.writeBuffer);
+            connection.writeBuffer = null;
+        }
+        if (connection.stream != null) {
+            // Unblocks the decoder if it is waiting for more bytes
+            connection.stream.close();
+        }
+        if (connection.channel != null) {
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Error closing channel", e);
+            }
+        }
+    }
+
+    /**
+     * State of one request, only touched by the selector thread after send()
+     */
+    private static final class Connection {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final int readTimeoutMs;
+        byte[] request;
+        int written;
+        SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer writeBuffer;
+        // Response bytes for the decoder, null until the first ones arrive
+        ResponseStream stream;
+        int receivedLength;
+        long deadline = Long.MAX_VALUE;
+        long connectedAt;
+        boolean connected;
+        boolean fromSpare;
+
+        Connection(int readTimeoutMs) {
+            this.readTimeoutMs = readTimeoutMs;
+        }
+
+        void receive(ByteBuffer buffer) throws ProtocolException {
+            int length = buffer.remaining();
+            if (receivedLength + length > MAX_RESPONSE_BYTES) {
+                throw new ProtocolException("Response larger than " + MAX_RESPONSE_BYTES + " bytes");
+            }
+            byte[] chunk = new byte[length];
+            buffer.get(chunk);
+            receivedLength += length;
+            stream.feed(chunk);
+        }
+    }
+
+    /**
+     * Bytes of one response, fed by the selector thread and read by the decoder.
+     * Reads block until more bytes arrive, the response ends or the stream is closed.
+     */
+    private static final class ResponseStream extends InputStream {
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        private byte[] current;
+        private int position;
+        private boolean ended;
+        private boolean closed;
+
+        synchronized void feed(byte[] chunk) {
+            chunks.add(chunk);
+            notifyAll();
+        }
+
+        /**
+         * The server closed the connection, no more bytes will arrive
+         */
+        synchronized void end() {
+            ended = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            chunks.clear();
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                if (closed) {
+                    throw new IOException("Connection closed");
+                }
+                if (current != null && position < current.length) {
+                    int count = Math.min(length, current.length - position);
+                    System.arraycopy(current, position, bytes, offset, count);
+                    position += count;
+                    return count;
+                }
+                current = chunks.poll();
+                position = 0;
+                if (current == null) {
+                    if (ended) {
+                        return -1;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized int available() {
+            int count = current != null ? current.length - position : 0;
+            for (byte[] chunk : chunks) {
+                count += chunk.length;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.myapplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Encodes requests and decodes responses of the object stream protocol to and from bytes,
+ * for transports that do not read and write through blocking streams.
+ */
+public final class ObjectCodec {
+
+    private static final AtomicBoolean warmedUp = new AtomicBoolean();
+
+    private ObjectCodec() {
+    }
+
+    /**
+     * Run a request and typical responses through the codec once, so the object stream
+     * classes and the class descriptors of the model are loaded before the first query.
+     * Only the first call does any work.
+     */
+    public static void warmUp() throws IOException, ClassNotFoundException {
+        if (!warmedUp.compareAndSet(false, true)) {
+            return;
+        }
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("warm-up", "warm-up", 1, 1.0));
+        ArrayList<Store> stores = new ArrayList<>();
+        stores.add(new Store("warm-up", 0, 0, "warm-up", 0, 0, "", products));
+        HashMap<String, Integer> sales = new HashMap<>();
+        sales.put("warm-up", 1);
+
+        Object[] messages = {new MapReduceRequest(), sales, new ResultPage(products, null), stores,
+                new Purchase("warm-up", "warm-up", products), new TopKResult(new String[0], new int[0], 0, 0)};
+        for (Object message : messages) {
+            byte[] encoded = encodeRequest(MasterClient.REQUEST_CLIENT, new Object[]{message});
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded));
+            in.readObject();
+            in.readObject();
+        }
+    }
+
+    /**
+     * Encode a request: the object stream header, the request type and the parameters
+     */
+    public static byte[] encodeRequest(String requestType, Object[] params) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(requestType);
+        for (Object param : params) {
+            out.writeObject(param);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a response that is known to be complete
+     */
+    public static Object decode(byte[] data, int length) throws IOException, ClassNotFoundException {
+        try {
+            return decode(new ByteArrayInputStream(data, 0, length));
+        } catch (EOFException e) {
+            throw new StreamCorruptedException("Response is cut short");
+        }
+    }
+
+    /**
+     * Decode a response: the object stream header followed by one object.
+     * Reads only as far as the end of the object, so the stream may block until more bytes arrive.
+     * @throws EOFException If the stream ends before the whole response
+     */
+    public static Object decode(InputStream in) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(in).readObject();
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.myapplication;
+
+import android.util.Log;
+import android.widget.AbsListView;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads the pages of a paged request lazily while the user scrolls the list.
+ * Only one page is requested at a time and the next one is fetched when the
+ * list gets close to its last loaded row.
+ *
+ * At most MAX_WINDOW_PAGES pages are kept. Loading a page past either end of the
+ * window drops the page at the other end, and scrolling back to a dropped page
+ * fetches it again with its cursor, so the rows held stay bounded whatever the
+ * size of the result. Only the cursors of the pages reached are kept for all pages.
+ */
+public class PagedListLoader implements AbsListView.OnScrollListener {
+    private static final String TAG = "PagedListLoader";
+
+    // Start loading the next page when this many rows are left below the visible ones
+    private static final int PREFETCH_DISTANCE = 10;
+    // Pages kept around the visible rows
+    static final int MAX_WINDOW_PAGES = 5;
+
+    /**
+     * Fetches one page of a paged request, e.g. MasterClient.customerPurchasesByStorePage
+     */
+    public interface PageSource {
+        CompletableFuture<ResultPage> fetch(String cursor, int pageSize);
+    }
+
+    /**
+     * Receives the loaded pages on the main thread
+     */
+    public interface Listener {
+        /**
+         * @param rows Rows of the pages now kept, in order
+         * @param firstPage True for the first page of a new request
+         * @param shift Rows added at the start of the window, negative if rows were dropped there
+         */
+        void onWindowChanged(List<Product> rows, boolean firstPage, int shift);
+
+        void onPageFailed(Throwable error);
+    }
+
+    private UiDelivery delivery;
+    private PageSource source;
+    private int pageSize;
+    private Listener listener;
+
+    // Cursor of every page reached, null for the first one
+    private final ArrayList<String> cursors = new ArrayList<>();
+    // Rows of the pages kept, page windowStart first
+    private final ArrayDeque<List<Product>> window = new ArrayDeque<>();
+    private int windowStart;
+    private CompletableFuture<ResultPage> inFlight;
+
+    /**
+     * Constructor
+     * @param delivery Delivers the pages to the main thread
+     * @param source Request that fetches a page
+     * @param pageSize Number of rows per page
+     * @param listener Receives the pages
+     */
+    public PagedListLoader(UiDelivery delivery, PageSource source, int pageSize, Listener listener) {
+        this.delivery = delivery;
+        this.source = source;
+        this.pageSize = pageSize;
+        this.listener = listener;
+    }
+
+    /**
+     * Request the first page
+     */
+    public void loadFirstPage() {
+        cancel();
+        cursors.clear();
+        cursors.add(null);
+        window.clear();
+        windowStart = 0;
+        requestPage(0);
+    }
+
+    /**
+     * Request the page after the window, if there is one and no page is in flight
+     */
+    public void loadNextPage() {
+        int next = windowStart + window.size();
+        if (inFlight != null || next >= cursors.size()) {
+            return;
+        }
+        requestPage(next);
+    }
+
+    /**
+     * Request the page before the window, if it was dropped and no page is in flight
+     */
+    public void loadPreviousPage() {
+        if (inFlight != null || windowStart == 0) {
+            return;
+        }
+        requestPage(windowStart - 1);
+    }
+
+    /**
+     * Cancel the page in flight, it will not be delivered
+     */
+    public void cancel() {
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+    }
+
+    public boolean isLoading() {
+        return inFlight != null;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        // Nothing to do, loading is driven by onScroll
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (totalItemCount == 0) {
+            return;
+        }
+        if (firstVisibleItem + visibleItemCount >= totalItemCount - PREFETCH_DISTANCE) {
+            loadNextPage();
+        } else if (firstVisibleItem <= PREFETCH_DISTANCE) {
+            loadPreviousPage();
+        }
+    }
+
+    private void requestPage(final int index) {
+        String cursor = cursors.get(index);
+        Log.d(TAG, "Requesting page " + index + " with cursor: " + cursor);
+        final CompletableFuture<ResultPage> future = source.fetch(cursor, pageSize);
+        inFlight = future;
+        delivery.deliver(future, new UiDelivery.ResultCallback<ResultPage>() {
+            @Override
+            public void onResult(ResultPage page) {
+                if (inFlight != future) {
+                    return;
+                }
+                inFlight = null;
+                boolean firstPage = window.isEmpty();
+                int shift = 0;
+                if (index < windowStart) {
+                    window.addFirst(page.getItems());
+                    windowStart = index;
+                    shift = page.getItems().size();
+                    if (window.size() > MAX_WINDOW_PAGES) {
+                        window.removeLast();
+                    }
+                } else {
+                    window.addLast(page.getItems());
+                    if (page.hasMore() && cursors.size() == index + 1) {
+                        cursors.add(page.getNextCursor());
+                    }
+                    if (window.size() > MAX_WINDOW_PAGES) {
+                        shift = -window.removeFirst().size();
+                        windowStart++;
+                    }
+                }
+                Log.d(TAG, "Page " + index + " loaded, keeping pages " + windowStart + " to "
+                        + (windowStart + window.size() - 1) + ", more pages: " + (cursors.size() > index + 1));
+                listener.onWindowChanged(rows(), firstPage, shift);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (inFlight != future) {
+                    return;
+                }
+                // The next scroll retries the same page
+                inFlight = null;
+                listener.onPageFailed(error);
+            }
+        });
+    }
+
+    private List<Product> rows() {
+        ArrayList<Product> rows = new ArrayList<>();
+        for (List<Product> page : window) {
+            rows.addAll(page);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.myapplication;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result merged from the workers that answered in time.
+ * When a worker failed or was too slow the value misses its shard, and the
+ * result says so instead of failing as a whole.
+ */
+public class PartialResult<T> {
+    private final T value;
+    private final int shardCount;
+    private final List<String> missingShards;
+
+    /**
+     * @param missingShards Workers whose shard is not in the value
+     */
+    public PartialResult(T value, int shardCount, List<String> missingShards) {
+        this.value = value;
+        this.shardCount = shardCount;
+        this.missingShards = Collections.unmodifiableList(missingShards);
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getAnsweredShards() {
+        return shardCount - missingShards.size();
+    }
+
+    public List<String> getMissingShards() {
+        return missingShards;
+    }
+
+    /**
+     * @return True if every shard is in the value
+     */
+    public boolean isComplete() {
+        return missingShards.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PartialResult{" + getAnsweredShards() + "/" + shardCount + " shards"
+                + (isComplete() ? "" : ", missing " + missingShards) + '}';
+    }
+}
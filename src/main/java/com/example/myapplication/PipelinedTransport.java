@@ -0,0 +1,285 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport that pipelines all requests over one long-lived connection.
+ *
+ * The connection starts with the PROTOCOL_MAGIC int, so the master can tell it
+ * apart from the one-request object stream protocol. After that both sides
+ * exchange frames:
+ *
+ *   int length, long requestId, byte[length] payload
+ *
+ * A request payload is what ObjectCodec.encodeRequest produces, a response payload
+ * is an object stream with the response object. Requests are written back to back
+ * without waiting, the master may answer them in any order and the reader thread
+ * hands each response to the caller waiting on the same request id.
+ *
+ * Connecting and writing happen on the transport's own writer thread, send() only
+ * encodes the request and queues its frame, so a slow master never blocks the caller.
+ */
+public class PipelinedTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger("PipelinedTransport");
+
+    public static final int PROTOCOL_MAGIC = 0x46524D31; // "FRM1"
+
+    // Frames larger than this are treated as a corrupted stream
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "PipelinedTransport-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String serverIP;
+    private final int serverPort;
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, CompletableFuture<Object>> waiting = new ConcurrentHashMap<>();
+    // Writes the frames one after the other, so they are never interleaved
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "PipelinedTransport-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Socket socket;
+    private DataOutputStream out;
+    // Socket being connected by the writer thread, closed by shutdown() to abort the connect
+    private Socket connecting;
+    private boolean shutdown;
+
+    public PipelinedTransport(String serverIP, int serverPort) {
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+    }
+
+    @Override
+    public CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final long requestId = nextRequestId.getAndIncrement();
+        final byte[] payload;
+        try {
+            payload = ObjectCodec.encodeRequest(requestType, params);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        waiting.put(requestId, future);
+        try {
+            writer.execute(() -> writeFrame(requestId, payload));
+        } catch (RejectedExecutionException e) {
+            waiting.remove(requestId);
+            future.completeExceptionally(new IOException("Transport is shut down"));
+            return future;
+        }
+
+        final ScheduledFuture<?> timer = TIMER.schedule(() -> {
+            if (waiting.remove(requestId) != null) {
+                future.completeExceptionally(new SocketTimeoutException("Read timed out"));
+            }
+        }, readTimeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> {
+            // Also covers cancellation, a late response for this id is then dropped
+            timer.cancel(false);
+            waiting.remove(requestId);
+        });
+        return future;
+    }
+
+    /**
+     * Open the connection before the first request
+     */
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        try {
+            // Queued behind the frames already sent, on the writer thread
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    connection();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, writer);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("Transport is shut down"));
+            return failed;
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        writer.shutdown();
+        if (connecting != null) {
+            try {
+                connecting.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Error closing socket", e);
+            }
+        }
+        closeConnection(socket, new IOException("Transport is shut down"));
+        for (Long requestId : waiting.keySet()) {
+            CompletableFuture<Object> future = waiting.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(new IOException("Transport is shut down"));
+            }
+        }
+    }
+
+    /**
+     * Write one request frame, opening the connection first if needed. Runs on the writer thread.
+     */
+    private void writeFrame(long requestId, byte[] payload) {
+        if (!waiting.containsKey(requestId)) {
+            // Timed out or cancelled while queued
+            return;
+        }
+        Socket current = null;
+        try {
+            current = connection();
+            DataOutputStream frameOut;
+            synchronized (this) {
+                if (current != socket) {
+                    throw new IOException("Connection closed");
+                }
+                frameOut = out;
+            }
+            // Only this thread writes, the lock is not held while the socket blocks
+            frameOut.writeInt(payload.length);
+            frameOut.writeLong(requestId);
+            frameOut.write(payload);
+            frameOut.flush();
+        } catch (IOException e) {
+            if (current != null) {
+                closeConnection(current, e);
+            }
+            CompletableFuture<Object> future = waiting.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * @return The open connection, connected first if there is none. Runs on the writer thread.
+     */
+    private Socket connection() throws IOException {
+        Socket newSocket;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IOException("Transport is shut down");
+            }
+            if (socket != null) {
+                return socket;
+            }
+            newSocket = new Socket();
+            connecting = newSocket;
+        }
+        DataOutputStream newOut;
+        try {
+            newSocket.connect(new InetSocketAddress(serverIP, serverPort), CONNECT_TIMEOUT_MS);
+            newSocket.setTcpNoDelay(true);
+            newOut = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+            newOut.writeInt(PROTOCOL_MAGIC);
+            newOut.flush();
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        } finally {
+            synchronized (this) {
+                connecting = null;
+            }
+        }
+
+        synchronized (this) {
+            if (shutdown) {
+                newSocket.close();
+                throw new IOException("Transport is shut down");
+            }
+            socket = newSocket;
+            out = newOut;
+        }
+        Thread reader = new Thread(() -> readLoop(newSocket), "PipelinedTransport-reader");
+        reader.setDaemon(true);
+        reader.start();
+        return newSocket;
+    }
+
+    /**
+     * Read response frames until the connection is closed and complete the waiting callers
+     */
+    private void readLoop(Socket readSocket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(readSocket.getInputStream()));
+            while (true) {
+                int length = in.readInt();
+                long requestId = in.readLong();
+                if (length < 0 || length > MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CompletableFuture<Object> future = waiting.remove(requestId);
+                if (future == null) {
+                    // Timed out or cancelled already
+                    LOG.fine("Dropping response for request " + requestId);
+                    continue;
+                }
+                try {
+                    future.complete(ObjectCodec.decode(payload, length));
+                } catch (IOException | ClassNotFoundException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        } catch (IOException e) {
+            closeConnection(readSocket, e);
+        }
+    }
+
+    /**
+     * Close a connection and fail every request still waiting on it.
+     * The next request opens a new connection.
+     */
+    private synchronized void closeConnection(Socket closing, IOException cause) {
+        if (closing == null || closing != socket) {
+            return;
+        }
+        socket = null;
+        out = null;
+        try {
+            closing.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Error closing socket", e);
+        }
+        for (Long requestId : waiting.keySet()) {
+            CompletableFuture<Object> future = waiting.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.myapplication;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Prefix index over the category, product and store names of the catalog, for
+ * autocomplete while the user types.
+ *
+ * Every name is indexed under its normalized form and under each later word of it,
+ * so "Pizza Hut" is found by "piz" and by "hut". The keys of each kind are kept in
+ * one sorted array, so the keys with a prefix are a range found by binary search.
+ * A max tree over the weights of that array picks the heaviest names of the range
+ * without scanning it, which keeps one-letter prefixes as cheap as long ones.
+ *
+ * Keys are lower case. With foldAccents they are also stripped of accents and
+ * diacritics, so "καφε" finds "Καφές" and "cafe" finds "Café".
+ */
+public class PrefixIndex {
+
+    /**
+     * What a suggestion names
+     */
+    public enum Kind {
+        CATEGORY, PRODUCT, STORE
+    }
+
+    /**
+     * One suggested name
+     */
+    public static final class Suggestion {
+        private final String text;
+        private final Kind kind;
+        private final int weight;
+
+        Suggestion(String text, Kind kind, int weight) {
+            this.text = text;
+            this.kind = kind;
+            this.weight = weight;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return How many stores or reviews back the name, higher ranks first
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    // Best suggestion first: exact matches, then higher weight, then shorter and alphabetical
+    private static final Comparator<Match> RANKING = (a, b) -> {
+        if (a.exact != b.exact) {
+            return a.exact ? -1 : 1;
+        }
+        if (a.suggestion.weight != b.suggestion.weight) {
+            return Integer.compare(b.suggestion.weight, a.suggestion.weight);
+        }
+        if (a.suggestion.text.length() != b.suggestion.text.length()) {
+            return Integer.compare(a.suggestion.text.length(), b.suggestion.text.length());
+        }
+        return a.suggestion.text.compareTo(b.suggestion.text);
+    };
+
+    private final boolean foldAccents;
+    private final EnumMap<Kind, KeyArray> arrays;
+
+    private PrefixIndex(boolean foldAccents, EnumMap<Kind, KeyArray> arrays) {
+        this.foldAccents = foldAccents;
+        this.arrays = arrays;
+    }
+
+    /**
+     * Index the store categories, product types, product names and store names of the catalog.
+     * Categories and products are weighted by the number of stores that have them,
+     * stores by their number of reviews.
+     */
+    public static PrefixIndex fromCatalog(CatalogSnapshot catalog, boolean foldAccents) {
+        Builder builder = new Builder(foldAccents);
+        HashSet<String> types = new HashSet<>();
+        HashSet<String> names = new HashSet<>();
+        for (int store = 0; store < catalog.getStoreCount(); store++) {
+            builder.add(catalog.getStoreName(store), Kind.STORE, catalog.getStoreReviews(store));
+            builder.add(catalog.getStoreCategory(store), Kind.CATEGORY, 1);
+
+            // Count each name once per store
+            types.clear();
+            names.clear();
+            int first = catalog.getFirstProduct(store);
+            int end = first + catalog.getStoreProductCount(store);
+            for (int product = first; product < end; product++) {
+                if (types.add(catalog.getProductType(product))) {
+                    builder.add(catalog.getProductType(product), Kind.CATEGORY, 1);
+                }
+                if (names.add(catalog.getProductName(product))) {
+                    builder.add(catalog.getProductName(product), Kind.PRODUCT, 1);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds an index from names added one at a time
+     */
+    public static final class Builder {
+        private final boolean foldAccents;
+        // Weights are summed when a name is added again with the same kind
+        private final EnumMap<Kind, HashMap<String, int[]>> weights = new EnumMap<>(Kind.class);
+
+        public Builder(boolean foldAccents) {
+            this.foldAccents = foldAccents;
+        }
+
+        public Builder add(String text, Kind kind, int weight) {
+            if (text != null && !text.trim().isEmpty()) {
+                HashMap<String, int[]> names = weights.get(kind);
+                if (names == null) {
+                    names = new HashMap<>();
+                    weights.put(kind, names);
+                }
+                int[] total = names.get(text.trim());
+                if (total == null) {
+                    names.put(text.trim(), new int[]{weight});
+                } else {
+                    total[0] += weight;
+                }
+            }
+            return this;
+        }
+
+        public PrefixIndex build() {
+            EnumMap<Kind, KeyArray> arrays = new EnumMap<>(Kind.class);
+            for (Map.Entry<Kind, HashMap<String, int[]>> names : weights.entrySet()) {
+                ArrayList<IndexedKey> entries = new ArrayList<>();
+                for (Map.Entry<String, int[]> name : names.getValue().entrySet()) {
+                    Suggestion suggestion = new Suggestion(StringPool.intern(name.getKey()), names.getKey(),
+                            name.getValue()[0]);
+                    String key = normalize(name.getKey(), foldAccents);
+                    // The whole name and every later word of it
+                    for (int i = 0; i < key.length(); i++) {
+                        if (i == 0 || key.charAt(i - 1) == ' ') {
+                            entries.add(new IndexedKey(key.substring(i), suggestion));
+                        }
+                    }
+                }
+                Collections.sort(entries, (a, b) -> a.key.compareTo(b.key));
+                arrays.put(names.getKey(), new KeyArray(entries));
+            }
+            return new PrefixIndex(foldAccents, arrays);
+        }
+    }
+
+    /**
+     * @return Number of indexed keys, a name with several words has one per word
+     */
+    public int size() {
+        int size = 0;
+        for (KeyArray array : arrays.values()) {
+            size += array.keys.length;
+        }
+        return size;
+    }
+
+    /**
+     * Ranked suggestions for what the user typed
+     * @param kind Only suggest names of this kind, or null for all
+     */
+    public List<Suggestion> suggest(String typed, int limit, Kind kind) {
+        String prefix = normalize(typed, foldAccents);
+        if (prefix.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        ArrayList<Match> matches = new ArrayList<>();
+        for (Map.Entry<Kind, KeyArray> array : arrays.entrySet()) {
+            if (kind == null || array.getKey() == kind) {
+                array.getValue().collect(prefix, limit, matches);
+            }
+        }
+        Collections.sort(matches, RANKING);
+
+        ArrayList<Suggestion> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && result.size() < limit; i++) {
+            result.add(matches.get(i).suggestion);
+        }
+        return result;
+    }
+
+    /**
+     * Lower case, single spaces and, with foldAccents, no accents or diacritics
+     */
+    static String normalize(String text, boolean foldAccents) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (foldAccents) {
+            for (int i = 0; i < lower.length(); i++) {
+                if (lower.charAt(i) > 0x7F) {
+                    // Split accented letters into letter and accent, the accents are dropped below
+                    lower = Normalizer.normalize(lower, Normalizer.Form.NFD);
+                    break;
+                }
+            }
+        }
+        StringBuilder key = new StringBuilder(lower.length());
+        boolean space = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+            } else if (!foldAccents || Character.getType(c) != Character.NON_SPACING_MARK) {
+                if (space) {
+                    key.append(' ');
+                    space = false;
+                }
+                // Final sigma is the same letter
+                key.append(foldAccents && c == 'ς' ? 'σ' : c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Sorted keys of one kind, with a max tree over their weights
+     */
+    private static final class KeyArray {
+        final String[] keys;
+        final Suggestion[] targets;
+        // tree[size + i] is key i, tree[n] the heavier key of its two children
+        final int[] tree;
+        final int size;
+
+        KeyArray(List<IndexedKey> entries) {
+            size = entries.size();
+            keys = new String[size];
+            targets = new Suggestion[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = entries.get(i).key;
+                targets[i] = entries.get(i).suggestion;
+            }
+            tree = new int[2 * Math.max(size, 1)];
+            for (int i = 0; i < size; i++) {
+                tree[size + i] = i;
+            }
+            for (int n = size - 1; n > 0; n--) {
+                tree[n] = heavier(tree[2 * n], tree[2 * n + 1]);
+            }
+        }
+
+        /**
+         * Add the up to limit best names with a key starting with the prefix
+         */
+        void collect(String prefix, int limit, List<Match> matches) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            HashSet<Suggestion> added = new HashSet<>();
+
+            // Exact keys sort first in the range and rank above everything else
+            while (from < to && keys[from].length() == prefix.length()) {
+                if (added.add(targets[from])) {
+                    matches.add(new Match(targets[from], true));
+                }
+                from++;
+            }
+
+            // Heaviest keys of the rest: take the heaviest of a range, then split the range around it
+            PriorityQueue<int[]> ranges = new PriorityQueue<>(Math.max(1, limit),
+                    (a, b) -> Integer.compare(targets[b[2]].weight, targets[a[2]].weight));
+            if (from < to) {
+                ranges.add(new int[]{from, to, heaviest(from, to)});
+            }
+            while (!ranges.isEmpty() && added.size() < limit) {
+                int[] range = ranges.poll();
+                int best = range[2];
+                if (added.add(targets[best])) {
+                    matches.add(new Match(targets[best], false));
+                }
+                if (range[0] < best) {
+                    ranges.add(new int[]{range[0], best, heaviest(range[0], best)});
+                }
+                if (best + 1 < range[1]) {
+                    ranges.add(new int[]{best + 1, range[1], heaviest(best + 1, range[1])});
+                }
+            }
+        }
+
+        /**
+         * @return Index of the heaviest key in [from, to)
+         */
+        private int heaviest(int from, int to) {
+            int best = from;
+            for (from += size, to += size; from < to; from >>= 1, to >>= 1) {
+                if ((from & 1) == 1) {
+                    best = heavier(best, tree[from++]);
+                }
+                if ((to & 1) == 1) {
+                    best = heavier(best, tree[--to]);
+                }
+            }
+            return best;
+        }
+
+        private int heavier(int a, int b) {
+            int wa = targets[a].weight;
+            int wb = targets[b].weight;
+            return wa > wb || (wa == wb && a < b) ? a : b;
+        }
+
+        private int lowerBound(String prefix) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final class IndexedKey {
+        final String key;
+        final Suggestion suggestion;
+
+        IndexedKey(String key, Suggestion suggestion) {
+            this.key = key;
+            this.suggestion = suggestion;
+        }
+    }
+
+    private static final class Match {
+        final Suggestion suggestion;
+        final boolean exact;
+
+        Match(Suggestion suggestion, boolean exact) {
+            this.suggestion = suggestion;
+            this.exact = exact;
+        }
+    }
+}
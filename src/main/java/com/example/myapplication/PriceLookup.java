@@ -0,0 +1,20 @@
+package com.example.myapplication;
+
+/**
+ * Looks up the catalog price of a product, used where the master only sends quantities
+ */
+public interface PriceLookup {
+
+    /**
+     * @param storeName Store that sells the product
+     * @param productName Product name
+     * @return The product price, or 0 if it is not in the catalog
+     */
+    double getPrice(String storeName, String productName);
+
+    /**
+     * Load whatever the first lookup would load, called off the main thread at startup
+     */
+    default void warmUp() {
+    }
+}
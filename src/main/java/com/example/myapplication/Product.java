@@ -1,16 +1,74 @@
 package com.example.myapplication;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
  * Represents a product in the system with name, category, price, and quantity
  */
 public class Product implements Serializable {
-    private String name;
-    private String category;
+    // UID of the class before RowKind and Status, so products still decode from and to older masters
+    private static final long serialVersionUID = -8697391568164487484L;
+
+    /**
+     * Kind of row a product represents when shown in a list
+     */
+    public enum RowKind {
+        ITEM,
+        // Sum of the rows of one category above it
+        SUBTOTAL,
+        TOTAL
+    }
+
+    /**
+     * Visibility of a product in the store catalog. A status this client does not know,
+     * or none at all, is UNKNOWN and the product keeps its wire name to send it back unchanged.
+     */
+    public enum Status {
+        VISIBLE("visible"),
+        HIDDEN("hidden"),
+        UNKNOWN(null);
+
+        private final String wireName;
+
+        Status(String wireName) {
+            this.wireName = wireName;
+        }
+
+        /**
+         * @return The name sent over the wire, null for UNKNOWN
+         */
+        public String getWireName() {
+            return wireName;
+        }
+
+        public static Status fromWireName(String wireName) {
+            if (VISIBLE.wireName.equals(wireName)) {
+                return VISIBLE;
+            }
+            return HIDDEN.wireName.equals(wireName) ? HIDDEN : UNKNOWN;
+        }
+    }
+
+    // The serialized form keeps status as a String, so the master sees the same fields as before
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("category", String.class),
+            new ObjectStreamField("price", double.class),
+            new ObjectStreamField("quantity", int.class),
+            new ObjectStreamField("status", String.class)
+    };
+
+    private String name;     // pooled through StringPool
+    private String category; // pooled through StringPool
     private double price;
     private int quantity;
-    private String status; // e.g. "visible", "hidden"
+    private Status status;
+    private String unknownStatus; // wire name of an UNKNOWN status
+    private transient RowKind rowKind; // client-side only, not sent over the wire
 
     /**
      * Constructor for Product
@@ -20,11 +78,23 @@ public class Product implements Serializable {
      * @param price Product price
      */
     public Product(String name, String category, int quantity, double price) {
-        this.name = name;
-        this.category = category;
+        this.name = StringPool.intern(name);
+        this.category = StringPool.intern(category);
         this.price = price;
         this.quantity = quantity;
-        this.status = "visible"; // Default status
+        this.status = Status.VISIBLE; // Default status
+    }
+
+    /**
+     * Constructor for a name and category that are already pooled, such as the values
+     * of a ProductTable dictionary, so they are not looked up in the StringPool again
+     */
+    Product(String pooledName, String pooledCategory, int quantity, double price, Status status) {
+        this.name = pooledName;
+        this.category = pooledCategory;
+        this.price = price;
+        this.quantity = quantity;
+        this.status = status;
     }
 
     // Getters and Setters
@@ -33,7 +103,7 @@ public class Product implements Serializable {
     }
 
     public void setName(String name) {
-        this.name = name;
+        this.name = StringPool.intern(name);
     }
 
     public String getCategory() {
@@ -41,7 +111,7 @@ public class Product implements Serializable {
     }
 
     public void setCategory(String category) {
-        this.category = category;
+        this.category = StringPool.intern(category);
     }
 
     public double getPrice() {
@@ -61,13 +131,50 @@ public class Product implements Serializable {
     }
 
     public String getStatus() {
-        return status;
+        return status == Status.UNKNOWN ? unknownStatus : status.getWireName();
     }
 
     public void setStatus(String status) {
+        this.status = Status.fromWireName(status);
+        this.unknownStatus = this.status == Status.UNKNOWN ? status : null;
+    }
+
+    public Status getStatusFlag() {
+        return status;
+    }
+
+    public void setStatusFlag(Status status) {
         this.status = status;
     }
 
+    public RowKind getRowKind() {
+        return rowKind != null ? rowKind : RowKind.ITEM;
+    }
+
+    public void setRowKind(RowKind rowKind) {
+        this.rowKind = rowKind;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("name", name);
+        fields.put("category", category);
+        fields.put("price", price);
+        fields.put("quantity", quantity);
+        fields.put("status", getStatus());
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        // Pool the strings, large responses repeat the same names and categories many times
+        ObjectInputStream.GetField fields = in.readFields();
+        name = StringPool.intern((String) fields.get("name", null));
+        category = StringPool.intern((String) fields.get("category", null));
+        price = fields.get("price", 0.0);
+        quantity = fields.get("quantity", 0);
+        setStatus((String) fields.get("status", null));
+    }
+
     @Override
     public String toString() {
         return "Product Name: " + name +
@@ -0,0 +1,320 @@
+package com.example.myapplication;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column-oriented product list for large result sets and catalogs.
+ *
+ * Names and categories are dictionary coded to int ids, quantities are kept in an
+ * int array and prices in a long array of cents, so a table of n products is a few
+ * flat arrays instead of n Product objects. Totals, group-by and filters run over
+ * the arrays directly. RowSorter keeps its sort keys in a table, so each distinct
+ * name and category is collated once instead of once per row.
+ *
+ * get() and asList() build a Product for the row on every call, for code that still
+ * works with Product objects, such as MyAdapter. The name and category of those
+ * products are the pooled dictionary values.
+ */
+public class ProductTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Dictionary names;
+    private final Dictionary categories;
+    private int[] nameIds;
+    private int[] categoryIds;
+    private int[] quantities;
+    private long[] priceCents;
+    private int size;
+
+    public ProductTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ProductTable(int capacity) {
+        this(new Dictionary(), new Dictionary(), Math.max(capacity, 1));
+    }
+
+    private ProductTable(Dictionary names, Dictionary categories, int capacity) {
+        this.names = names;
+        this.categories = categories;
+        this.nameIds = new int[capacity];
+        this.categoryIds = new int[capacity];
+        this.quantities = new int[capacity];
+        this.priceCents = new long[capacity];
+    }
+
+    /**
+     * Build a table from a list of products
+     */
+    public static ProductTable fromProducts(List<Product> products) {
+        ProductTable table = new ProductTable(products.size());
+        for (Product product : products) {
+            table.add(product);
+        }
+        return table;
+    }
+
+    public void add(Product product) {
+        add(product.getName(), product.getCategory(), product.getQuantity(), toCents(product.getPrice()));
+    }
+
+    /**
+     * Append a row
+     * @param priceCents Price in cents
+     */
+    public void add(String name, String category, int quantity, long priceCents) {
+        ensureCapacity(size + 1);
+        nameIds[size] = names.idOf(name);
+        categoryIds[size] = categories.idOf(category);
+        quantities[size] = quantity;
+        this.priceCents[size] = priceCents;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getName(int row) {
+        return names.valueOf(nameIds[row]);
+    }
+
+    public String getCategory(int row) {
+        return categories.valueOf(categoryIds[row]);
+    }
+
+    public int getQuantity(int row) {
+        return quantities[row];
+    }
+
+    public long getPriceCents(int row) {
+        return priceCents[row];
+    }
+
+    /**
+     * @return Dictionary id of the row's name, rows with equal names have equal ids
+     */
+    int getNameId(int row) {
+        return nameIds[row];
+    }
+
+    /**
+     * @return Dictionary id of the row's category, rows with equal categories have equal ids
+     */
+    int getCategoryId(int row) {
+        return categoryIds[row];
+    }
+
+    /**
+     * @return Number of distinct names, ids run from 0 to nameCount() - 1
+     */
+    int nameCount() {
+        return names.size();
+    }
+
+    /**
+     * @return Number of distinct categories, ids run from 0 to categoryCount() - 1
+     */
+    int categoryCount() {
+        return categories.size();
+    }
+
+    String nameOf(int nameId) {
+        return names.valueOf(nameId);
+    }
+
+    String categoryOf(int categoryId) {
+        return categories.valueOf(categoryId);
+    }
+
+    /**
+     * @return Amount of a row (quantity * price) in cents
+     */
+    public long getAmountCents(int row) {
+        return quantities[row] * priceCents[row];
+    }
+
+    /**
+     * @return Sum of all quantities
+     */
+    public long totalQuantity() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += quantities[i];
+        }
+        return total;
+    }
+
+    /**
+     * @return Sum of quantity * price over all rows, in cents
+     */
+    public long totalAmountCents() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += quantities[i] * priceCents[i];
+        }
+        return total;
+    }
+
+    /**
+     * Total quantity per category, in order of first appearance
+     */
+    public LinkedHashMap<String, Long> quantityByCategory() {
+        long[] totals = new long[categories.size()];
+        for (int i = 0; i < size; i++) {
+            totals[categoryIds[i]] += quantities[i];
+        }
+        return categoryMap(totals);
+    }
+
+    /**
+     * Total amount in cents per category, in order of first appearance
+     */
+    public LinkedHashMap<String, Long> amountCentsByCategory() {
+        long[] totals = new long[categories.size()];
+        for (int i = 0; i < size; i++) {
+            totals[categoryIds[i]] += quantities[i] * priceCents[i];
+        }
+        return categoryMap(totals);
+    }
+
+    /**
+     * @return A table with the rows of one category, sharing this table's dictionaries
+     */
+    public ProductTable filterByCategory(String category) {
+        final int categoryId = categories.find(category);
+        if (categoryId < 0) {
+            return new ProductTable(names, categories, 1);
+        }
+        return filter(row -> categoryIds[row] == categoryId);
+    }
+
+    /**
+     * @return A table with the rows accepted by the filter, sharing this table's dictionaries
+     */
+    public ProductTable filter(RowFilter filter) {
+        ProductTable result = new ProductTable(names, categories, Math.max(1, size / 4));
+        for (int i = 0; i < size; i++) {
+            if (filter.accept(i)) {
+                result.ensureCapacity(result.size + 1);
+                result.nameIds[result.size] = nameIds[i];
+                result.categoryIds[result.size] = categoryIds[i];
+                result.quantities[result.size] = quantities[i];
+                result.priceCents[result.size] = priceCents[i];
+                result.size++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return A new Product with the values of a row
+     */
+    public Product get(int row) {
+        // The dictionary values are pooled already
+        return new Product(getName(row), getCategory(row), quantities[row], priceCents[row] / 100.0,
+                Product.Status.VISIBLE);
+    }
+
+    /**
+     * @return A read-only list view, each get() builds the Product of that row
+     */
+    public List<Product> asList() {
+        return new ProductListView();
+    }
+
+    /**
+     * @return The rows as Product objects, for code that needs an ArrayList
+     */
+    public ArrayList<Product> toProducts() {
+        ArrayList<Product> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            products.add(get(i));
+        }
+        return products;
+    }
+
+    public static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    private LinkedHashMap<String, Long> categoryMap(long[] totals) {
+        LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+        for (int id = 0; id < totals.length; id++) {
+            if (totals[id] != 0) {
+                result.put(categories.valueOf(id), totals[id]);
+            }
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > nameIds.length) {
+            int newCapacity = Math.max(capacity, nameIds.length * 2);
+            nameIds = Arrays.copyOf(nameIds, newCapacity);
+            categoryIds = Arrays.copyOf(categoryIds, newCapacity);
+            quantities = Arrays.copyOf(quantities, newCapacity);
+            priceCents = Arrays.copyOf(priceCents, newCapacity);
+        }
+    }
+
+    /**
+     * Selects rows by index
+     */
+    public interface RowFilter {
+        boolean accept(int row);
+    }
+
+    /**
+     * Maps strings to dense int ids and back
+     */
+    private static final class Dictionary {
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                String pooled = StringPool.intern(value);
+                ids.put(pooled, id);
+                values.add(pooled);
+            }
+            return id;
+        }
+
+        int find(String value) {
+            Integer id = ids.get(value);
+            return id != null ? id : -1;
+        }
+
+        String valueOf(int id) {
+            return values.get(id);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    private final class ProductListView extends AbstractList<Product> implements RandomAccess {
+        @Override
+        public Product get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            return ProductTable.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
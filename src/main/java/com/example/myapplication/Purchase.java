@@ -4,6 +4,12 @@ import java.io.Serializable;
 import java.util.*;
 
 public class Purchase implements Serializable {
+    // UID of the class before the purchase id, so purchases still decode from and to older
+    // masters, which leave the id null
+    private static final long serialVersionUID = -7220692855323385263L;
+
+    // Generated on the device, lets the master drop a purchase uploaded twice
+    private String purchaseId;
     private String customerName;
     private String customerEmail;
     private ArrayList<Product> purchasedProducts;
@@ -18,6 +24,14 @@ public class Purchase implements Serializable {
     }
 
     // Getters and Setters
+    public String getPurchaseId() {
+        return purchaseId;
+    }
+
+    public void setPurchaseId(String purchaseId) {
+        this.purchaseId = purchaseId;
+    }
+
     public String getCustomerName() {
         return customerName;
     }
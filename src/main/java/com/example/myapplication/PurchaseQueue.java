@@ -0,0 +1,311 @@
+package com.example.myapplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Durable queue of the purchases made on the device that the master has not confirmed yet.
+ *
+ * Purchases are appended to a log file, one record each:
+ *
+ *   int length, int crc32, byte[length] serialized Purchase
+ *
+ * and synced to disk before append() returns, so a purchase survives the app being killed
+ * or the device losing power. A second file holds how many bytes of the log the master
+ * has confirmed. Once it has confirmed the whole log, the log is emptied.
+ *
+ * A crash while appending can leave a partial record at the end of the log. It fails
+ * its checksum when the queue is opened again and is cut off.
+ *
+ * Positions are offsets into the log since the queue was opened, they stay valid when
+ * the log is emptied.
+ */
+public class PurchaseQueue {
+    private static final Logger LOG = Logger.getLogger("PurchaseQueue");
+
+    private static final String LOG_FILE = "purchases.log";
+    private static final String ACKED_FILE = "purchases.acked";
+    private static final int RECORD_HEADER = 8;
+    // Larger records are treated as a corrupted log
+    private static final int MAX_RECORD_LENGTH = 1024 * 1024;
+    private static final int READ_CHUNK = 64 * 1024;
+
+    /**
+     * A queued purchase and the position after it
+     */
+    public static final class Entry {
+        private final Purchase purchase;
+        private final long end;
+
+        Entry(Purchase purchase, long end) {
+            this.purchase = purchase;
+            this.end = end;
+        }
+
+        public Purchase getPurchase() {
+            return purchase;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+    }
+
+    private final File directory;
+    private final RandomAccessFile log;
+    // Position of the start of the log file, grows each time the log is emptied
+    private long base;
+    private long length;
+    private long acked;
+    private int pending;
+    private long lastPurchaseTime;
+
+    /**
+     * Open the queue in the directory, creating it if needed and cutting off a partial last record
+     */
+    public PurchaseQueue(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.log = new RandomAccessFile(new File(directory, LOG_FILE), "rw");
+        this.acked = readAcked();
+        recover();
+    }
+
+    /**
+     * Add a purchase, durable once this returns. Fills in a purchase id and, if it has
+     * none, a purchase time no earlier than the previous purchase's.
+     */
+    public synchronized void append(Purchase purchase) throws IOException {
+        ArrayList<Purchase> purchases = new ArrayList<>(1);
+        purchases.add(purchase);
+        appendAll(purchases);
+    }
+
+    /**
+     * Add several purchases with a single sync to disk
+     */
+    public synchronized void appendAll(List<Purchase> purchases) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        for (Purchase purchase : purchases) {
+            if (purchase.getPurchaseId() == null) {
+                purchase.setPurchaseId(UUID.randomUUID().toString());
+            }
+            if (purchase.getPurchaseTime() == 0) {
+                // The master orders purchases by time, keep them in the order they were made
+                purchase.setPurchaseTime(Math.max(System.currentTimeMillis(), lastPurchaseTime));
+            }
+            lastPurchaseTime = Math.max(lastPurchaseTime, purchase.getPurchaseTime());
+            byte[] payload = serialize(purchase);
+            out.writeInt(payload.length);
+            out.writeInt(crc(payload, payload.length));
+            out.write(payload);
+        }
+        out.flush();
+        try {
+            log.seek(length);
+            log.write(records.toByteArray());
+            log.getFD().sync();
+        } catch (IOException e) {
+            // Whatever was written is cut off again, the caller still holds the purchases
+            log.setLength(length);
+            throw e;
+        }
+        length += records.size();
+        pending += purchases.size();
+    }
+
+    /**
+     * @param from Position to read from, e.g. getAcked() or the end of the last entry read
+     * @return Up to maxEntries purchases starting at the position
+     */
+    public synchronized List<Entry> read(long from, int maxEntries) throws IOException {
+        ArrayList<Entry> entries = new ArrayList<>();
+        long position = Math.max(from - base, 0);
+        while (entries.size() < maxEntries && position < length) {
+            // One read for as many records as fit in a chunk
+            byte[] chunk = new byte[(int) Math.min(length - position, READ_CHUNK)];
+            log.seek(position);
+            log.readFully(chunk);
+            ByteBuffer records = ByteBuffer.wrap(chunk);
+            while (entries.size() < maxEntries && records.remaining() >= RECORD_HEADER) {
+                int recordLength = records.getInt(records.position());
+                if (records.remaining() < RECORD_HEADER + recordLength) {
+                    break;
+                }
+                int start = records.position() + RECORD_HEADER;
+                position += RECORD_HEADER + recordLength;
+                entries.add(new Entry(deserialize(chunk, start, recordLength), base + position));
+                records.position(start + recordLength);
+            }
+            if (records.position() == 0) {
+                // Record larger than a chunk
+                log.seek(position);
+                int recordLength = log.readInt();
+                log.readInt();
+                byte[] payload = new byte[recordLength];
+                log.readFully(payload);
+                position += RECORD_HEADER + recordLength;
+                entries.add(new Entry(deserialize(payload, 0, recordLength), base + position));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The master has confirmed every purchase before the position
+     */
+    public synchronized void acknowledge(long position) throws IOException {
+        long offset = position - base;
+        if (offset <= acked) {
+            return;
+        }
+        pending -= countRecords(acked, offset);
+        acked = offset;
+        if (acked == length) {
+            // Everything confirmed, start the log over
+            log.setLength(0);
+            log.getFD().sync();
+            base += length;
+            length = 0;
+            acked = 0;
+        }
+        writeAcked();
+    }
+
+    /**
+     * @return Position of the first purchase the master has not confirmed
+     */
+    public synchronized long getAcked() {
+        return base + acked;
+    }
+
+    /**
+     * @return Purchases the master has not confirmed
+     */
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Find the end of the last whole record and count the unconfirmed ones
+     */
+    private void recover() throws IOException {
+        long fileLength = log.length();
+        long position = 0;
+        byte[] payload = new byte[1024];
+        while (position + RECORD_HEADER <= fileLength) {
+            log.seek(position);
+            int recordLength = log.readInt();
+            int checksum = log.readInt();
+            if (recordLength < 0 || recordLength > MAX_RECORD_LENGTH
+                    || position + RECORD_HEADER + recordLength > fileLength) {
+                break;
+            }
+            if (payload.length < recordLength) {
+                payload = new byte[recordLength];
+            }
+            log.readFully(payload, 0, recordLength);
+            if (crc(payload, recordLength) != checksum) {
+                break;
+            }
+            if (position >= acked) {
+                pending++;
+                lastPurchaseTime = Math.max(lastPurchaseTime, deserialize(payload, 0, recordLength).getPurchaseTime());
+            }
+            position += RECORD_HEADER + recordLength;
+        }
+        if (position < fileLength) {
+            LOG.warning("Cutting off " + (fileLength - position) + " bytes of a partial purchase record");
+            log.setLength(position);
+            log.getFD().sync();
+        }
+        length = position;
+        // The log may have been emptied before the confirmed length was written
+        acked = Math.min(acked, length);
+    }
+
+    private int countRecords(long from, long to) throws IOException {
+        int count = 0;
+        long position = from;
+        while (position < to) {
+            log.seek(position);
+            position += RECORD_HEADER + log.readInt();
+            count++;
+        }
+        return count;
+    }
+
+    private long readAcked() {
+        File file = new File(directory, ACKED_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.readLong();
+        } catch (IOException e) {
+            // Purchases sent again are dropped by the master
+            LOG.warning("Cannot read " + file + ", uploading the whole log again: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Write the confirmed length to a new file and rename it over the old one, so a crash
+     * leaves either the old or the new value
+     */
+    private void writeAcked() throws IOException {
+        File temp = new File(directory, ACKED_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeLong(acked);
+            data.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(new File(directory, ACKED_FILE))) {
+            throw new IOException("Cannot rename " + temp);
+        }
+    }
+
+    private static byte[] serialize(Purchase purchase) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(purchase);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Purchase deserialize(byte[] data, int offset, int length) throws IOException {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+            return (Purchase) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a purchase record", e);
+        }
+    }
+
+    private static int crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+}
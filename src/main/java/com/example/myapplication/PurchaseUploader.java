@@ -0,0 +1,274 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Uploads the purchases of a PurchaseQueue in the background.
+ *
+ * Purchases go in batches of up to BATCH_SIZE per REQUEST_UPLOAD_PURCHASES request,
+ * sorted by purchase time. Up to MAX_IN_FLIGHT batches are sent without waiting for
+ * the earlier ones to be answered, so over a PipelinedTransport a slow link carries
+ * several batches per round trip.
+ *
+ * A batch that fails or times out is sent again, with the same purchase ids, after a
+ * delay that doubles up to MAX_RETRY_DELAY_MS. The master keeps the ids it has stored
+ * and drops a purchase it already has, so a batch that did arrive but whose answer was
+ * lost is not counted twice. The queue only moves past a batch once it and every
+ * earlier batch are confirmed, and anything not confirmed is uploaded again after a
+ * restart.
+ *
+ * All state is kept on one uploader thread.
+ */
+public class PurchaseUploader {
+    private static final Logger LOG = Logger.getLogger("PurchaseUploader");
+
+    public static final String REQUEST_UPLOAD_PURCHASES = "uploadPurchases";
+
+    private static final int BATCH_SIZE = 100;
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final int UPLOAD_TIMEOUT_MS = 10000;
+    private static final long FIRST_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 30000;
+
+    /**
+     * One request worth of purchases
+     */
+    private static final class Batch {
+        final ArrayList<Purchase> purchases;
+        final long end;
+        boolean confirmed;
+        boolean failed;
+
+        Batch(ArrayList<Purchase> purchases, long end) {
+            this.purchases = purchases;
+            this.end = end;
+        }
+    }
+
+    private final File directory;
+    private final Transport transport;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "PurchaseUploader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Uploader thread only
+    private PurchaseQueue queue;
+    private final ArrayDeque<Batch> inFlight = new ArrayDeque<>();
+    private long nextPosition;
+    private long retryDelay = FIRST_RETRY_DELAY_MS;
+    private boolean retryScheduled;
+    private boolean stopped;
+
+    private final AtomicLong uploaded = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param directory Directory of the PurchaseQueue, opened on the uploader thread
+     * @param transport Transport the batches are sent with, a PipelinedTransport to send
+     *                  them back to back
+     */
+    public PurchaseUploader(File directory, Transport transport) {
+        this.directory = directory;
+        this.transport = transport;
+    }
+
+    /**
+     * Open the queue and start uploading what it holds
+     */
+    public void start() {
+        executor.execute(() -> {
+            try {
+                queue = new PurchaseQueue(directory);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Cannot open the purchase queue in " + directory, e);
+                stopped = true;
+                return;
+            }
+            LOG.fine(queue.getPending() + " purchases waiting for upload");
+            nextPosition = queue.getAcked();
+            fill();
+        });
+    }
+
+    /**
+     * Queue a purchase and upload it with the next batch
+     * @return Completes once the purchase is on disk
+     */
+    public CompletableFuture<Void> submit(final Purchase purchase) {
+        final CompletableFuture<Void> stored = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (queue == null) {
+                stored.completeExceptionally(new IOException("Purchase queue is not open"));
+                return;
+            }
+            try {
+                queue.append(purchase);
+                stored.complete(null);
+            } catch (IOException e) {
+                stored.completeExceptionally(e);
+                return;
+            }
+            fill();
+        });
+        return stored;
+    }
+
+    /**
+     * Stop uploading, the queue keeps whatever is not confirmed for next time.
+     * Calling it again does nothing.
+     */
+    public synchronized void shutdown() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            stopped = true;
+            if (queue == null) {
+                return;
+            }
+            try {
+                queue.close();
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Closing the purchase queue failed", e);
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * @return Purchases confirmed by the master since the uploader started
+     */
+    public long getUploaded() {
+        return uploaded.get();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PurchaseUploader{" +
+                "uploaded=" + uploaded.get() +
+                ", batchesSent=" + batchesSent.get() +
+                ", retries=" + retries.get() +
+                '}';
+    }
+
+    /**
+     * Send new batches until MAX_IN_FLIGHT are waiting for an answer
+     */
+    private void fill() {
+        if (stopped || retryScheduled) {
+            return;
+        }
+        try {
+            while (inFlight.size() < MAX_IN_FLIGHT) {
+                List<PurchaseQueue.Entry> entries = queue.read(nextPosition, BATCH_SIZE);
+                if (entries.isEmpty()) {
+                    return;
+                }
+                ArrayList<Purchase> purchases = new ArrayList<>(entries.size());
+                for (PurchaseQueue.Entry entry : entries) {
+                    purchases.add(entry.getPurchase());
+                }
+                Collections.sort(purchases, (a, b) -> Long.compare(a.getPurchaseTime(), b.getPurchaseTime()));
+                Batch batch = new Batch(purchases, entries.get(entries.size() - 1).getEnd());
+                nextPosition = batch.end;
+                inFlight.add(batch);
+                send(batch);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Reading the purchase queue failed", e);
+        }
+    }
+
+    private void send(final Batch batch) {
+        batch.failed = false;
+        batchesSent.incrementAndGet();
+        transport.send(REQUEST_UPLOAD_PURCHASES, new Object[]{batch.purchases}, UPLOAD_TIMEOUT_MS)
+                .whenComplete((response, error) -> {
+                    try {
+                        executor.execute(() -> answered(batch, response, error));
+                    } catch (RejectedExecutionException e) {
+                        // Answered after shutdown, the batch is sent again next time
+                    }
+                });
+    }
+
+    private void answered(Batch batch, Object response, Throwable error) {
+        if (stopped) {
+            return;
+        }
+        if (error == null && !(response instanceof Integer)) {
+            error = new ProtocolException("Unexpected response from server: " + response);
+        }
+        if (error != null) {
+            LOG.log(Level.FINE, "Upload of " + batch.purchases.size() + " purchases failed", error);
+            batch.failed = true;
+            scheduleRetry();
+            return;
+        }
+        batch.confirmed = true;
+        retryDelay = FIRST_RETRY_DELAY_MS;
+        // Batches may be answered out of order, the queue only moves past confirmed ones
+        long confirmedThrough = -1;
+        while (!inFlight.isEmpty() && inFlight.peekFirst().confirmed) {
+            Batch done = inFlight.pollFirst();
+            uploaded.addAndGet(done.purchases.size());
+            confirmedThrough = done.end;
+        }
+        if (confirmedThrough >= 0) {
+            try {
+                queue.acknowledge(confirmedThrough);
+            } catch (IOException e) {
+                // Sent again after a restart, the master drops the duplicates
+                LOG.log(Level.WARNING, "Recording the uploaded purchases failed", e);
+            }
+        }
+        fill();
+    }
+
+    private void scheduleRetry() {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        long delay = retryDelay;
+        retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+        executor.schedule(() -> {
+            retryScheduled = false;
+            if (stopped) {
+                return;
+            }
+            for (Batch batch : inFlight) {
+                if (batch.failed) {
+                    retries.incrementAndGet();
+                    send(batch);
+                }
+            }
+            fill();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
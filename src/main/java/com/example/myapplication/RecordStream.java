@@ -0,0 +1,278 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads a streamed response one record at a time, within a memory budget.
+ *
+ * The master writes the records one writeObject at a time, resets its object stream
+ * after each so neither side keeps references to the records already sent, and ends
+ * with null. Each record is handed to the consumer before the next one is read, so a
+ * slow consumer leaves the rest in the socket buffers and the master blocks writing:
+ * at most one record is held in memory, however long the response.
+ *
+ * A record larger than the budget is not decoded any further and the stream ends as
+ * truncated, instead of growing the heap until it runs out. The consumer can stop
+ * the stream too, e.g. once it has enough records. Either way the connection is
+ * closed and the records already delivered are kept.
+ *
+ * A master that answers with the whole list in one object is still read, within the
+ * same budget, and its records delivered one by one.
+ */
+public class RecordStream {
+    private static final Logger LOG = Logger.getLogger("RecordStream");
+
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "RecordStream-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Receives the records, on the reader thread
+     */
+    public interface Consumer<T> {
+        /**
+         * @return False to stop the stream after this record
+         */
+        boolean accept(T record);
+    }
+
+    public enum Outcome {
+        /** The master sent every record */
+        COMPLETE,
+        /** The consumer stopped the stream */
+        STOPPED,
+        /** A record was larger than the memory budget */
+        OVER_BUDGET
+    }
+
+    /**
+     * How a stream ended
+     */
+    public static final class Result {
+        private final Outcome outcome;
+        private final int records;
+        private final long bytesRead;
+
+        Result(Outcome outcome, int records, long bytesRead) {
+            this.outcome = outcome;
+            this.records = records;
+            this.bytesRead = bytesRead;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return True if the master had more records than were delivered
+         */
+        public boolean isTruncated() {
+            return outcome != Outcome.COMPLETE;
+        }
+
+        /**
+         * @return Records delivered to the consumer
+         */
+        public int getRecords() {
+            return records;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public String toString() {
+            return "RecordStream.Result{" +
+                    "outcome=" + outcome +
+                    ", records=" + records +
+                    ", bytesRead=" + bytesRead +
+                    '}';
+        }
+    }
+
+    private RecordStream() {
+    }
+
+    /**
+     * Send a request and stream the records of the response to the consumer.
+     * Cancelling the future closes the connection.
+     * @param type Class of the records, anything else ends the stream with a ProtocolException
+     * @param memoryBudgetBytes Largest serialized record decoded
+     * @param readTimeoutMs Longest wait for the next bytes of the response
+     */
+    public static <T> CompletableFuture<Result> open(final Endpoint master, final String requestType,
+                                                     final Object[] params, final Class<T> type,
+                                                     final int memoryBudgetBytes, final int readTimeoutMs,
+                                                     final Consumer<T> consumer) {
+        final Socket socket = new Socket();
+        final CompletableFuture<Result> future = new CompletableFuture<Result>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                closeQuietly(socket);
+                return cancelled;
+            }
+        };
+        READERS.execute(() -> {
+            try {
+                future.complete(read(socket, master, requestType, params, type, memoryBudgetBytes,
+                        readTimeoutMs, consumer));
+            } catch (Exception e) {
+                if (!future.isDone()) {
+                    LOG.log(Level.FINE, requestType + " stream from " + master + " failed", e);
+                }
+                future.completeExceptionally(e);
+            } finally {
+                closeQuietly(socket);
+            }
+        });
+        return future;
+    }
+
+    private static <T> Result read(Socket socket, Endpoint master, String requestType, Object[] params,
+                                   Class<T> type, int memoryBudgetBytes, int readTimeoutMs,
+                                   Consumer<T> consumer) throws IOException, ClassNotFoundException {
+        socket.connect(new InetSocketAddress(master.getHost(), master.getPort()), CONNECT_TIMEOUT_MS);
+        socket.setSoTimeout(readTimeoutMs);
+        ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+        out.writeObject(requestType);
+        for (Object param : params) {
+            out.writeObject(param);
+        }
+        out.flush();
+
+        BudgetInputStream budget = new BudgetInputStream(
+                new BufferedInputStream(socket.getInputStream()), memoryBudgetBytes);
+        ObjectInputStream in = new ObjectInputStream(budget);
+        int records = 0;
+        try {
+            while (true) {
+                budget.startRecord();
+                Object message = in.readObject();
+                if (message == null) {
+                    return new Result(Outcome.COMPLETE, records, budget.getTotal());
+                }
+                if (message instanceof List) {
+                    // Whole response in one object, from a master that does not stream
+                    for (Object record : (List<?>) message) {
+                        records++;
+                        if (!consumer.accept(cast(type, record))) {
+                            return new Result(Outcome.STOPPED, records, budget.getTotal());
+                        }
+                    }
+                    return new Result(Outcome.COMPLETE, records, budget.getTotal());
+                }
+                records++;
+                if (!consumer.accept(cast(type, message))) {
+                    return new Result(Outcome.STOPPED, records, budget.getTotal());
+                }
+            }
+        } catch (OverBudgetException e) {
+            LOG.fine(requestType + " record over " + memoryBudgetBytes + " bytes after " + records + " records");
+            return new Result(Outcome.OVER_BUDGET, records, budget.getTotal());
+        }
+    }
+
+    private static <T> T cast(Class<T> type, Object record) throws ProtocolException {
+        if (!type.isInstance(record)) {
+            throw new ProtocolException("Unexpected record from server: "
+                    + (record != null ? record.getClass().getName() : null));
+        }
+        return type.cast(record);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+
+    private static final class OverBudgetException extends IOException {
+        private static final long serialVersionUID = 5838777535133449135L;
+
+        OverBudgetException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Counts the bytes of the record being decoded and fails once they exceed the budget
+     */
+    private static final class BudgetInputStream extends FilterInputStream {
+        private final long budget;
+        private long recordStart;
+        private long total;
+
+        BudgetInputStream(InputStream in, long budget) {
+            super(in);
+            this.budget = budget;
+        }
+
+        void startRecord() {
+            recordStart = total;
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkBudget(1);
+            int b = super.read();
+            if (b >= 0) {
+                total++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            // Never read past the budget, the rest of an oversized record stays unread
+            int allowed = (int) Math.min(len, budget - (total - recordStart));
+            checkBudget(allowed);
+            int read = super.read(b, off, allowed);
+            if (read > 0) {
+                total += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, budget - (total - recordStart)));
+            total += skipped;
+            return skipped;
+        }
+
+        private void checkBudget(int wanted) throws OverBudgetException {
+            if (wanted <= 0 || total - recordStart >= budget) {
+                throw new OverBudgetException("Record larger than " + budget + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.lifecycle.ViewModel;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the master client, the requests in flight and their results across
+ * configuration changes. An activity attaches itself as the listener while it
+ * is alive; results that arrive while no activity is attached are kept and
+ * delivered to the next one. Everything still running is cancelled when the
+ * screen is finished for good.
+ */
+public class RequestViewModel extends ViewModel {
+    private static final String TAG = "RequestViewModel";
+
+    // Live category updates are shown at most twice per second
+    private static final long CATEGORY_UPDATE_COALESCE_MS = 500;
+
+    /**
+     * Receives the request results on the main thread
+     */
+    public interface Listener {
+        /**
+         * @param complete False if some workers did not answer and their stores are missing
+         * @param errorBound How much the quantities may exceed the truth, 0 for exact quantities
+         */
+        void onCategoryLoaded(int storeCount, boolean complete, long errorBound);
+
+        /**
+         * The category rows changed because purchases landed on the master
+         */
+        void onCategoryUpdated(int storeCount);
+
+        /**
+         * @param shift Rows added before the visible ones, negative if rows were dropped there
+         */
+        void onPageLoaded(boolean firstPage, int shift);
+
+        void onPurchaseLoaded(Purchase purchase);
+
+        /**
+         * The rows were put in the order asked with sortRows()
+         */
+        void onRowsSorted(RowSorter.Order order);
+
+        void onRequestFailed(Throwable error);
+    }
+
+    /**
+     * A result waiting for a listener to be attached
+     */
+    private interface Pending {
+        void deliverTo(Listener listener);
+    }
+
+    private MasterClient masterClient;
+    private Transport uploadTransport;
+    private PurchaseUploader purchaseUploader;
+    private AssetPriceLookup catalog;
+    private UiDelivery delivery;
+    private Listener listener;
+    private Pending pending;
+
+    // List rows, kept so a recreated activity shows them without a new query
+    private final ArrayList<Product> rows = new ArrayList<>();
+    // Orders of the current rows, dropped when the rows change
+    private RowSorter rowSorter;
+    // Order asked from the list header, kept for the rows of later queries
+    private RowSorter.Order rowOrder;
+    private Purchase purchase;
+    private CompletableFuture<?> currentRequest;
+    private PagedListLoader pagedLoader;
+    private CategorySubscription subscription;
+    private boolean warmUpStarted;
+    private volatile PrefixIndex suggestionIndex;
+
+    /**
+     * Create the master client the first time, later calls keep the existing one
+     */
+    public void init(Context context, List<Endpoint> masters) {
+        if (masterClient == null) {
+            Log.d(TAG, "Creating master client for " + masters);
+            catalog = new AssetPriceLookup(context);
+            masterClient = new MasterClient(masters, catalog);
+            delivery = new UiDelivery();
+            // Batches are pipelined over one connection per master
+            uploadTransport = new RoutingTransport(masters, RoutingTransport.Strategy.CONSISTENT_HASH,
+                    endpoint -> new PipelinedTransport(endpoint.getHost(), endpoint.getPort()));
+            purchaseUploader = new PurchaseUploader(new File(context.getFilesDir(), "purchases"), uploadTransport);
+            purchaseUploader.start();
+        }
+    }
+
+    /**
+     * Queue a purchase made on the device, it is uploaded in the background and kept
+     * on disk until the master has it
+     * @return Completes once the purchase is on disk
+     */
+    public CompletableFuture<Void> submitPurchase(Purchase purchase) {
+        // Until the next known keys hold them, the customer and categories are not reported unknown
+        masterClient.getNegativeCache().purchaseWritten(purchase);
+        return purchaseUploader.submit(purchase);
+    }
+
+    /**
+     * Warm up the master client once the activity has finished its startup work.
+     * Activities recreated for a configuration change skip it, the client is already warm.
+     * @param startupMs Time the activity took to create its screen
+     */
+    public void startWarmUp(final long startupMs) {
+        if (warmUpStarted) {
+            return;
+        }
+        warmUpStarted = true;
+        masterClient.getStartupTimings().setStartupMs(startupMs);
+        // Posted, so it starts after the first frame work queued by onCreate
+        delivery.post(() -> masterClient.warmUp()
+                .thenRun(masterClient::startKnownKeysRefresh)
+                .thenRun(this::buildSuggestionIndex)
+                .whenComplete((ignored, error) ->
+                        Log.d(TAG, "Warm-up done: " + masterClient.getStartupTimings())));
+    }
+
+    /**
+     * @return Autocomplete index over the catalog names, or null until it is built
+     */
+    public PrefixIndex getSuggestionIndex() {
+        return suggestionIndex;
+    }
+
+    /**
+     * Build the autocomplete index from the catalog, off the main thread
+     */
+    private void buildSuggestionIndex() {
+        CatalogSnapshot snapshot = catalog.getCatalog();
+        if (snapshot == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        suggestionIndex = PrefixIndex.fromCatalog(snapshot, true);
+        Log.d(TAG, "Suggestion index of " + suggestionIndex.size() + " keys built in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Attach the listener of the current activity and hand it any result it missed
+     */
+    public void attach(Listener listener) {
+        this.listener = listener;
+        if (pending != null) {
+            Pending missed = pending;
+            pending = null;
+            missed.deliverTo(listener);
+        }
+    }
+
+    /**
+     * Detach the listener of an activity that is being destroyed
+     */
+    public void detach(Listener listener) {
+        if (this.listener == listener) {
+            this.listener = null;
+        }
+    }
+
+    public ArrayList<Product> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The order the rows are shown in, or null for the order they arrived in
+     */
+    public RowSorter.Order getRowOrder() {
+        return rowOrder;
+    }
+
+    public Purchase getPurchase() {
+        return purchase;
+    }
+
+    public PagedListLoader getPagedLoader() {
+        return pagedLoader;
+    }
+
+    public MasterClient getMasterClient() {
+        return masterClient;
+    }
+
+    public UiDelivery getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * @return True while a request is in flight, so the activity can show its progress
+     */
+    public boolean isLoading() {
+        return currentRequest != null || (pagedLoader != null && pagedLoader.isLoading());
+    }
+
+    /**
+     * Fetch the last purchase of a customer
+     */
+    public void loadLastPurchase(String customerEmail) {
+        cancelCurrentRequest();
+        stopSubscription();
+        final CompletableFuture<Purchase> future = masterClient.lastPurchase(customerEmail);
+        currentRequest = future;
+        delivery.deliver(future, new UiDelivery.ResultCallback<Purchase>() {
+            @Override
+            public void onResult(Purchase result) {
+                if (currentRequest != future) {
+                    return;
+                }
+                currentRequest = null;
+                purchase = result;
+                post(listener -> listener.onPurchaseLoaded(result));
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                failed(future, error);
+            }
+        });
+    }
+
+    /**
+     * Fetch the best selling stores of a product category, from the workers when the master has them
+     * @param approximate Estimate the quantities from the sales sketches, in milliseconds
+     *                    instead of aggregating the whole purchase history
+     */
+    public void loadCategory(final TopKRequest request, boolean approximate) {
+        cancelCurrentRequest();
+        stopSubscription();
+        if (approximate) {
+            loadCategoryEstimate(request);
+            return;
+        }
+        final CompletableFuture<PartialResult<TopKResult>> future =
+                masterClient.productCategoryTopKFromWorkers(request, MasterClient.SHARD_TIMEOUT_MS);
+        currentRequest = future;
+        delivery.deliver(future, new UiDelivery.ResultCallback<PartialResult<TopKResult>>() {
+            @Override
+            public void onResult(PartialResult<TopKResult> partial) {
+                if (currentRequest != future) {
+                    return;
+                }
+                currentRequest = null;
+                stopPaging();
+                purchase = null;
+                TopKResult result = partial.getValue();
+                showCategoryRows(request, result);
+
+                final int storeCount = result.size();
+                final boolean complete = partial.isComplete();
+                post(listener -> listener.onCategoryLoaded(storeCount, complete, 0));
+
+                // Keep the rows current while the category is shown
+                subscribe(request);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                failed(future, error);
+            }
+        });
+    }
+
+    /**
+     * Rank the stores of a category by their estimated quantities. Estimates are not
+     * kept live, the rows stay as they are until the next query.
+     */
+    private void loadCategoryEstimate(final TopKRequest request) {
+        final CompletableFuture<PartialResult<CategorySketch>> future =
+                masterClient.categorySketch(request.getCategory(), MasterClient.SHARD_TIMEOUT_MS);
+        currentRequest = future;
+        delivery.deliver(future, new UiDelivery.ResultCallback<PartialResult<CategorySketch>>() {
+            @Override
+            public void onResult(PartialResult<CategorySketch> partial) {
+                if (currentRequest != future) {
+                    return;
+                }
+                currentRequest = null;
+                stopPaging();
+                purchase = null;
+                CategorySketch sketch = partial.getValue();
+                Log.d(TAG, "Estimated " + sketch + ", median spend " + sketch.spendQuantile(0.5));
+                TopKResult result = sketch.topStores(request);
+                showCategoryRows(request, result);
+
+                final int storeCount = result.size();
+                final boolean complete = partial.isComplete();
+                final long errorBound = Math.max(1, sketch.getQuantityErrorBound());
+                post(listener -> listener.onCategoryLoaded(storeCount, complete, errorBound));
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                failed(future, error);
+            }
+        });
+    }
+
+    /**
+     * Start loading the purchases of a customer from a store, page by page
+     */
+    public void loadCustomerPurchases(final String customerName, final String storeName) {
+        cancelCurrentRequest();
+        stopSubscription();
+        stopPaging();
+        pagedLoader = new PagedListLoader(delivery,
+                (cursor, pageSize) -> masterClient.customerPurchasesByStorePage(customerName, storeName, cursor, pageSize),
+                MasterClient.DEFAULT_PAGE_SIZE, new PagedListLoader.Listener() {
+                    @Override
+                    public void onWindowChanged(List<Product> window, boolean firstPage, int shift) {
+                        if (firstPage) {
+                            purchase = null;
+                        }
+                        // Only the pages around the visible rows are kept
+                        rows.clear();
+                        rows.addAll(window);
+                        rowsChanged();
+                        post(listener -> listener.onPageLoaded(firstPage, shift));
+                    }
+
+                    @Override
+                    public void onPageFailed(Throwable error) {
+                        post(listener -> listener.onRequestFailed(error));
+                    }
+                });
+        pagedLoader.loadFirstPage();
+    }
+
+    /**
+     * Cancel the request in flight, if any
+     */
+    public void cancelCurrentRequest() {
+        if (currentRequest != null) {
+            currentRequest.cancel(true);
+            currentRequest = null;
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        // The screen is finished, nobody will read the results anymore
+        Log.d(TAG, "Screen finished, cancelling requests");
+        if (masterClient != null) {
+            Log.d(TAG, "Startup timings: " + masterClient.getStartupTimings());
+            Log.d(TAG, "Negative cache: " + masterClient.getNegativeCache());
+        }
+        cancelCurrentRequest();
+        stopPaging();
+        stopSubscription();
+        listener = null;
+        pending = null;
+        if (masterClient != null) {
+            // The cancels sent above are delivered before the transport closes
+            Log.d(TAG, "Wasted work: " + masterClient.getWastedWork());
+            masterClient.shutdown();
+        }
+        if (purchaseUploader != null) {
+            // Purchases not uploaded yet stay queued for the next start
+            Log.d(TAG, "Purchase upload: " + purchaseUploader);
+            purchaseUploader.shutdown();
+            uploadTransport.shutdown();
+        }
+    }
+
+    /**
+     * Replace the rows with the ranked stores of a category and its total row
+     */
+    private void showCategoryRows(TopKRequest request, TopKResult result) {
+        rows.clear();
+        for (int i = 0; i < result.size(); i++) {
+            rows.add(new Product(result.getStoreName(i), request.getCategory(), result.getQuantity(i), 0.0));
+        }
+        Product totalProduct = new Product("Total Sales", "", result.getTotalSales(), 0.0);
+        totalProduct.setRowKind(Product.RowKind.TOTAL);
+        rows.add(totalProduct);
+        rowsChanged();
+    }
+
+    /**
+     * Put the rows in an order, in the background. An order already computed for
+     * these rows is shown at once.
+     */
+    public void sortRows(final RowSorter.Order order) {
+        rowOrder = order;
+        if (rowSorter == null) {
+            rowSorter = new RowSorter(rows);
+        }
+        final RowSorter sorter = rowSorter;
+        if (sorter.isSorted(order)) {
+            showSortedRows(order, sorter.sorted(order));
+            return;
+        }
+        delivery.deliver(CompletableFuture.supplyAsync(() -> sorter.sorted(order)),
+                new UiDelivery.ResultCallback<List<Product>>() {
+                    @Override
+                    public void onResult(List<Product> sorted) {
+                        // Dropped if the rows changed or another order was asked meanwhile
+                        if (rowSorter == sorter && order.equals(rowOrder)) {
+                            showSortedRows(order, sorted);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        Log.d(TAG, "Sorting rows failed: " + error.getMessage());
+                    }
+                });
+    }
+
+    private void showSortedRows(RowSorter.Order order, List<Product> sorted) {
+        rows.clear();
+        rows.addAll(sorted);
+        // Not kept for a later listener, the next activity shows the rows as they are
+        if (listener != null) {
+            listener.onRowsSorted(order);
+        }
+    }
+
+    /**
+     * The rows were replaced or extended, sort them again in the order asked, if any
+     */
+    private void rowsChanged() {
+        rowSorter = null;
+        if (rowOrder != null) {
+            sortRows(rowOrder);
+        }
+    }
+
+    /**
+     * Subscribe to the sales of the category and re-rank its rows as they change
+     */
+    private void subscribe(final TopKRequest request) {
+        // Same master as the category's queries, it already has the category's data cached
+        Endpoint master = masterClient.endpointFor(request.getCategory());
+        final CategorySubscription[] self = new CategorySubscription[1];
+        self[0] = new CategorySubscription(master.getHost(), master.getPort(), request.getCategory(),
+                CATEGORY_UPDATE_COALESCE_MS, new CategorySubscription.Listener() {
+                    @Override
+                    public void onSalesChanged(HashMap<String, Integer> salesByStore, int totalSales) {
+                        // Ranked on the subscription thread, shown on the main thread
+                        final TopKResult result = TopKSelector.select(salesByStore, request);
+                        delivery.post(() -> {
+                            if (subscription != self[0]) {
+                                return;
+                            }
+                            showCategoryRows(request, result);
+                            final int storeCount = result.size();
+                            post(listener -> listener.onCategoryUpdated(storeCount));
+                        });
+                    }
+
+                    @Override
+                    public void onSubscriptionFailed(Throwable error) {
+                        Log.d(TAG, "Live category updates not available: " + error.getMessage());
+                    }
+                });
+        subscription = self[0];
+        subscription.start();
+    }
+
+    private void stopSubscription() {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+    }
+
+    private void stopPaging() {
+        if (pagedLoader != null) {
+            pagedLoader.cancel();
+            pagedLoader = null;
+        }
+    }
+
+    private void failed(CompletableFuture<?> future, Throwable error) {
+        if (currentRequest != future) {
+            return;
+        }
+        currentRequest = null;
+        post(listener -> listener.onRequestFailed(error));
+    }
+
+    /**
+     * Deliver a result to the attached listener, or keep it for the next one
+     */
+    private void post(Pending result) {
+        if (listener != null) {
+            result.deliverTo(listener);
+        } else {
+            pending = result;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * One page of a cursor-paged server response
+ */
+public class ResultPage implements Serializable {
+    private static final long serialVersionUID = -1145971093982034921L;
+
+    private ArrayList<Product> items;
+    private String nextCursor;
+
+    /**
+     * Constructor
+     * @param items Products of this page
+     * @param nextCursor Cursor of the next page, or null if this is the last page
+     */
+    public ResultPage(ArrayList<Product> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and Setters
+    public ArrayList<Product> getItems() {
+        return items;
+    }
+
+    public void setItems(ArrayList<Product> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultPage{" +
+                "items=" + (items != null ? items.size() : 0) +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Transport that spreads requests over several masters.
+ *
+ * Every endpoint has its own transport. A request goes to the endpoint chosen by the
+ * routing strategy: CONSISTENT_HASH keeps the requests for one category or store on the
+ * same master (and moves only that master's share when one is added or lost),
+ * LEAST_OUTSTANDING picks the master with the fewest requests in flight.
+ *
+ * A request that fails with a network error marks its master down for a while and is
+ * sent again to the next healthy master, so the caller only sees the error when every
+ * master failed. A timed out request also marks its master down but is not sent again:
+ * the caller has already waited its whole timeout and the master may still be working
+ * on it. Errors in the answer itself (ProtocolException, unknown classes), map-reduce
+ * requests past their deadline and purchase uploads are not retried either. Uploads
+ * always go to the same master, whatever the strategy and its health, so when
+ * PurchaseUploader resends a batch with the same ids it reaches the master that may
+ * already have stored it.
+ */
+public class RoutingTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger("RoutingTransport");
+
+    // Points per endpoint on the hash ring, evens out the shares of few endpoints
+    private static final int VIRTUAL_NODES = 100;
+
+    /**
+     * How a master is chosen for a request
+     */
+    public enum Strategy {
+        CONSISTENT_HASH, LEAST_OUTSTANDING
+    }
+
+    /**
+     * Creates the transport of one endpoint
+     */
+    public interface TransportFactory {
+        Transport create(Endpoint endpoint);
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Transport[] transports;
+    private final Strategy strategy;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final AtomicInteger nextRoundRobin = new AtomicInteger();
+
+    public RoutingTransport(List<Endpoint> endpoints, Strategy strategy, TransportFactory factory) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No master endpoints");
+        }
+        this.endpoints = new ArrayList<>(endpoints);
+        this.strategy = strategy;
+        this.transports = new Transport[endpoints.size()];
+        for (int i = 0; i < transports.length; i++) {
+            transports[i] = factory.create(this.endpoints.get(i));
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                ring.put(KeyHash.hash(this.endpoints.get(i) + "#" + v), i);
+            }
+        }
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        attempt(requestType, params, readTimeoutMs, routingKey(requestType, params), new HashSet<Integer>(), result);
+        return result;
+    }
+
+    /**
+     * @return The healthy endpoint a request with this routing key goes to, or any endpoint if none is healthy
+     */
+    public Endpoint route(String key) {
+        int index = choose(key, new HashSet<Integer>());
+        return endpoints.get(index >= 0 ? index : 0);
+    }
+
+    /**
+     * Connect to every master ahead of the first request
+     */
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        CompletableFuture<?>[] warmUps = new CompletableFuture<?>[transports.length];
+        for (int i = 0; i < transports.length; i++) {
+            final Endpoint endpoint = endpoints.get(i);
+            // A master that cannot be reached is marked down before the first request
+            warmUps[i] = transports[i].warmUp().whenComplete((ignored, error) -> {
+                if (error != null) {
+                    endpoint.failed();
+                }
+            });
+        }
+        return CompletableFuture.allOf(warmUps).exceptionally(error -> null);
+    }
+
+    @Override
+    public void shutdown() {
+        for (Transport transport : transports) {
+            transport.shutdown();
+        }
+    }
+
+    private void attempt(final String requestType, final Object[] params, final int readTimeoutMs,
+                         final String key, final HashSet<Integer> tried, final CompletableFuture<Object> result) {
+        // Uploads always go to the owner of their key, so a resent batch reaches the master
+        // that deduplicates its ids even while that master is marked down
+        final int index = PurchaseUploader.REQUEST_UPLOAD_PURCHASES.equals(requestType)
+                ? onRing(key, tried, false) : choose(key, tried);
+        if (index < 0) {
+            result.completeExceptionally(new IOException("No master available"));
+            return;
+        }
+        tried.add(index);
+        final Endpoint endpoint = endpoints.get(index);
+        endpoint.requestStarted();
+        final CompletableFuture<Object> sent = transports[index].send(requestType, params, readTimeoutMs);
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+        sent.whenComplete((response, error) -> {
+            endpoint.requestFinished();
+            if (error == null) {
+                endpoint.succeeded();
+                result.complete(response);
+                return;
+            }
+            Throwable cause = MasterClient.unwrap(error);
+            if (result.isDone() || cause instanceof CancellationException) {
+                return;
+            }
+            if (cause instanceof IOException && !(cause instanceof ProtocolException)) {
+                endpoint.failed();
+                if (tried.size() < endpoints.size() && mayFailOver(requestType, params, cause)) {
+                    LOG.fine(requestType + " failed on " + endpoint + ", failing over: " + cause);
+                    attempt(requestType, params, readTimeoutMs, key, tried, result);
+                    return;
+                }
+            }
+            result.completeExceptionally(cause);
+        });
+    }
+
+    /**
+     * @return Whether a request that failed with this network error may go to another master
+     */
+    private static boolean mayFailOver(String requestType, Object[] params, Throwable cause) {
+        if (cause instanceof SocketTimeoutException
+                || PurchaseUploader.REQUEST_UPLOAD_PURCHASES.equals(requestType)) {
+            return false;
+        }
+        for (Object param : params) {
+            if (param instanceof MapReduceRequest) {
+                long deadline = ((MapReduceRequest) param).getDeadline();
+                if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Index of the endpoint for the request, -1 if every endpoint was tried
+     */
+    private int choose(String key, HashSet<Integer> tried) {
+        int chosen = strategy == Strategy.CONSISTENT_HASH ? onRing(key, tried, true) : leastOutstanding(tried, true);
+        if (chosen < 0) {
+            // Every untried master is marked down, try them anyway rather than fail at once
+            chosen = strategy == Strategy.CONSISTENT_HASH ? onRing(key, tried, false) : leastOutstanding(tried, false);
+        }
+        return chosen;
+    }
+
+    /**
+     * Walk the ring clockwise from the key to the first suitable endpoint
+     */
+    private int onRing(String key, HashSet<Integer> tried, boolean healthyOnly) {
+        Map.Entry<Long, Integer> start = ring.ceilingEntry(KeyHash.hash(key));
+        if (start == null) {
+            start = ring.firstEntry();
+        }
+        for (Map.Entry<Long, Integer> entry : ring.tailMap(start.getKey()).entrySet()) {
+            if (suitable(entry.getValue(), tried, healthyOnly)) {
+                return entry.getValue();
+            }
+        }
+        for (Map.Entry<Long, Integer> entry : ring.headMap(start.getKey()).entrySet()) {
+            if (suitable(entry.getValue(), tried, healthyOnly)) {
+                return entry.getValue();
+            }
+        }
+        return -1;
+    }
+
+    private int leastOutstanding(HashSet<Integer> tried, boolean healthyOnly) {
+        int best = -1;
+        // Start at a rotating offset so ties are spread evenly
+        int offset = Math.abs(nextRoundRobin.getAndIncrement() % endpoints.size());
+        for (int n = 0; n < endpoints.size(); n++) {
+            int i = (offset + n) % endpoints.size();
+            if (suitable(i, tried, healthyOnly)
+                    && (best < 0 || endpoints.get(i).getOutstanding() < endpoints.get(best).getOutstanding())) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private boolean suitable(int index, HashSet<Integer> tried, boolean healthyOnly) {
+        return !tried.contains(index) && (!healthyOnly || endpoints.get(index).isHealthy());
+    }
+
+    /**
+     * Key a request is hashed on: the category or store it is about
+     */
+    static String routingKey(String requestType, Object[] params) {
+        if (params.length > 0) {
+            Object first = params[0];
+            if (first instanceof TopKRequest) {
+                return ((TopKRequest) first).getCategory();
+            }
+            if (first instanceof MapReduceRequest && ((MapReduceRequest) first).getFoodCategories() != null
+                    && !((MapReduceRequest) first).getFoodCategories().isEmpty()) {
+                return ((MapReduceRequest) first).getFoodCategories().get(0);
+            }
+            // Store requests carry the store after the customer name
+            if (params.length > 1 && params[1] instanceof String
+                    && requestType.startsWith(MasterClient.REQUEST_CUSTOMER_PURCHASES_BY_STORE)) {
+                return (String) params[1];
+            }
+            if (first instanceof String) {
+                return (String) first;
+            }
+        }
+        return requestType;
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.myapplication;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Sorted and grouped orders of one list of result rows.
+ *
+ * Rows are sorted by one key, ties broken by store name and then category, so the
+ * order does not depend on the order the rows arrived in. Names are compared with
+ * the collator of the device locale, accents and case aside. Total rows stay at the
+ * end. Grouped by category, the rows of each category come together, sorted by the
+ * key within the group, each group followed by a SUBTOTAL row.
+ *
+ * The sort keys are kept in a ProductTable built the first time an order needs them,
+ * with one collation key per distinct name and category, and every order is kept once
+ * sorted, so switching back to an order costs nothing.
+ * Lists of PARALLEL_THRESHOLD rows or more are sorted with Arrays.parallelSort.
+ * Sorting may be slow, call sorted() off the main thread.
+ */
+public class RowSorter {
+    // Below this the fork/join overhead outweighs the parallel speedup
+    static final int PARALLEL_THRESHOLD = 10000;
+
+    public enum SortKey {
+        QUANTITY,
+        AMOUNT,
+        STORE_NAME,
+        CATEGORY
+    }
+
+    /**
+     * A sort key, its direction and whether rows are grouped by category
+     */
+    public static final class Order {
+        private final SortKey key;
+        private final boolean descending;
+        private final boolean groupByCategory;
+
+        public Order(SortKey key, boolean descending, boolean groupByCategory) {
+            this.key = key;
+            this.descending = descending;
+            this.groupByCategory = groupByCategory;
+        }
+
+        public SortKey getKey() {
+            return key;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        public boolean isGroupByCategory() {
+            return groupByCategory;
+        }
+
+        /**
+         * @return The same order in the other direction
+         */
+        public Order reversed() {
+            return new Order(key, !descending, groupByCategory);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Order)) {
+                return false;
+            }
+            Order other = (Order) o;
+            return key == other.key && descending == other.descending && groupByCategory == other.groupByCategory;
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 4 + (descending ? 2 : 0) + (groupByCategory ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return key + (descending ? " desc" : " asc") + (groupByCategory ? " by category" : "");
+        }
+    }
+
+    private final List<Product> items;
+    private final List<Product> totals;
+    private final HashMap<Order, List<Product>> sorted = new HashMap<>();
+    // Sort keys of the items, row i of the table is items.get(i)
+    private ProductTable table;
+    // Collation keys by dictionary id of the table
+    private CollationKey[] nameKeys;
+    private CollationKey[] categoryKeys;
+
+    /**
+     * @param rows Rows as received, TOTAL rows are kept at the end and SUBTOTAL rows dropped
+     */
+    public RowSorter(List<Product> rows) {
+        this.items = new ArrayList<>(rows.size());
+        this.totals = new ArrayList<>(1);
+        for (Product row : rows) {
+            if (row.getRowKind() == Product.RowKind.TOTAL) {
+                totals.add(row);
+            } else if (row.getRowKind() == Product.RowKind.ITEM) {
+                items.add(row);
+            }
+        }
+    }
+
+    /**
+     * @return The rows in the order, computed the first time and kept
+     */
+    public synchronized List<Product> sorted(Order order) {
+        List<Product> result = sorted.get(order);
+        if (result == null) {
+            result = Collections.unmodifiableList(sort(order));
+            sorted.put(order, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return True if the order is already computed
+     */
+    public synchronized boolean isSorted(Order order) {
+        return sorted.containsKey(order);
+    }
+
+    private ArrayList<Product> sort(Order order) {
+        if (table == null) {
+            table = ProductTable.fromProducts(items);
+            Collator collator = Collator.getInstance();
+            collator.setStrength(Collator.SECONDARY);
+            nameKeys = new CollationKey[table.nameCount()];
+            for (int id = 0; id < nameKeys.length; id++) {
+                nameKeys[id] = collationKey(collator, table.nameOf(id));
+            }
+            categoryKeys = new CollationKey[table.categoryCount()];
+            for (int id = 0; id < categoryKeys.length; id++) {
+                categoryKeys[id] = collationKey(collator, table.categoryOf(id));
+            }
+        }
+        Integer[] rows = new Integer[table.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        Comparator<Integer> comparator = comparator(order.key, order.descending);
+        if (order.groupByCategory) {
+            // Groups in category order, whatever the key
+            comparator = ((Comparator<Integer>) this::compareCategories).thenComparing(comparator);
+        }
+        if (rows.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(rows, comparator);
+        } else {
+            Arrays.sort(rows, comparator);
+        }
+
+        ArrayList<Product> result = new ArrayList<>(rows.length + totals.size() + 16);
+        int groupStart = 0;
+        for (int i = 0; i < rows.length; i++) {
+            result.add(items.get(rows[i]));
+            if (order.groupByCategory && (i + 1 == rows.length || compareCategories(rows[i + 1], rows[i]) != 0)) {
+                result.add(subtotal(rows, groupStart, i + 1));
+                groupStart = i + 1;
+            }
+        }
+        result.addAll(totals);
+        return result;
+    }
+
+    private Comparator<Integer> comparator(SortKey key, boolean descending) {
+        Comparator<Integer> primary;
+        switch (key) {
+            case QUANTITY:
+                primary = (a, b) -> Integer.compare(table.getQuantity(a), table.getQuantity(b));
+                break;
+            case AMOUNT:
+                primary = (a, b) -> Long.compare(table.getAmountCents(a), table.getAmountCents(b));
+                break;
+            case CATEGORY:
+                primary = this::compareCategories;
+                break;
+            default:
+                primary = this::compareNames;
+                break;
+        }
+        if (descending) {
+            primary = primary.reversed();
+        }
+        // Ties in a fixed order, so equal rows do not swap between sorts
+        return primary.thenComparing(this::compareNames).thenComparing(this::compareCategories);
+    }
+
+    private int compareNames(int a, int b) {
+        int idA = table.getNameId(a);
+        int idB = table.getNameId(b);
+        return idA == idB ? 0 : nameKeys[idA].compareTo(nameKeys[idB]);
+    }
+
+    private int compareCategories(int a, int b) {
+        int idA = table.getCategoryId(a);
+        int idB = table.getCategoryId(b);
+        return idA == idB ? 0 : categoryKeys[idA].compareTo(categoryKeys[idB]);
+    }
+
+    private static CollationKey collationKey(Collator collator, String value) {
+        return collator.getCollationKey(value != null ? value : "");
+    }
+
+    /**
+     * Row with the quantity and amount of a category group, shown as quantity x price
+     */
+    private Product subtotal(Integer[] rows, int from, int to) {
+        int quantity = 0;
+        long amountCents = 0;
+        for (int i = from; i < to; i++) {
+            quantity += table.getQuantity(rows[i]);
+            amountCents += table.getAmountCents(rows[i]);
+        }
+        double price = quantity != 0 ? amountCents / 100.0 / quantity : 0.0;
+        Product subtotal = new Product("Σύνολο", table.getCategory(rows[from]), quantity, price);
+        subtotal.setRowKind(Product.RowKind.SUBTOTAL);
+        return subtotal;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * Change of the sales of a category, pushed by the master to a category subscription.
+ * Deltas of one subscription are numbered 1, 2, 3, ... so a lost one can be noticed.
+ * A delta numbered 0 is a heartbeat: it changes nothing and only shows the connection is alive.
+ */
+public class SalesDelta implements Serializable {
+    private static final long serialVersionUID = -2112519948201296998L;
+
+    public static final long HEARTBEAT_SEQUENCE = 0;
+
+    private String category;
+    private HashMap<String, Integer> changes;
+    private long sequence;
+
+    /**
+     * Constructor
+     * @param changes Quantity added per store since the previous delta
+     * @param sequence Number of the delta within its subscription
+     */
+    public SalesDelta(String category, HashMap<String, Integer> changes, long sequence) {
+        this.category = category;
+        this.changes = changes;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return A heartbeat for a subscription to the category
+     */
+    public static SalesDelta heartbeat(String category) {
+        return new SalesDelta(category, new HashMap<String, Integer>(), HEARTBEAT_SEQUENCE);
+    }
+
+    public boolean isHeartbeat() {
+        return sequence == HEARTBEAT_SEQUENCE;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public HashMap<String, Integer> getChanges() {
+        return changes;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "SalesDelta{" +
+                "category='" + category + '\'' +
+                ", changes=" + changes +
+                ", sequence=" + sequence +
+                '}';
+    }
+}
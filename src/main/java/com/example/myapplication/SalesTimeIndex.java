@@ -0,0 +1,171 @@
+package com.example.myapplication;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Quantities sold per category and store, bucketed by purchase time. Categories are
+ * matched ignoring case.
+ *
+ * Two rings of buckets: one per minute for the last two hours and one per hour for the
+ * last week. A purchase is added to its minute and its hour bucket. A bucket is reused
+ * when time comes round to its slot again, so the index never holds more than
+ * MINUTE_BUCKETS + HOUR_BUCKETS buckets and older purchases expire by themselves.
+ *
+ * A range is summed from at most MINUTE_BUCKETS + HOUR_BUCKETS buckets, whatever the
+ * number of purchases: minute buckets from the start of the previous hour on, hour
+ * buckets before that. Its ends are rounded out to the bucket they fall in, the
+ * SalesWindow tells the range actually counted.
+ *
+ * The master keeps one, fed from the purchases it stores, and answers
+ * categorySalesWindow requests from it.
+ */
+public class SalesTimeIndex {
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    // Two hours, so minute buckets always cover the current and the previous hour
+    private static final int MINUTE_BUCKETS = 120;
+    private static final int HOUR_BUCKETS = 7 * 24;
+
+    /**
+     * Quantity per category and store within one minute or hour
+     */
+    private static final class Bucket {
+        long period = -1;
+        final HashMap<String, HashMap<String, Integer>> salesByCategory = new HashMap<>();
+
+        /**
+         * @return True if the bucket holds the period, after clearing it if it held an older one
+         */
+        boolean claim(long newPeriod) {
+            if (period == newPeriod) {
+                return true;
+            }
+            if (period > newPeriod) {
+                return false;
+            }
+            period = newPeriod;
+            salesByCategory.clear();
+            return true;
+        }
+
+        void add(String category, String storeName, int quantity) {
+            HashMap<String, Integer> sales = salesByCategory.get(category);
+            if (sales == null) {
+                sales = new HashMap<>();
+                salesByCategory.put(category, sales);
+            }
+            Integer current = sales.get(storeName);
+            sales.put(storeName, (current != null ? current : 0) + quantity);
+        }
+    }
+
+    private final Bucket[] minutes = new Bucket[MINUTE_BUCKETS];
+    private final Bucket[] hours = new Bucket[HOUR_BUCKETS];
+    // Latest minute seen, purchases and queries never move it back
+    private long currentMinute;
+
+    public SalesTimeIndex() {
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = new Bucket();
+        }
+        for (int i = 0; i < hours.length; i++) {
+            hours[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Count the products of a purchase from a store at its purchase time. Purchases
+     * older than the hour buckets are dropped.
+     */
+    public synchronized void add(String storeName, Purchase purchase) {
+        long time = purchase.getPurchaseTime() != 0 ? purchase.getPurchaseTime() : System.currentTimeMillis();
+        long minute = Math.floorDiv(time, MINUTE_MS);
+        long hour = Math.floorDiv(time, HOUR_MS);
+        currentMinute = Math.max(currentMinute, minute);
+        Bucket minuteBucket = minute > currentMinute - MINUTE_BUCKETS ? minutes[slot(minute, MINUTE_BUCKETS)] : null;
+        Bucket hourBucket = hour > currentMinute / 60 - HOUR_BUCKETS ? hours[slot(hour, HOUR_BUCKETS)] : null;
+        if (minuteBucket != null && !minuteBucket.claim(minute)) {
+            minuteBucket = null;
+        }
+        if (hourBucket != null && !hourBucket.claim(hour)) {
+            hourBucket = null;
+        }
+        for (Product product : purchase.getPurchasedProducts()) {
+            if (product.getCategory() == null) {
+                continue;
+            }
+            String category = product.getCategory().toLowerCase(Locale.ROOT);
+            if (minuteBucket != null) {
+                minuteBucket.add(category, storeName, product.getQuantity());
+            }
+            if (hourBucket != null) {
+                hourBucket.add(category, storeName, product.getQuantity());
+            }
+        }
+    }
+
+    /**
+     * Sales of a category in the last windowMs, e.g. the last hour
+     */
+    public SalesWindow lastWindow(String category, long windowMs) {
+        long now = System.currentTimeMillis();
+        return range(category, now - windowMs, now);
+    }
+
+    /**
+     * Sales of a category from fromMs up to toMs. Parts of the range older than a
+     * week are not counted, SalesWindow.getFrom() then lies after fromMs.
+     */
+    public SalesWindow range(String category, long fromMs, long toMs) {
+        return range(category, fromMs, toMs, System.currentTimeMillis());
+    }
+
+    /**
+     * range as of the time nowMs, the buckets are chosen relative to it
+     */
+    synchronized SalesWindow range(String category, long fromMs, long toMs, long nowMs) {
+        long nowMinute = Math.max(currentMinute, Math.floorDiv(nowMs, MINUTE_MS));
+        currentMinute = nowMinute;
+        // Minutes from the start of the previous hour, hours before that
+        long firstMinute = (nowMinute / 60 - 1) * 60;
+        long firstHour = nowMinute / 60 - HOUR_BUCKETS + 1;
+
+        String key = category.toLowerCase(Locale.ROOT);
+        HashMap<String, Integer> salesByStore = new HashMap<>();
+        long fromHour = Math.max(Math.floorDiv(fromMs, HOUR_MS), firstHour);
+        long toHour = Math.min(Math.floorDiv(toMs - 1, HOUR_MS), firstMinute / 60 - 1);
+        for (long hour = fromHour; hour <= toHour; hour++) {
+            addTo(salesByStore, hours[slot(hour, HOUR_BUCKETS)], hour, key);
+        }
+        long fromMinute = Math.max(Math.floorDiv(fromMs, MINUTE_MS), firstMinute);
+        long toMinute = Math.min(Math.floorDiv(toMs - 1, MINUTE_MS), nowMinute);
+        for (long minute = fromMinute; minute <= toMinute; minute++) {
+            addTo(salesByStore, minutes[slot(minute, MINUTE_BUCKETS)], minute, key);
+        }
+
+        long countedFrom = fromHour <= toHour ? fromHour * HOUR_MS : fromMinute * MINUTE_MS;
+        long countedTo = fromMinute <= toMinute ? (toMinute + 1) * MINUTE_MS : (toHour + 1) * HOUR_MS;
+        return new SalesWindow(category, countedFrom, Math.max(countedTo, countedFrom), salesByStore);
+    }
+
+    private static void addTo(HashMap<String, Integer> salesByStore, Bucket bucket, long period, String key) {
+        if (bucket.period != period) {
+            // Nothing sold in that period, the slot holds an older or newer one
+            return;
+        }
+        HashMap<String, Integer> sales = bucket.salesByCategory.get(key);
+        if (sales == null) {
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : sales.entrySet()) {
+            Integer current = salesByStore.get(entry.getKey());
+            salesByStore.put(entry.getKey(), (current != null ? current : 0) + entry.getValue());
+        }
+    }
+
+    private static int slot(long period, int buckets) {
+        return (int) Math.floorMod(period, (long) buckets);
+    }
+}
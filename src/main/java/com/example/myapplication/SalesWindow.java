@@ -0,0 +1,69 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * Quantity sold per store for a category within a time range, as counted by a SalesTimeIndex
+ */
+public class SalesWindow implements Serializable {
+    private static final long serialVersionUID = -2971569482096174290L;
+
+    private String category;
+    private long from;
+    private long to;
+    private HashMap<String, Integer> salesByStore;
+
+    /**
+     * Constructor
+     * @param from Start of the range counted, in milliseconds since the epoch
+     * @param to End of the range counted, exclusive
+     */
+    public SalesWindow(String category, long from, long to, HashMap<String, Integer> salesByStore) {
+        this.category = category;
+        this.from = from;
+        this.to = to;
+        this.salesByStore = salesByStore;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * @return Start of the range counted, the requested start rounded down to its bucket
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * @return End of the range counted, the requested end rounded up to its bucket
+     */
+    public long getTo() {
+        return to;
+    }
+
+    public HashMap<String, Integer> getSalesByStore() {
+        return salesByStore;
+    }
+
+    public int getTotalSales() {
+        int total = 0;
+        for (int quantity : salesByStore.values()) {
+            total += quantity;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "SalesWindow{" +
+                "category='" + category + '\'' +
+                ", from=" + from +
+                ", to=" + to +
+                ", stores=" + salesByStore.size() +
+                ", total=" + getTotalSales() +
+                '}';
+    }
+}
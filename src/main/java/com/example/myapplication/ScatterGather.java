@@ -0,0 +1,243 @@
+package com.example.myapplication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.net.SocketTimeoutException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Sends one request to every worker of a ShardMap in parallel and merges their answers,
+ * so heavy aggregations do not have to pass through the master.
+ *
+ * Workers speak the master protocol: a request type followed by a MapReduceRequest.
+ * Each worker gets its own time limit. A worker that fails or does not answer in time
+ * is left out of the merged value and listed in the PartialResult, so a slow worker
+ * makes the answer less complete instead of late. Only when no worker answers does
+ * the request fail.
+ *
+ * A MapReduceRequest sent to the workers carries the shard time limit as its deadline,
+ * so a late worker stops on its own. When the gather is cancelled, the workers still
+ * working on it are told to stop.
+ *
+ * The answers are merged pairwise in a fork/join tree, so merging n shards takes
+ * log2(n) rounds of parallel merges. On a single core they are folded in order instead.
+ */
+public class ScatterGather {
+    private static final Logger LOG = Logger.getLogger("ScatterGather");
+
+    /**
+     * Turns the raw answer of one worker into its typed part
+     */
+    public interface PartMapper<T> {
+        T map(Object response) throws Exception;
+    }
+
+    /**
+     * Combines two parts, may reuse either of them
+     */
+    public interface Merger<T> {
+        T merge(T first, T second);
+    }
+
+    /**
+     * Tells a worker to stop working on a request
+     */
+    public interface Canceller {
+        void cancel(Transport worker, MapReduceRequest work);
+    }
+
+    private final RoutingTransport.TransportFactory factory;
+    private final WastedWork wastedWork;
+    private final Canceller canceller;
+    // One transport per worker address, guarded by this
+    private final HashMap<String, Transport> transports = new HashMap<>();
+
+    public ScatterGather(RoutingTransport.TransportFactory factory, WastedWork wastedWork, Canceller canceller) {
+        this.factory = factory;
+        this.wastedWork = wastedWork;
+        this.canceller = canceller;
+    }
+
+    /**
+     * Send the request to every worker and merge the parts that arrive within the time limit
+     * @param shardTimeoutMs Time limit of each worker, connecting included
+     */
+    public <T> CompletableFuture<PartialResult<T>> gather(ShardMap shards, String requestType, Object[] params,
+                                                          int shardTimeoutMs, final PartMapper<T> mapper,
+                                                          final Merger<T> merger) {
+        final List<Endpoint> workers = shards.getEndpoints();
+        // The stamped copy goes into a copy of the params, the caller's are left as they were
+        final Object[] sentParams = params.clone();
+        final MapReduceRequest work = MasterClient.stampWork(sentParams, shardTimeoutMs);
+        if (work != null && work.isExpired()) {
+            wastedWork.expiredBeforeSend();
+            CompletableFuture<PartialResult<T>> expired = new CompletableFuture<>();
+            expired.completeExceptionally(new TimeoutException("Deadline passed before the request was sent"));
+            return expired;
+        }
+        final ArrayList<CompletableFuture<Object>> sent = new ArrayList<>(workers.size());
+        final ArrayList<CompletableFuture<T>> parts = new ArrayList<>(workers.size());
+        for (Endpoint worker : workers) {
+            CompletableFuture<Object> response = MasterClient.withTimeout(
+                    transportFor(worker).send(requestType, sentParams, shardTimeoutMs),
+                    shardTimeoutMs, TimeUnit.MILLISECONDS);
+            sent.add(response);
+            parts.add(response.thenApplyAsync(raw -> {
+                try {
+                    return mapper.map(raw);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+
+        // Failed parts are only left out, so wait for every part to settle
+        CompletableFuture<?>[] settled = new CompletableFuture<?>[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            settled[i] = parts.get(i).handle((value, error) -> null);
+        }
+        final CompletableFuture<PartialResult<T>> result = CompletableFuture.allOf(settled).thenApplyAsync(ignored -> {
+            ArrayList<T> answered = new ArrayList<>(parts.size());
+            ArrayList<String> missing = new ArrayList<>();
+            Throwable firstError = null;
+            for (int i = 0; i < parts.size(); i++) {
+                try {
+                    answered.add(parts.get(i).join());
+                } catch (CompletionException e) {
+                    Throwable cause = MasterClient.unwrap(e);
+                    LOG.fine("Shard " + workers.get(i) + " left out: " + cause);
+                    if (cause instanceof TimeoutException || cause instanceof SocketTimeoutException) {
+                        wastedWork.deadlineMissed();
+                    }
+                    missing.add(workers.get(i).toString());
+                    if (firstError == null) {
+                        firstError = cause;
+                    }
+                }
+            }
+            if (answered.isEmpty()) {
+                throw new CompletionException(firstError != null ? firstError
+                        : new IllegalStateException("Shard map has no workers"));
+            }
+            T merged;
+            if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+                merged = ForkJoinPool.commonPool().invoke(new MergeTask<>(answered, 0, answered.size(), merger));
+            } else {
+                // One core runs the tree in sequence anyway, folding into one result merges fewer keys
+                merged = answered.get(0);
+                for (int i = 1; i < answered.size(); i++) {
+                    merged = merger.merge(merged, answered.get(i));
+                }
+            }
+            return new PartialResult<>(merged, workers.size(), missing);
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                for (int i = 0; i < sent.size(); i++) {
+                    if (sent.get(i).cancel(true)) {
+                        wastedWork.requestCancelled();
+                        if (work != null) {
+                            canceller.cancel(transportFor(workers.get(i)), work);
+                        }
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Add the quantities of the second map to the first, both count sales per store
+     */
+    public static HashMap<String, Integer> mergeSales(HashMap<String, Integer> first, HashMap<String, Integer> second) {
+        // Fold the smaller map into the larger one
+        HashMap<String, Integer> into = first.size() >= second.size() ? first : second;
+        HashMap<String, Integer> from = into == first ? second : first;
+        for (Map.Entry<String, Integer> entry : from.entrySet()) {
+            Integer quantity = into.get(entry.getKey());
+            into.put(entry.getKey(), quantity != null ? quantity + entry.getValue() : entry.getValue());
+        }
+        return into;
+    }
+
+    /**
+     * Append the stores of the second list, skipping stores the first already has
+     */
+    public static ArrayList<Store> mergeStores(ArrayList<Store> first, ArrayList<Store> second) {
+        HashSet<String> names = new HashSet<>(first.size() * 2);
+        for (Store store : first) {
+            names.add(store.getStoreName());
+        }
+        first.ensureCapacity(first.size() + second.size());
+        for (Store store : second) {
+            // A store is on one shard only, except while the master is moving it
+            if (names.add(store.getStoreName())) {
+                first.add(store);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Close the worker transports
+     */
+    public synchronized void shutdown() {
+        for (Transport transport : transports.values()) {
+            transport.shutdown();
+        }
+        transports.clear();
+    }
+
+    private synchronized Transport transportFor(Endpoint worker) {
+        Transport transport = transports.get(worker.toString());
+        if (transport == null) {
+            transport = factory.create(worker);
+            transports.put(worker.toString(), transport);
+        }
+        return transport;
+    }
+
+    /**
+     * Merges parts [from, to) by merging both halves in parallel, then the two results
+     */
+    static final class MergeTask<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = -7436554345566958586L;
+
+        private final List<T> parts;
+        private final int from;
+        private final int to;
+        private final Merger<T> merger;
+
+        MergeTask(List<T> parts, int from, int to, Merger<T> merger) {
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+            this.merger = merger;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                return parts.get(from);
+            }
+            if (to - from == 2) {
+                return merger.merge(parts.get(from), parts.get(from + 1));
+            }
+            int middle = (from + to) >>> 1;
+            MergeTask<T> left = new MergeTask<>(parts, from, middle, merger);
+            left.fork();
+            T right = new MergeTask<>(parts, middle, to, merger).compute();
+            // Left before right, so list parts keep the shard order
+            return merger.merge(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport for masters that stay on Java serialization but keep a session open.
+ *
+ * One ObjectOutputStream/ObjectInputStream pair lives for the whole connection, so
+ * the stream header and the class descriptors of MapReduceRequest, Product, Store,
+ * HashMap etc. are sent once instead of once per request. The session starts with
+ * the REQUEST_SESSION request type, after which requests and responses alternate
+ * on the same streams. The output stream is reset() every RESET_EVERY_REQUESTS
+ * requests or RESET_EVERY_BYTES bytes, which bounds the back-reference tables on
+ * both sides. It is also reset after every request with a param other than a String,
+ * boxed primitive or enum: a param object changed and sent again must reach the
+ * master with its new state, not as a back-reference to the old one.
+ *
+ * Requests are sent one at a time in call order. Only for masters that accept the
+ * REQUEST_SESSION request type, pass it to the MasterClient(Transport, PriceLookup)
+ * constructor.
+ */
+public class SessionTransport implements Transport {
+    private static final Logger LOG = Logger.getLogger("SessionTransport");
+
+    public static final String REQUEST_SESSION = "session";
+
+    // Thresholds for resetting the object stream back-reference tables
+    private static final int RESET_EVERY_REQUESTS = 100;
+    private static final long RESET_EVERY_BYTES = 1024 * 1024;
+
+    private final String serverIP;
+    private final int serverPort;
+    private final TransportStats stats = new TransportStats();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SessionTransport-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Session state, only touched by the executor thread except for cancellation
+    private volatile Socket socket;
+    private volatile CompletableFuture<Object> running;
+    private ObjectOutputStream out;
+    private ObjectInputStream in;
+    private int requestsSinceReset;
+    private long bytesAtReset;
+
+    public SessionTransport(String serverIP, int serverPort) {
+        this.serverIP = serverIP;
+        this.serverPort = serverPort;
+    }
+
+    public TransportStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public CompletableFuture<Object> send(final String requestType, final Object[] params, final int readTimeoutMs) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return; // cancelled while queued
+                }
+                running = future;
+                try {
+                    future.complete(exchange(requestType, params, readTimeoutMs));
+                } catch (Throwable e) {
+                    // The streams may be out of step now, start a new session next time
+                    closeSession();
+                    future.completeExceptionally(e);
+                } finally {
+                    running = null;
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor was shut down
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled() && running == future) {
+                // A cancelled exchange leaves its response unread on the session
+                Socket current = socket;
+                if (current != null) {
+                    closeQuietly(current);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Open the session before the first request, on the executor thread
+     */
+    @Override
+    public CompletableFuture<Void> warmUp() {
+        final CompletableFuture<Void> opened = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (socket == null) {
+                        openSession();
+                    }
+                    opened.complete(null);
+                } catch (Throwable e) {
+                    opened.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor was shut down
+            opened.completeExceptionally(e);
+        }
+        return opened;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        Socket current = socket;
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    private Object exchange(String requestType, Object[] params, int readTimeoutMs)
+            throws IOException, ClassNotFoundException {
+        if (socket == null) {
+            openSession();
+        }
+        socket.setSoTimeout(readTimeoutMs);
+
+        boolean mutableParams = false;
+        out.writeObject(requestType);
+        for (Object param : params) {
+            out.writeObject(param);
+            mutableParams |= !isImmutable(param);
+        }
+
+        // Forget the objects sent so far once they may change or enough has been written
+        requestsSinceReset++;
+        if (mutableParams || requestsSinceReset >= RESET_EVERY_REQUESTS
+                || stats.getBytesSent() - bytesAtReset >= RESET_EVERY_BYTES) {
+            LOG.fine("Resetting session stream after " + requestsSinceReset + " requests");
+            out.reset();
+            requestsSinceReset = 0;
+            bytesAtReset = stats.getBytesSent();
+        }
+        out.flush();
+        Object response = in.readObject();
+        stats.requestCompleted();
+        return response;
+    }
+
+    /**
+     * @return True if the param cannot change once sent, so a back-reference to it stays right
+     */
+    private static boolean isImmutable(Object param) {
+        return param == null || param instanceof String || param instanceof Integer || param instanceof Long
+                || param instanceof Double || param instanceof Float || param instanceof Short
+                || param instanceof Byte || param instanceof Boolean || param instanceof Character
+                || param instanceof Enum;
+    }
+
+    private void openSession() throws IOException {
+        Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(serverIP, serverPort));
+            newSocket.setTcpNoDelay(true);
+            OutputStream rawOut = new BufferedOutputStream(stats.count(newSocket.getOutputStream()));
+            out = new ObjectOutputStream(rawOut);
+            out.writeObject(REQUEST_SESSION);
+            out.flush();
+            in = new ObjectInputStream(new BufferedInputStream(stats.count(newSocket.getInputStream())));
+        } catch (IOException e) {
+            closeQuietly(newSocket);
+            throw e;
+        }
+        socket = newSocket;
+        requestsSinceReset = 0;
+        bytesAtReset = stats.getBytesSent();
+    }
+
+    private void closeSession() {
+        Socket current = socket;
+        socket = null;
+        out = null;
+        in = null;
+        if (current != null) {
+            closeQuietly(current);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Error closing socket", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Workers that hold the shards of the store data, as published by the master.
+ * Every store lives on exactly one worker, so the results of the workers can be
+ * merged without counting a store twice.
+ */
+public class ShardMap implements Serializable {
+    private static final long serialVersionUID = 1334041476612362622L;
+
+    private ArrayList<String> workers;
+    private long version;
+
+    /**
+     * Constructor
+     * @param workers Worker addresses as host:port, one per shard
+     * @param version Changes whenever the master moves shards between workers
+     */
+    public ShardMap(ArrayList<String> workers, long version) {
+        this.workers = workers;
+        this.version = version;
+    }
+
+    public List<String> getWorkers() {
+        return workers;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return workers != null ? workers.size() : 0;
+    }
+
+    /**
+     * @return The worker addresses parsed into endpoints
+     */
+    public List<Endpoint> getEndpoints() {
+        ArrayList<Endpoint> endpoints = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            endpoints.add(Endpoint.parse(workers.get(i)));
+        }
+        return endpoints;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardMap{" +
+                "workers=" + workers +
+                ", version=" + version +
+                '}';
+    }
+}
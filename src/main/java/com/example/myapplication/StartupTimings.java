@@ -0,0 +1,92 @@
+package com.example.myapplication;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records how long startup, the warm-up and the first query of a MasterClient take,
+ * measured from the creation of the client
+ */
+public class StartupTimings {
+    private final long createdNanos = System.nanoTime();
+    private final AtomicBoolean firstQuerySent = new AtomicBoolean();
+
+    private volatile long startupMs = -1;
+    private volatile long warmUpMs = -1;
+    private volatile long firstQuerySentAtMs = -1;
+    private volatile long firstQueryMs = -1;
+
+    /**
+     * @return Milliseconds since the client was created
+     */
+    public long sinceCreatedMs() {
+        return (System.nanoTime() - createdNanos) / 1000000;
+    }
+
+    /**
+     * @param startupMs Time the first screen took to be created
+     */
+    public void setStartupMs(long startupMs) {
+        this.startupMs = startupMs;
+    }
+
+    void warmUpFinished(long startNanos) {
+        warmUpMs = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * @return True for the first query only
+     */
+    boolean querySent() {
+        if (firstQuerySent.compareAndSet(false, true)) {
+            firstQuerySentAtMs = sinceCreatedMs();
+            return true;
+        }
+        return false;
+    }
+
+    void firstQueryFinished(long startNanos) {
+        firstQueryMs = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    public boolean isFirstQuerySent() {
+        return firstQuerySent.get();
+    }
+
+    /**
+     * @return Time the first screen took to be created, or -1 if not recorded
+     */
+    public long getStartupMs() {
+        return startupMs;
+    }
+
+    /**
+     * @return Duration of the warm-up, or -1 if it has not finished
+     */
+    public long getWarmUpMs() {
+        return warmUpMs;
+    }
+
+    /**
+     * @return When the first query was sent, after the client was created, or -1
+     */
+    public long getFirstQuerySentAtMs() {
+        return firstQuerySentAtMs;
+    }
+
+    /**
+     * @return Round trip of the first query, or -1 if it has not finished
+     */
+    public long getFirstQueryMs() {
+        return firstQueryMs;
+    }
+
+    @Override
+    public String toString() {
+        return "StartupTimings{" +
+                "startupMs=" + startupMs +
+                ", warmUpMs=" + warmUpMs +
+                ", firstQuerySentAtMs=" + firstQuerySentAtMs +
+                ", firstQueryMs=" + firstQueryMs +
+                '}';
+    }
+}
@@ -2,12 +2,16 @@ package com.example.myapplication;
 
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.List;
 import java.util.*;
 
 public class Store implements Serializable {
 
+    private static final long serialVersionUID = -2512227591635007582L;
+
     private String storeName;
     private double latitude;
     private double longitude;
@@ -18,10 +22,10 @@ public class Store implements Serializable {
     private ArrayList<Purchase> purchases;
 
     public Store(String storeName, double latitude, double longitude, String category, double stars, int noOfReviews, String storeLogoPath, ArrayList<Product> products) {
-        this.storeName = storeName;
+        this.storeName = StringPool.intern(storeName);
         this.latitude = latitude;
         this.longitude = longitude;
-        this.category = category;
+        this.category = StringPool.intern(category);
         this.stars = stars;
         this.noOfReviews = noOfReviews;
         this.products = products;
@@ -53,6 +57,7 @@ public class Store implements Serializable {
         return noOfReviews;
     }
 
+    // Reviews arriving on several threads are counted with StoreRating, applyTo() sets both fields at once
     public void setStars(double stars) {
         this.stars = stars;
     }
@@ -80,6 +85,13 @@ public class Store implements Serializable {
         return "$$$";
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Store names and categories repeat across responses, keep one copy of each
+        storeName = StringPool.intern(storeName);
+        category = StringPool.intern(category);
+    }
+
     @Override
     public String toString() {
         return "Store Name: " + storeName + "\nCategory: " + category + "\nStars: " + String.format("%.2f", stars) + "\nReviews: " + noOfReviews;
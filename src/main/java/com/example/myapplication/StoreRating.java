@@ -0,0 +1,119 @@
+package com.example.myapplication;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Star rating of one store, updated by many threads at once without locks.
+ *
+ * Each review adds its stars, in hundredths, and a count of one to a single LongAdder
+ * as one packed long: the stars above COUNT_BITS, the count below. Threads add to
+ * different cells of the adder, so they rarely contend, and every cell holds whole
+ * reviews only. A snapshot therefore always pairs a star sum with the exact number of
+ * reviews it came from, even while reviews are being added, and the average is never
+ * computed from a sum and a count of different moments.
+ *
+ * The packing limits a store to MAX_REVIEWS reviews, further reviews are refused.
+ * Checking the count and adding the review are two steps, so reviews added at the
+ * same moment may all pass the check; the packing keeps room for MAX_CONCURRENT_ADDS
+ * of them past MAX_REVIEWS before the count would carry into the stars.
+ */
+public class StoreRating {
+    static final int COUNT_BITS = 27;
+    static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    // Threads that may pass the MAX_REVIEWS check at the same moment
+    static final long MAX_CONCURRENT_ADDS = 1L << 20;
+    // With at most 5.00 stars per review the star sum fits in the remaining 36 bits
+    public static final long MAX_REVIEWS = COUNT_MASK - MAX_CONCURRENT_ADDS;
+    public static final double MAX_STARS = 5.0;
+
+    /**
+     * Average stars and number of reviews counted together
+     */
+    public static final class Snapshot {
+        private final double stars;
+        private final int noOfReviews;
+
+        Snapshot(double stars, int noOfReviews) {
+            this.stars = stars;
+            this.noOfReviews = noOfReviews;
+        }
+
+        public double getStars() {
+            return stars;
+        }
+
+        public int getNoOfReviews() {
+            return noOfReviews;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.2f stars, %d reviews", stars, noOfReviews);
+        }
+    }
+
+    private final LongAdder packed = new LongAdder();
+
+    public StoreRating() {
+    }
+
+    /**
+     * @param stars Average stars of the reviews counted so far
+     * @param noOfReviews Reviews counted so far
+     */
+    public StoreRating(double stars, int noOfReviews) {
+        if (noOfReviews < 0 || noOfReviews > MAX_REVIEWS || stars < 0 || stars > MAX_STARS) {
+            throw new IllegalArgumentException("Invalid rating: " + stars + " stars, " + noOfReviews + " reviews");
+        }
+        packed.add((Math.round(stars * 100 * noOfReviews) << COUNT_BITS) + noOfReviews);
+    }
+
+    /**
+     * Rating starting from the stars and reviews of a store
+     */
+    public static StoreRating of(Store store) {
+        return new StoreRating(store.getStars(), store.getNoOfReviews());
+    }
+
+    /**
+     * Count one review, safe to call from any number of threads
+     * @param stars From 0 to MAX_STARS, kept to two decimals
+     * @throws IllegalStateException If the store already has MAX_REVIEWS reviews
+     */
+    public void addReview(double stars) {
+        if (!(stars >= 0 && stars <= MAX_STARS)) {
+            throw new IllegalArgumentException("Invalid stars: " + stars);
+        }
+        // Reads the cells without writing them, so the adds stay uncontended
+        if ((packed.sum() & COUNT_MASK) >= MAX_REVIEWS) {
+            throw new IllegalStateException("Store already has the maximum of " + MAX_REVIEWS + " reviews");
+        }
+        packed.add((Math.round(stars * 100) << COUNT_BITS) + 1);
+    }
+
+    /**
+     * @return The average stars and the number of reviews they were averaged over
+     */
+    public Snapshot snapshot() {
+        long value = packed.sum();
+        int count = (int) (value & COUNT_MASK);
+        long hundredths = value >>> COUNT_BITS;
+        return new Snapshot(count != 0 ? hundredths / 100.0 / count : 0.0, count);
+    }
+
+    /**
+     * Set the stars and reviews of a store from one snapshot
+     * @return The snapshot written to the store
+     */
+    public Snapshot applyTo(Store store) {
+        Snapshot snapshot = snapshot();
+        store.setStars(snapshot.getStars());
+        store.setNoOfReviews(snapshot.getNoOfReviews());
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.myapplication;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Shared dictionary of the strings that repeat across the catalog and the
+ * server responses: store names, product names and categories. Every
+ * deserialized Product and Store would otherwise hold its own copy of them.
+ *
+ * The pool only holds its strings weakly: once no Product, Store or index uses
+ * a string any more, the garbage collector drops it from the pool as well, so the
+ * pool never outgrows the data the app still holds.
+ */
+public final class StringPool {
+
+    // Values are weak too, a strong value would keep its own key reachable
+    private static final WeakHashMap<String, WeakReference<String>> POOL = new WeakHashMap<>();
+
+    private StringPool() {
+    }
+
+    /**
+     * @return The pooled instance equal to value, or null for null
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (POOL) {
+            WeakReference<String> ref = POOL.get(value);
+            String pooled = ref != null ? ref.get() : null;
+            if (pooled != null) {
+                return pooled;
+            }
+            POOL.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    /**
+     * @return Number of distinct pooled strings still in use
+     */
+    public static int size() {
+        synchronized (POOL) {
+            return POOL.size();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Autocomplete adapter that suggests catalog names from the view model's prefix index.
+ * Until the index is built no suggestions are shown.
+ */
+public class SuggestionAdapter extends ArrayAdapter<PrefixIndex.Suggestion> {
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final RequestViewModel viewModel;
+    private final PrefixIndex.Kind kind;
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence typed) {
+            // Runs on the filter thread, the index is read-only
+            PrefixIndex index = viewModel.getSuggestionIndex();
+            List<PrefixIndex.Suggestion> suggestions = index != null && typed != null
+                    ? index.suggest(typed.toString(), MAX_SUGGESTIONS, kind)
+                    : Collections.<PrefixIndex.Suggestion>emptyList();
+            FilterResults results = new FilterResults();
+            results.values = suggestions;
+            results.count = suggestions.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence typed, FilterResults results) {
+            clear();
+            if (results.values != null) {
+                addAll((List<PrefixIndex.Suggestion>) results.values);
+            }
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public CharSequence convertResultToString(Object result) {
+            return ((PrefixIndex.Suggestion) result).getText();
+        }
+    };
+
+    /**
+     * @param kind Kind of names to suggest, or null for all
+     */
+    public SuggestionAdapter(Context context, RequestViewModel viewModel, PrefixIndex.Kind kind) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<PrefixIndex.Suggestion>());
+        this.viewModel = viewModel;
+        this.kind = kind;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.myapplication;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest of a distribution of values, e.g. purchase amounts.
+ *
+ * Values are kept as weighted centroids sorted by mean. Centroids near the median may
+ * hold many values, centroids near the tails only a few, so quantiles are accurate
+ * to a fraction of a percent of rank at the median and better towards 0 and 1. The
+ * number of centroids stays below about compression, whatever the number of values.
+ * Digests are merged by merging their centroids, so workers can summarize their own
+ * purchases and the master combines the digests.
+ */
+public class TDigest implements Serializable {
+    private static final long serialVersionUID = 5825794022703783379L;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // Values not merged into the centroids yet, merged before the digest is written
+    private transient double[] bufferMeans;
+    private transient double[] bufferWeights;
+    private transient int buffered;
+
+    /**
+     * @param compression Bounds the number of centroids, 100 keeps the digest around 2 KB
+     */
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2 + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        allocateBuffer();
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    private void add(double mean, double weight) {
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = mean;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, mean);
+        max = Math.max(max, mean);
+    }
+
+    /**
+     * Add the values of another digest
+     * @return This digest
+     */
+    public TDigest merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // The centroid means lie inside the range of the values, keep the real extremes
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * @param q Quantile between 0 and 1, 0.5 for the median
+     * @return Estimated value at the quantile, NaN if the digest is empty
+     */
+    public double quantile(double q) {
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1 || q <= 0) {
+            return q <= 0 ? min : means[0];
+        }
+        if (q >= 1) {
+            return max;
+        }
+        double target = q * totalWeight;
+        // Each centroid sits at the middle of the weight it covers
+        double center = weights[0] / 2;
+        if (target < center) {
+            return min + (means[0] - min) * target / center;
+        }
+        for (int i = 1; i < centroids; i++) {
+            double nextCenter = center + (weights[i - 1] + weights[i]) / 2;
+            if (target < nextCenter) {
+                return means[i - 1] + (means[i] - means[i - 1]) * (target - center) / (nextCenter - center);
+            }
+            center = nextCenter;
+        }
+        double last = totalWeight - center;
+        return means[centroids - 1] + (max - means[centroids - 1]) * (target - center) / Math.max(last, 1e-9);
+    }
+
+    /**
+     * @return Number of values added
+     */
+    public long size() {
+        return Math.round(totalWeight);
+    }
+
+    public int getCentroidCount() {
+        compress();
+        return centroids;
+    }
+
+    /**
+     * Merge the buffered values into the centroids
+     */
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int count = centroids + buffered;
+        double[] allMeans = Arrays.copyOf(means, count);
+        double[] allWeights = Arrays.copyOf(weights, count);
+        System.arraycopy(bufferMeans, 0, allMeans, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, centroids, buffered);
+        buffered = 0;
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(allMeans[a], allMeans[b]));
+
+        // Sweep in order of mean, merging while the centroid stays within one unit of the scale
+        centroids = 0;
+        double weightSoFar = 0;
+        double mean = allMeans[order[0]];
+        double weight = allWeights[order[0]];
+        double limit = weightLimit(0);
+        for (int i = 1; i < count; i++) {
+            double nextMean = allMeans[order[i]];
+            double nextWeight = allWeights[order[i]];
+            if (weightSoFar + weight + nextWeight <= limit) {
+                weight += nextWeight;
+                mean += (nextMean - mean) * nextWeight / weight;
+            } else {
+                weightSoFar += weight;
+                store(mean, weight);
+                limit = weightLimit(weightSoFar / totalWeight);
+                mean = nextMean;
+                weight = nextWeight;
+            }
+        }
+        store(mean, weight);
+    }
+
+    /**
+     * Cumulative weight up to which a centroid starting at quantile q may grow,
+     * from the k1 scale function k(q) = compression / (2 pi) * asin(2q - 1)
+     */
+    private double weightLimit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+        double next = Math.sin(Math.min(k + 1, compression / 4) * 2 * Math.PI / compression);
+        return (next + 1) / 2 * totalWeight;
+    }
+
+    private void allocateBuffer() {
+        bufferMeans = new double[means.length * 4];
+        bufferWeights = new double[means.length * 4];
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        compress();
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        allocateBuffer();
+    }
+
+    private void store(double mean, double weight) {
+        if (centroids == means.length) {
+            means = Arrays.copyOf(means, centroids * 2);
+            weights = Arrays.copyOf(weights, centroids * 2);
+        }
+        means[centroids] = mean;
+        weights[centroids] = weight;
+        centroids++;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+
+/**
+ * Parameters of a top-K category sales request
+ */
+public class TopKRequest implements Serializable {
+    private static final long serialVersionUID = 1666637893161494844L;
+
+    private String category;
+    private int k;
+    private boolean descending;
+    private int minQuantity;
+
+    /**
+     * Constructor
+     * @param category Product category to rank the stores for
+     * @param k Maximum number of stores to return
+     * @param descending True for best selling stores first, false for least selling first
+     * @param minQuantity Stores that sold less than this are left out
+     */
+    public TopKRequest(String category, int k, boolean descending, int minQuantity) {
+        this.category = category;
+        this.k = k;
+        this.descending = descending;
+        this.minQuantity = minQuantity;
+    }
+
+    // Getters and Setters
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void setK(int k) {
+        this.k = k;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public int getMinQuantity() {
+        return minQuantity;
+    }
+
+    public void setMinQuantity(int minQuantity) {
+        this.minQuantity = minQuantity;
+    }
+
+    @Override
+    public String toString() {
+        return "TopKRequest{" +
+                "category='" + category + '\'' +
+                ", k=" + k +
+                ", descending=" + descending +
+                ", minQuantity=" + minQuantity +
+                '}';
+    }
+}
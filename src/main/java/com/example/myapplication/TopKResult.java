@@ -0,0 +1,59 @@
+package com.example.myapplication;
+
+import java.io.Serializable;
+
+/**
+ * Ranked category sales returned for a TopKRequest.
+ * Stores are already in the requested order, the total covers every store.
+ */
+public class TopKResult implements Serializable {
+    private static final long serialVersionUID = 4065210357408170092L;
+
+    private String[] storeNames;
+    private int[] quantities;
+    private int totalSales;
+    private int matchingStores;
+
+    /**
+     * Constructor
+     * @param storeNames Store names in ranking order
+     * @param quantities Quantity sold by the store at the same index
+     * @param totalSales Quantity sold by all stores of the category
+     * @param matchingStores Number of stores that passed the minimum quantity
+     */
+    public TopKResult(String[] storeNames, int[] quantities, int totalSales, int matchingStores) {
+        this.storeNames = storeNames;
+        this.quantities = quantities;
+        this.totalSales = totalSales;
+        this.matchingStores = matchingStores;
+    }
+
+    public int size() {
+        return storeNames.length;
+    }
+
+    public String getStoreName(int index) {
+        return storeNames[index];
+    }
+
+    public int getQuantity(int index) {
+        return quantities[index];
+    }
+
+    public int getTotalSales() {
+        return totalSales;
+    }
+
+    public int getMatchingStores() {
+        return matchingStores;
+    }
+
+    @Override
+    public String toString() {
+        return "TopKResult{" +
+                "size=" + storeNames.length +
+                ", totalSales=" + totalSales +
+                ", matchingStores=" + matchingStores +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.myapplication;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Picks the top K stores out of a sales-by-store map with a heap bounded to K entries,
+ * so ranking n stores costs O(n log K) time and O(K) extra memory.
+ * Used by the master to answer top-K requests, and by the client when an older master
+ * still answers with the full map.
+ */
+public final class TopKSelector {
+
+    private TopKSelector() {
+    }
+
+    /**
+     * Rank the stores of a category
+     * @param salesByStore Quantity sold per store
+     * @param request Ranking parameters
+     * @return The selected stores in the requested order, with the total of all stores
+     */
+    public static TopKResult select(Map<String, Integer> salesByStore, TopKRequest request) {
+        final int sign = request.isDescending() ? 1 : -1;
+        int k = Math.max(0, request.getK());
+
+        // The heap head is the entry that is ranked last, so it is the one evicted
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(Math.max(1, k),
+                (a, b) -> {
+                    int cmp = sign * Integer.compare(a.getValue(), b.getValue());
+                    // Ties are ranked by store name, so the order is stable between calls
+                    return cmp != 0 ? cmp : b.getKey().compareTo(a.getKey());
+                });
+
+        int totalSales = 0;
+        int matchingStores = 0;
+        for (Map.Entry<String, Integer> entry : salesByStore.entrySet()) {
+            int quantity = entry.getValue();
+            totalSales += quantity;
+            if (quantity < request.getMinQuantity()) {
+                continue;
+            }
+            matchingStores++;
+            if (k == 0) {
+                continue;
+            }
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (heap.comparator().compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        // Drain the heap from last ranked to first ranked
+        int size = heap.size();
+        String[] storeNames = new String[size];
+        int[] quantities = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            Map.Entry<String, Integer> entry = heap.poll();
+            storeNames[i] = entry.getKey();
+            quantities[i] = entry.getValue();
+        }
+        return new TopKResult(storeNames, quantities, totalSales, matchingStores);
+    }
+}
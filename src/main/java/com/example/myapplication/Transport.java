@@ -0,0 +1,32 @@
+package com.example.myapplication;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends one request to the master and completes with its raw response object.
+ * The request is the request type followed by its parameters, each written as
+ * a serialized object, and the response is a single serialized object.
+ * Cancelling the returned future aborts the exchange.
+ */
+public interface Transport {
+
+    /**
+     * @param requestType Request type written before the parameters
+     * @param params Request parameters, in protocol order
+     * @param readTimeoutMs Time to wait for the response once the request is sent
+     */
+    CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs);
+
+    /**
+     * Prepare for the first request, e.g. by connecting to the master ahead of time.
+     * Transports with nothing to prepare complete at once.
+     */
+    default CompletableFuture<Void> warmUp() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Release the transport threads, pending requests fail or are cancelled
+     */
+    void shutdown();
+}
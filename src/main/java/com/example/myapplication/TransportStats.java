@@ -0,0 +1,103 @@
+package com.example.myapplication;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests of a transport and the bytes it sends and receives,
+ * so the wire cost per request of the different protocol modes can be compared
+ */
+public class TransportStats {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public void requestCompleted() {
+        requests.incrementAndGet();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return Average bytes sent per completed request
+     */
+    public double getBytesSentPerRequest() {
+        long count = requests.get();
+        return count == 0 ? 0 : (double) bytesSent.get() / count;
+    }
+
+    /**
+     * @return Average bytes received per completed request
+     */
+    public double getBytesReceivedPerRequest() {
+        long count = requests.get();
+        return count == 0 ? 0 : (double) bytesReceived.get() / count;
+    }
+
+    /**
+     * Wrap a socket output stream so the bytes written through it are counted
+     */
+    public OutputStream count(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesSent.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesSent.addAndGet(len);
+            }
+        };
+    }
+
+    /**
+     * Wrap a socket input stream so the bytes read through it are counted
+     */
+    public InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) {
+                    bytesReceived.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = in.read(b, off, len);
+                if (read > 0) {
+                    bytesReceived.addAndGet(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "TransportStats{" +
+                "requests=" + requests.get() +
+                ", bytesSentPerRequest=" + String.format("%.1f", getBytesSentPerRequest()) +
+                ", bytesReceivedPerRequest=" + String.format("%.1f", getBytesReceivedPerRequest()) +
+                '}';
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.myapplication;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delivers the result of a MasterClient future to a callback on the main thread
+ */
+public class UiDelivery {
+    private Handler handler;
+
+    public UiDelivery() {
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Callback invoked on the main thread
+     */
+    public interface ResultCallback<T> {
+        void onResult(T result);
+
+        void onError(Throwable error);
+    }
+
+    /**
+     * Post the outcome of the future to the callback. Cancelled futures are not delivered.
+     */
+    public <T> void deliver(final CompletableFuture<T> future, final ResultCallback<T> callback) {
+        future.whenComplete((result, error) -> handler.post(() -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                callback.onError(unwrap(error));
+            } else {
+                callback.onResult(result);
+            }
+        }));
+    }
+
+    /**
+     * Run a task on the main thread after the work already queued there
+     */
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    /**
+     * Get the actual failure out of the wrappers added by CompletableFuture stages
+     */
+    public static Throwable unwrap(Throwable error) {
+        return MasterClient.unwrap(error);
+    }
+
+    /**
+     * @return True if the failure is only a cancellation
+     */
+    public static boolean isCancellation(Throwable error) {
+        return unwrap(error) instanceof CancellationException;
+    }
+}
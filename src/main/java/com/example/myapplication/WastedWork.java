@@ -0,0 +1,77 @@
+package com.example.myapplication;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests whose answer the client did not read, and what it did so the
+ * master and workers could stop working on them
+ */
+public class WastedWork {
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong cancelsSent = new AtomicLong();
+    private final AtomicLong cancelsFailed = new AtomicLong();
+    private final AtomicLong deadlinesMissed = new AtomicLong();
+    private final AtomicLong expiredBeforeSend = new AtomicLong();
+
+    /**
+     * A request was cancelled after it was sent, e.g. because the user left or asked again
+     */
+    public void requestCancelled() {
+        cancelled.incrementAndGet();
+    }
+
+    /**
+     * @param delivered False if the cancel did not reach the master
+     */
+    public void cancelSent(boolean delivered) {
+        cancelsSent.incrementAndGet();
+        if (!delivered) {
+            cancelsFailed.incrementAndGet();
+        }
+    }
+
+    /**
+     * No answer arrived before the deadline, the master stops on its own once it sees it passed
+     */
+    public void deadlineMissed() {
+        deadlinesMissed.incrementAndGet();
+    }
+
+    /**
+     * A request was not sent at all because its deadline had already passed
+     */
+    public void expiredBeforeSend() {
+        expiredBeforeSend.incrementAndGet();
+    }
+
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    public long getCancelsSent() {
+        return cancelsSent.get();
+    }
+
+    public long getCancelsFailed() {
+        return cancelsFailed.get();
+    }
+
+    public long getDeadlinesMissed() {
+        return deadlinesMissed.get();
+    }
+
+    public long getExpiredBeforeSend() {
+        return expiredBeforeSend.get();
+    }
+
+    @Override
+    public String toString() {
+        return "WastedWork{" +
+                "cancelled=" + cancelled.get() +
+                ", cancelsSent=" + cancelsSent.get() +
+                ", cancelsFailed=" + cancelsFailed.get() +
+                ", deadlinesMissed=" + deadlinesMissed.get() +
+                ", expiredBeforeSend=" + expiredBeforeSend.get() +
+                '}';
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.myapplication;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Snapshots compiled by CatalogSnapshotWriter read back as the catalog they came from
+ */
+public class CatalogSnapshotTest {
+
+    private static final String JSON = "[{\"StoreName\": \"Pizza Fun\", \"FoodCategory\": \"pizzeria\","
+            + " \"StoreLogo\": \"logo.png\", \"NoOfVotes\": 15, \"Latitude\": 37.99, \"Longitude\": 23.73,"
+            + " \"Stars\": 4.5, \"Products\": [{\"ProductName\": \"Margherita\", \"ProductType\": \"pizza\","
+            + " \"Available Amount\": 20, \"Price\": 8.5}, {\"ProductName\": \"Cola\", \"ProductType\": \"drink\","
+            + " \"Available Amount\": 50, \"Price\": 1.5}]},"
+            + " {\"StoreName\": \"Σουβλάκι Corner\", \"FoodCategory\": \"souvlaki\", \"StoreLogo\": \"\","
+            + " \"NoOfVotes\": 3, \"Latitude\": 38.0, \"Longitude\": 23.7, \"Stars\": 3.0, \"Products\": []}]";
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject store(String name, String category, long votes, double stars, JSONObject... products) {
+        JSONObject store = new JSONObject();
+        store.put("StoreName", name);
+        store.put("FoodCategory", category);
+        store.put("StoreLogo", name + ".png");
+        store.put("NoOfVotes", votes);
+        store.put("Latitude", 37.5);
+        store.put("Longitude", 23.5);
+        store.put("Stars", stars);
+        JSONArray list = new JSONArray();
+        list.addAll(Arrays.asList(products));
+        store.put("Products", list);
+        return store;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject product(String name, String type, long available, double price) {
+        JSONObject product = new JSONObject();
+        product.put("ProductName", name);
+        product.put("ProductType", type);
+        product.put("Available Amount", available);
+        product.put("Price", price);
+        return product;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void compiledStores_readBack() throws Exception {
+        JSONArray stores = new JSONArray();
+        stores.add(store("Pizza Fun", "pizzeria", 15, 4.5,
+                product("Margherita", "pizza", 20, 8.5), product("Cola", "drink", 50, 1.5)));
+        stores.add(store("Burger Hub", "burgers", 7, 3.5, product("Cola", "drink", 30, 1.75)));
+
+        CatalogSnapshot snapshot = CatalogSnapshot.read(ByteBuffer.wrap(CatalogSnapshotWriter.compile(stores, 42)));
+
+        assertEquals(42, snapshot.getSourceCrc());
+        assertEquals(2, snapshot.getStoreCount());
+        assertEquals(3, snapshot.getProductCount());
+        assertEquals("Burger Hub", snapshot.getStoreName(1));
+        assertEquals("burgers", snapshot.getStoreCategory(1));
+        assertEquals("Burger Hub.png", snapshot.getStoreLogo(1));
+        assertEquals(7, snapshot.getStoreReviews(1));
+        assertEquals(3.5, snapshot.getStoreStars(1), 0.0);
+        assertEquals(37.5, snapshot.getStoreLatitude(1), 0.0);
+        assertEquals(2, snapshot.getStoreProductCount(0));
+        assertEquals(2, snapshot.getFirstProduct(1));
+        assertEquals("Margherita", snapshot.getProductName(0));
+        assertEquals("pizza", snapshot.getProductType(0));
+        assertEquals(20, snapshot.getProductAvailable(0));
+        assertEquals(8.5, snapshot.getProductPrice(0), 0.0);
+    }
+
+    @Test
+    public void prices_areLookedUpIgnoringCase() throws Exception {
+        CatalogSnapshot snapshot = CatalogSnapshot.read(
+                ByteBuffer.wrap(CatalogSnapshotWriter.compile(JSON.getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(8.5, snapshot.getPrice("pizza fun", "MARGHERITA"), 0.0);
+        assertEquals(1.5, snapshot.getPrice("Pizza Fun", "Cola"), 0.0);
+        assertEquals(0.0, snapshot.getPrice("Pizza Fun", "Sushi"), 0.0);
+        assertEquals(0.0, snapshot.getPrice("Nowhere", "Cola"), 0.0);
+        assertEquals(1, snapshot.findStore("σουβλάκι corner"));
+        assertEquals(0, snapshot.getStoreProductCount(1));
+    }
+
+    @Test
+    public void snapshot_recordsChecksumOfItsJson() throws Exception {
+        byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+
+        CatalogSnapshot snapshot = CatalogSnapshot.read(ByteBuffer.wrap(CatalogSnapshotWriter.compile(json)));
+
+        assertEquals(CatalogSnapshotWriter.checksum(json), snapshot.getSourceCrc());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherBytes_areRejected() throws Exception {
+        CatalogSnapshot.read(ByteBuffer.wrap(new byte[64]));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshot_isRejected() throws Exception {
+        byte[] snapshot = CatalogSnapshotWriter.compile(JSON.getBytes(StandardCharsets.UTF_8));
+        CatalogSnapshot.read(ByteBuffer.wrap(Arrays.copyOf(snapshot, snapshot.length - 10)));
+    }
+
+    @Test(expected = IOException.class)
+    public void countsThatOverflowAnInt_areRejected() throws Exception {
+        ByteBuffer snapshot = ByteBuffer.wrap(CatalogSnapshotWriter.compile(JSON.getBytes(StandardCharsets.UTF_8)));
+        // 89478486 stores of 48 bytes wrap around to 32 bytes in int arithmetic
+        snapshot.putInt(20, 89478486);
+
+        CatalogSnapshot.read(snapshot);
+    }
+
+    @Test
+    public void decreasingStringOffsets_areRejected() throws Exception {
+        ByteBuffer snapshot = ByteBuffer.wrap(CatalogSnapshotWriter.compile(JSON.getBytes(StandardCharsets.UTF_8)));
+        int offsetsStart = CatalogSnapshot.HEADER_SIZE + snapshot.getInt(20) * CatalogSnapshot.STORE_RECORD
+                + snapshot.getInt(24) * CatalogSnapshot.PRODUCT_RECORD;
+        // Only the last offset used to be checked against the buffer
+        snapshot.putInt(offsetsStart + 4, Integer.MAX_VALUE);
+
+        try {
+            CatalogSnapshot.read(snapshot);
+            fail("Expected the snapshot to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("string offset"));
+        }
+    }
+
+    @Test
+    public void snapshotFailingWithARuntimeException_fallsBackToJson() {
+        CatalogPriceLookup lookup = new CatalogPriceLookup(new CatalogPriceLookup.Source() {
+            @Override
+            public byte[] readJson() {
+                return JSON.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public ByteBuffer readSnapshot() {
+                // What reading a damaged mapped file may throw
+                throw new BufferUnderflowException();
+            }
+        });
+
+        assertEquals(8.5, lookup.getPrice("Pizza Fun", "Margherita"), 0.0);
+        assertNotNull(lookup.getCatalog());
+    }
+
+    @Test
+    public void outdatedSnapshot_fallsBackToJson() throws Exception {
+        File directory = Files.createTempDirectory("catalog").toFile();
+        File json = new File(directory, CatalogPriceLookup.CATALOG_JSON);
+        File bin = new File(directory, CatalogPriceLookup.CATALOG_SNAPSHOT);
+        try {
+            try (FileOutputStream out = new FileOutputStream(json)) {
+                out.write(JSON.getBytes(StandardCharsets.UTF_8));
+            }
+            // Compiled from another version of store.json
+            try (FileOutputStream out = new FileOutputStream(bin)) {
+                out.write(CatalogSnapshotWriter.compile(new JSONArray(), 1));
+            }
+
+            CatalogPriceLookup lookup = CatalogPriceLookup.fromFiles(directory);
+
+            assertEquals(8.5, lookup.getPrice("Pizza Fun", "Margherita"), 0.0);
+            assertEquals(2, lookup.getCatalog().getStoreCount());
+        } finally {
+            json.delete();
+            bin.delete();
+            directory.delete();
+        }
+    }
+}
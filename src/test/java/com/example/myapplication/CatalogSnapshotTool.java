@@ -0,0 +1,32 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compiles store.json into the store.bin snapshot, at build time before the assets are packaged:
+ *
+ *   java com.example.myapplication.CatalogSnapshotTool src/main/assets/store.json src/main/assets/store.bin
+ */
+public final class CatalogSnapshotTool {
+
+    private CatalogSnapshotTool() {
+    }
+
+    public static void main(String[] args) throws IOException, ParseException {
+        if (args.length != 2) {
+            System.err.println("Usage: CatalogSnapshotTool <store.json> <store.bin>");
+            System.exit(1);
+        }
+        byte[] json = CatalogSnapshotWriter.readFully(new FileInputStream(args[0]));
+        byte[] snapshot = CatalogSnapshotWriter.compile(json);
+        try (OutputStream out = new FileOutputStream(new File(args[1]))) {
+            out.write(snapshot);
+        }
+        System.out.println("Wrote " + args[1] + " (" + snapshot.length + " bytes from " + json.length + " bytes of JSON)");
+    }
+}
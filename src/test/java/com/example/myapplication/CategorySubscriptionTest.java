@@ -0,0 +1,263 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * CategorySubscription against a stand-in master. Each test gives the master a script
+ * that serves one subscription connection, told which connection it is, 1 for the first.
+ */
+public class CategorySubscriptionTest {
+    private static final int TIMEOUT_MS = 10000;
+
+    /**
+     * What the master does on one subscription connection
+     */
+    private interface Script {
+        void serve(ObjectOutputStream out, int connection) throws Exception;
+    }
+
+    private ServerSocket server;
+    private volatile Script script;
+    // Time each subscription request arrived, in milliseconds
+    private final List<Long> connectedAt = Collections.synchronizedList(new ArrayList<Long>());
+    private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+    private CategorySubscription subscription;
+
+    private final CategorySubscription.Listener listener = new CategorySubscription.Listener() {
+        @Override
+        public void onSalesChanged(HashMap<String, Integer> salesByStore, int totalSales) {
+            events.add(totalSales);
+        }
+
+        @Override
+        public void onSubscriptionFailed(Throwable error) {
+            events.add(error);
+        }
+    };
+
+    @Before
+    public void startMaster() throws IOException {
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopMaster() throws IOException {
+        if (subscription != null) {
+            subscription.close();
+        }
+        server.close();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            // Request type and category
+            in.readObject();
+            in.readObject();
+            connectedAt.add(System.currentTimeMillis());
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            script.serve(out, connectedAt.size());
+        } catch (Exception e) {
+            // Client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private void subscribe(long coalesceMs, int readTimeoutMs) {
+        subscription = new CategorySubscription("127.0.0.1", server.getLocalPort(), "pizza", coalesceMs,
+                readTimeoutMs, listener);
+        subscription.start();
+    }
+
+    private static HashMap<String, Integer> sales(String store, int quantity) {
+        HashMap<String, Integer> sales = new HashMap<>();
+        sales.put(store, quantity);
+        return sales;
+    }
+
+    private static void send(ObjectOutputStream out, Object message) throws IOException {
+        out.writeObject(message);
+        out.flush();
+    }
+
+    private Object nextEvent() throws InterruptedException {
+        Object event = events.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("Listener was not called", event);
+        return event;
+    }
+
+    /**
+     * Keep the connection open until the client closes it
+     */
+    private static void idle() throws InterruptedException {
+        Thread.sleep(TIMEOUT_MS * 2);
+    }
+
+    @Test
+    public void deltas_areAppliedToTheSnapshot() throws Exception {
+        script = (out, connection) -> {
+            send(out, sales("Napoli", 5));
+            send(out, new SalesDelta("pizza", sales("Napoli", 2), 1));
+            send(out, new SalesDelta("pizza", sales("Roma", 4), 2));
+            idle();
+        };
+
+        subscribe(0, TIMEOUT_MS);
+
+        assertEquals(5, nextEvent());
+        assertEquals(7, nextEvent());
+        assertEquals(11, nextEvent());
+    }
+
+    @Test
+    public void sequenceGap_startsOverFromANewSnapshot() throws Exception {
+        script = (out, connection) -> {
+            if (connection == 1) {
+                send(out, sales("Napoli", 5));
+                send(out, new SalesDelta("pizza", sales("Napoli", 1), 1));
+                // Delta 2 lost
+                send(out, new SalesDelta("pizza", sales("Napoli", 1), 3));
+            } else {
+                send(out, sales("Napoli", 20));
+            }
+            idle();
+        };
+
+        subscribe(0, TIMEOUT_MS);
+
+        assertEquals(5, nextEvent());
+        assertEquals(6, nextEvent());
+        // Delta 3 is not applied, the state comes from the second snapshot
+        assertEquals(20, nextEvent());
+        assertEquals(2, connectedAt.size());
+    }
+
+    @Test
+    public void coalescing_callsTheListenerOncePerInterval() throws Exception {
+        script = (out, connection) -> {
+            send(out, sales("Napoli", 0));
+            for (int i = 1; i <= 10; i++) {
+                send(out, new SalesDelta("pizza", sales("Napoli", 1), i));
+            }
+            idle();
+        };
+
+        subscribe(300, TIMEOUT_MS);
+
+        assertEquals(0, nextEvent());
+        // All ten deltas in one call, with the state after the last
+        assertEquals(10, nextEvent());
+        assertNull(events.poll(600, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void unexpectedMessage_failsTheSubscriptionWithoutRetrying() throws Exception {
+        script = (out, connection) -> {
+            send(out, "not a sales map");
+            idle();
+        };
+
+        subscribe(0, TIMEOUT_MS);
+
+        assertTrue(nextEvent() instanceof ProtocolException);
+        Thread.sleep(1500);
+        assertEquals(1, connectedAt.size());
+    }
+
+    @Test
+    public void droppedConnections_areRetriedWithGrowingDelays() throws Exception {
+        // Closed before the snapshot every time, the delay is never reset
+        script = (out, connection) -> {
+        };
+
+        subscribe(0, TIMEOUT_MS);
+
+        long waitUntil = System.currentTimeMillis() + TIMEOUT_MS;
+        while (connectedAt.size() < 3 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(50);
+        }
+        assertTrue(connectedAt.size() >= 3);
+        long firstDelay = connectedAt.get(1) - connectedAt.get(0);
+        long secondDelay = connectedAt.get(2) - connectedAt.get(1);
+        assertTrue("first " + firstDelay, firstDelay >= 900);
+        assertTrue("second " + secondDelay, secondDelay >= 1900);
+    }
+
+    @Test
+    public void silentConnection_isReconnectedAfterTheReadTimeout() throws Exception {
+        script = (out, connection) -> {
+            send(out, sales("Napoli", connection));
+            idle();
+        };
+
+        subscribe(0, 300);
+
+        assertEquals(1, nextEvent());
+        assertEquals(2, nextEvent());
+    }
+
+    @Test
+    public void heartbeats_keepAQuietConnectionOpen() throws Exception {
+        script = (out, connection) -> {
+            send(out, sales("Napoli", 5));
+            for (int i = 0; i < 15; i++) {
+                Thread.sleep(100);
+                send(out, SalesDelta.heartbeat("pizza"));
+            }
+            send(out, new SalesDelta("pizza", sales("Napoli", 1), 1));
+            idle();
+        };
+
+        subscribe(0, 300);
+
+        assertEquals(5, nextEvent());
+        // Heartbeats are not deltas, the listener is only called for the real one
+        assertEquals(6, nextEvent());
+        assertEquals(1, connectedAt.size());
+    }
+
+    @Test
+    public void salesDelta_keepsItsSerialVersionUID() {
+        assertEquals(-2112519948201296998L, ObjectStreamClass.lookup(SalesDelta.class).getSerialVersionUID());
+    }
+}
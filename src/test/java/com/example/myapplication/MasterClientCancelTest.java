@@ -0,0 +1,221 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Deadlines, cancels and the WastedWork counters of MasterClient over a stand-in
+ * transport. A request type in answers is answered, one in errors fails, any other
+ * is held until the test completes or cancels it.
+ */
+public class MasterClientCancelTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    /**
+     * One request as the transport was asked to send it
+     */
+    private static final class Sent {
+        final String requestType;
+        final Object[] params;
+        final CompletableFuture<Object> future;
+
+        Sent(String requestType, Object[] params, CompletableFuture<Object> future) {
+            this.requestType = requestType;
+            this.params = params;
+            this.future = future;
+        }
+    }
+
+    private final HashMap<String, Object> answers = new HashMap<>();
+    private final HashMap<String, IOException> errors = new HashMap<>();
+    private final List<Sent> sent = Collections.synchronizedList(new ArrayList<Sent>());
+
+    private final Transport transport = new Transport() {
+        @Override
+        public CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            sent.add(new Sent(requestType, params, future));
+            if (answers.containsKey(requestType)) {
+                future.complete(answers.get(requestType));
+            } else if (errors.containsKey(requestType)) {
+                future.completeExceptionally(errors.get(requestType));
+            }
+            return future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    private final MasterClient client = new MasterClient(transport, (storeName, productName) -> 1.0);
+
+    @After
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    private List<Sent> sent(String requestType) {
+        List<Sent> matching = new ArrayList<>();
+        synchronized (sent) {
+            for (Sent request : sent) {
+                if (request.requestType.equals(requestType)) {
+                    matching.add(request);
+                }
+            }
+        }
+        return matching;
+    }
+
+    private Sent awaitSent(String requestType) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + TIMEOUT_MS;
+        while (sent(requestType).isEmpty() && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertFalse(requestType + " was not sent", sent(requestType).isEmpty());
+        return sent(requestType).get(0);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Expected the request to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return MasterClient.unwrap(e);
+        }
+    }
+
+    /**
+     * purchaseInfo with fetchProducts finding nothing, so it goes on to the client request
+     */
+    private CompletableFuture<Purchase> purchaseInfoOnTheClientRequest() {
+        answers.put(MasterClient.REQUEST_FETCH_PRODUCTS, new ArrayList<Product>());
+        return client.purchaseInfo("pizza");
+    }
+
+    @Test
+    public void requestPastItsDeadline_isNotSent() throws Exception {
+        ArrayList<String> workers = new ArrayList<>();
+        workers.add("127.0.0.1:1");
+        answers.put(MasterClient.REQUEST_SHARD_MAP, new ShardMap(workers, 1));
+        MapReduceRequest request = new MapReduceRequest();
+        request.setDeadline(System.currentTimeMillis() - 1);
+
+        Throwable error = failure(client.storesFromWorkers(request, TIMEOUT_MS));
+
+        assertTrue(error instanceof TimeoutException);
+        assertEquals(1, client.getWastedWork().getExpiredBeforeSend());
+        assertEquals(1, sent.size());
+        assertNull(request.getCancelToken());
+    }
+
+    @Test
+    public void cancellingARequestInFlight_sendsExactlyOneCancel() throws Exception {
+        answers.put(MasterClient.REQUEST_CANCEL, null);
+        CompletableFuture<Purchase> purchase = purchaseInfoOnTheClientRequest();
+        Sent request = awaitSent(MasterClient.REQUEST_CLIENT);
+
+        assertTrue(purchase.cancel(true));
+        purchase.cancel(true);
+
+        assertTrue(request.future.isCancelled());
+        List<Sent> cancels = sent(MasterClient.REQUEST_CANCEL);
+        assertEquals(1, cancels.size());
+        MapReduceRequest work = (MapReduceRequest) request.params[0];
+        assertEquals(work.getCancelToken(), ((MapReduceRequest) cancels.get(0).params[0]).getCancelToken());
+        assertEquals(1, client.getWastedWork().getCancelled());
+        assertEquals(1, client.getWastedWork().getCancelsSent());
+        assertEquals(0, client.getWastedWork().getCancelsFailed());
+    }
+
+    @Test
+    public void cancelDuringTheFirstStep_neverStartsTheNext() throws Exception {
+        CompletableFuture<Purchase> purchase = client.purchaseInfo("pizza");
+        Sent fetch = awaitSent(MasterClient.REQUEST_FETCH_PRODUCTS);
+
+        purchase.cancel(true);
+
+        assertTrue(fetch.future.isCancelled());
+        Thread.sleep(200);
+        assertTrue(sent(MasterClient.REQUEST_CLIENT).isEmpty());
+        // fetchProducts carries no MapReduceRequest, there is nothing to cancel on the master
+        assertTrue(sent(MasterClient.REQUEST_CANCEL).isEmpty());
+        assertEquals(1, client.getWastedWork().getCancelled());
+    }
+
+    @Test
+    public void cancelThatCannotBeDelivered_isCounted() throws Exception {
+        errors.put(MasterClient.REQUEST_CANCEL, new IOException("Connection refused"));
+        CompletableFuture<Purchase> purchase = purchaseInfoOnTheClientRequest();
+        awaitSent(MasterClient.REQUEST_CLIENT);
+
+        purchase.cancel(true);
+
+        assertEquals(1, client.getWastedWork().getCancelsSent());
+        assertEquals(1, client.getWastedWork().getCancelsFailed());
+    }
+
+    @Test
+    public void answeredRequest_isNotCancelled() throws Exception {
+        answers.put(MasterClient.REQUEST_CLIENT, new ArrayList<Store>());
+        CompletableFuture<Purchase> purchase = purchaseInfoOnTheClientRequest();
+
+        assertNotNull(purchase.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        purchase.cancel(true);
+
+        assertTrue(sent(MasterClient.REQUEST_CANCEL).isEmpty());
+        assertEquals(0, client.getWastedWork().getCancelled());
+    }
+
+    @Test
+    public void readTimeout_countsAMissedDeadline() throws Exception {
+        errors.put(MasterClient.REQUEST_PRODUCT_CATEGORY, new SocketTimeoutException("Read timed out"));
+
+        assertTrue(failure(client.productCategory("pizza")) instanceof SocketTimeoutException);
+        assertEquals(1, client.getWastedWork().getDeadlinesMissed());
+    }
+
+    @Test
+    public void stampWork_stampsACopyAndLeavesTheCallersRequest() {
+        MapReduceRequest request = new MapReduceRequest();
+        request.setRequestId("r1");
+        Object[] first = {request};
+        Object[] second = {request};
+        long before = System.currentTimeMillis();
+
+        MapReduceRequest stamped = MasterClient.stampWork(first, 1000);
+        MapReduceRequest again = MasterClient.stampWork(second, 1000);
+
+        assertSame(stamped, first[0]);
+        assertFalse(request == stamped);
+        assertEquals("r1", stamped.getRequestId());
+        assertTrue(stamped.getDeadline() >= before + 1000);
+        assertNotNull(stamped.getCancelToken());
+        assertNotEquals(stamped.getCancelToken(), again.getCancelToken());
+        assertEquals(0, request.getDeadline());
+        assertNull(request.getCancelToken());
+    }
+
+    @Test
+    public void stampWork_keepsADeadlineTheCallerSet() {
+        MapReduceRequest request = new MapReduceRequest();
+        request.setDeadline(42);
+
+        assertEquals(42, MasterClient.stampWork(new Object[]{request}, 1000).getDeadline());
+        assertNull(MasterClient.stampWork(new Object[]{"pizza"}, 1000));
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * MasterClient over NioTransport against a stand-in master speaking the one request per
+ * connection protocol. The master answers each request with what the test put in
+ * responses for its request type, a "silent" request is never answered.
+ */
+public class MasterClientTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    private ServerSocket server;
+    private final HashMap<String, Object> responses = new HashMap<>();
+    // Request type and params of every request the master read
+    private final List<List<Object>> requests = Collections.synchronizedList(new ArrayList<List<Object>>());
+    private MasterClient client;
+
+    @Before
+    public void startMaster() throws IOException {
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        client = new MasterClient("127.0.0.1", server.getLocalPort(), (storeName, productName) ->
+                "Pizza Hut".equals(storeName) && "Margherita".equals(productName) ? 8.5 : 1.0);
+    }
+
+    @After
+    public void stopMaster() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            String requestType = (String) in.readObject();
+            ArrayList<Object> request = new ArrayList<>();
+            request.add(requestType);
+            for (int i = 0; i < paramCount(requestType); i++) {
+                request.add(in.readObject());
+            }
+            requests.add(request);
+            if (!request.contains("silent")) {
+                ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeObject(responses.get(requestType));
+                out.flush();
+            }
+            // Wait for the client to close the connection
+            socket.getInputStream().read();
+        } catch (IOException | ClassNotFoundException e) {
+            // Spare connection closed without a request, or client gone
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static int paramCount(String requestType) {
+        if (MasterClient.REQUEST_KNOWN_KEYS.equals(requestType)) {
+            return 0;
+        }
+        return MasterClient.REQUEST_CUSTOMER_PURCHASES_BY_STORE.equals(requestType) ? 2 : 1;
+    }
+
+    private static HashMap<String, Integer> sales(Object... storesAndQuantities) {
+        HashMap<String, Integer> sales = new HashMap<>();
+        for (int i = 0; i < storesAndQuantities.length; i += 2) {
+            sales.put((String) storesAndQuantities[i], (Integer) storesAndQuantities[i + 1]);
+        }
+        return sales;
+    }
+
+    private static Throwable failure(Future<?> future) throws InterruptedException {
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Expected the request to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return MasterClient.unwrap(e);
+        } catch (TimeoutException e) {
+            fail("Request neither answered nor failed");
+            return null;
+        }
+    }
+
+    @Test
+    public void productCategory_returnsTheSalesMap() throws Exception {
+        responses.put(MasterClient.REQUEST_PRODUCT_CATEGORY, sales("Pizza Hut", 12, "Zen Sushi", 3));
+
+        HashMap<String, Integer> result = client.productCategory("pizza").get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(sales("Pizza Hut", 12, "Zen Sushi", 3), result);
+        assertEquals(Arrays.<Object>asList(MasterClient.REQUEST_PRODUCT_CATEGORY, "pizza"), requests.get(0));
+    }
+
+    @Test
+    public void productCategoryTopK_ranksTheFullMapOfAnOlderMaster() throws Exception {
+        responses.put(MasterClient.REQUEST_PRODUCT_CATEGORY_TOP_K, sales("A", 5, "B", 9, "C", 1));
+
+        TopKResult result = client.productCategoryTopK(new TopKRequest("pizza", 2, true, 0))
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, result.size());
+        assertEquals("B", result.getStoreName(0));
+        assertEquals("A", result.getStoreName(1));
+        assertEquals(15, result.getTotalSales());
+    }
+
+    @Test
+    public void productCategoryTopK_keepsTheRankingOfTheMaster() throws Exception {
+        responses.put(MasterClient.REQUEST_PRODUCT_CATEGORY_TOP_K,
+                new TopKResult(new String[]{"C"}, new int[]{40}, 41, 2));
+
+        TopKResult result = client.productCategoryTopK(new TopKRequest("pizza", 1, true, 0))
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("C", result.getStoreName(0));
+        assertEquals(41, result.getTotalSales());
+    }
+
+    @Test
+    public void lastPurchase_withoutPurchases_isTheFallback() throws Exception {
+        responses.put(MasterClient.REQUEST_LAST_PURCHASE, null);
+
+        Purchase purchase = client.lastPurchase("maria@pizza.gr").get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("Maria", purchase.getCustomerName());
+        assertEquals("maria@pizza.gr", purchase.getCustomerEmail());
+        assertFalse(purchase.getPurchasedProducts().isEmpty());
+    }
+
+    @Test
+    public void lastPurchase_ofAnEmailMissingFromTheKnownKeys_isAnsweredWithoutTheMaster() throws Exception {
+        BloomFilter emails = BloomFilter.create(100, 0.01);
+        emails.put("nikos@pizza.gr");
+        responses.put(MasterClient.REQUEST_KNOWN_KEYS, new KnownKeys(null, emails, 1L));
+        client.refreshKnownKeys().get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        Purchase purchase = client.lastPurchase("maria@pizza.gr").get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("Maria", purchase.getCustomerName());
+        assertEquals(1, requests.size());
+        assertEquals(1, client.getNegativeCache().getAnsweredLocally());
+    }
+
+    @Test
+    public void customerPurchasesByStore_isPricedFromTheCatalog() throws Exception {
+        responses.put(MasterClient.REQUEST_CUSTOMER_PURCHASES_BY_STORE, sales("Margherita", 2));
+
+        ArrayList<Product> products = client.customerPurchasesByStore("maria@pizza.gr", "Pizza Hut")
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, products.size());
+        assertEquals("Margherita", products.get(0).getName());
+        assertEquals(2, products.get(0).getQuantity());
+        assertEquals(8.5, products.get(0).getPrice(), 0.0);
+        assertEquals(Arrays.<Object>asList(MasterClient.REQUEST_CUSTOMER_PURCHASES_BY_STORE,
+                "maria@pizza.gr", "Pizza Hut"), requests.get(0));
+    }
+
+    @Test
+    public void unexpectedResponse_failsWithProtocolException() throws Exception {
+        responses.put(MasterClient.REQUEST_PRODUCT_CATEGORY, "not a sales map");
+
+        assertTrue(failure(client.productCategory("pizza")) instanceof ProtocolException);
+    }
+
+    @Test
+    public void withTimeout_failsAndCancelsARequestTheMasterDoesNotAnswer() throws Exception {
+        CompletableFuture<HashMap<String, Integer>> request = client.productCategory("silent");
+
+        Throwable error = failure(MasterClient.withTimeout(request, 200, TimeUnit.MILLISECONDS));
+
+        assertTrue(error instanceof TimeoutException);
+        // The timer cancels the request right after failing the bounded future
+        long waitUntil = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!request.isCancelled() && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertTrue(request.isCancelled());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.myapplication;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Load test of one or more masters from a plain JVM, through the same MasterClient the app uses.
+ *
+ *   java com.example.myapplication.MasterLoadTest 192.168.56.1:4321 pizza 32 30 src/main/assets
+ *
+ * Keeps the given number of requests in flight for the given number of seconds, cycling
+ * through a top-k, a purchase info and a last-hour window query of the category, then
+ * prints the throughput and latency percentiles of each. With a catalog directory the
+ * responses are priced from its store.bin, as in the app.
+ */
+public final class MasterLoadTest {
+
+    /**
+     * Latencies of one kind of request
+     */
+    private static final class Latencies {
+        final String name;
+        final AtomicLong errors = new AtomicLong();
+        private long[] micros = new long[1024];
+        private int count;
+
+        Latencies(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(long nanos) {
+            if (count == micros.length) {
+                micros = Arrays.copyOf(micros, count * 2);
+            }
+            micros[count++] = nanos / 1000;
+        }
+
+        synchronized String report(double seconds) {
+            long[] sorted = Arrays.copyOf(micros, count);
+            Arrays.sort(sorted);
+            return String.format("%-14s %8.1f req/s  p50 %7.2f ms  p95 %7.2f ms  p99 %7.2f ms  max %7.2f ms  errors %d",
+                    name, count / seconds, percentile(sorted, 0.50), percentile(sorted, 0.95),
+                    percentile(sorted, 0.99), percentile(sorted, 1.0), errors.get());
+        }
+
+        private static double percentile(long[] sorted, double q) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+        }
+    }
+
+    private MasterLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: MasterLoadTest <host:port[,host:port...]> <category> [concurrency] [seconds] [catalog dir]");
+            System.exit(1);
+        }
+        List<Endpoint> masters = new ArrayList<>();
+        for (String address : args[0].split(",")) {
+            masters.add(Endpoint.parse(address));
+        }
+        final String category = args[1];
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        PriceLookup prices = args.length > 4 ? CatalogPriceLookup.fromFiles(new File(args[4]))
+                : (storeName, productName) -> 0.0;
+
+        final MasterClient client = new MasterClient(masters, prices);
+        client.warmUp().exceptionally(error -> null).join();
+
+        final List<Latencies> kinds = Arrays.asList(new Latencies("topK"), new Latencies("purchaseInfo"),
+                new Latencies("lastHour"));
+        final List<Supplier<CompletableFuture<?>>> requests = Arrays.asList(
+                () -> client.productCategoryTopK(new TopKRequest(category, 10, true, 0)),
+                () -> client.purchaseInfo(category),
+                () -> client.categorySalesLast(category, 60 * 60 * 1000));
+
+        Semaphore inFlight = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long sent = 0;
+        while (System.nanoTime() < end) {
+            inFlight.acquire();
+            final Latencies latencies = kinds.get((int) (sent % kinds.size()));
+            final long sentAt = System.nanoTime();
+            requests.get((int) (sent % requests.size())).get().whenComplete((result, error) -> {
+                if (error != null) {
+                    latencies.errors.incrementAndGet();
+                } else {
+                    latencies.add(System.nanoTime() - sentAt);
+                }
+                inFlight.release();
+            });
+            sent++;
+        }
+        // Let the requests in flight finish
+        inFlight.acquire(concurrency);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(sent + " requests to " + masters + ", " + concurrency + " in flight, "
+                + String.format("%.1f", elapsed) + " s");
+        for (Latencies latencies : kinds) {
+            System.out.println(latencies.report(elapsed));
+        }
+        System.out.println(client.getWastedWork());
+        client.shutdown();
+        System.exit(0);
+    }
+}
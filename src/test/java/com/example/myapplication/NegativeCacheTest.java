@@ -0,0 +1,169 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * BloomFilter answers and the counters of NegativeCache
+ */
+public class NegativeCacheTest {
+
+    private static BloomFilter filter(String... keys) {
+        BloomFilter filter = BloomFilter.create(100, 0.01);
+        for (String key : keys) {
+            filter.put(key);
+        }
+        return filter;
+    }
+
+    @Test
+    public void bloomFilter_neverMissesAKeyThatWasPut() {
+        BloomFilter filter = BloomFilter.create(5000, 0.01);
+        for (int i = 0; i < 5000; i++) {
+            filter.put("customer" + i + "@example.com");
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(filter.mightContain("customer" + i + "@example.com"));
+        }
+        assertEquals(5000, filter.getKeyCount());
+    }
+
+    @Test
+    public void bloomFilter_falsePositiveRateIsNearTheTarget() {
+        BloomFilter filter = BloomFilter.create(5000, 0.01);
+        for (int i = 0; i < 5000; i++) {
+            filter.put("key" + i);
+        }
+        int falsePositives = 0;
+        int probes = 20000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue("rate " + rate, rate < 0.02);
+        assertEquals(0.01, filter.getExpectedFalsePositiveRate(), 0.005);
+    }
+
+    @Test
+    public void bloomFilter_ignoresCaseAndSurroundingSpaces() {
+        BloomFilter filter = filter("Pizzeria");
+        assertTrue(filter.mightContain("pizzeria"));
+        assertTrue(filter.mightContain("  PIZZERIA "));
+    }
+
+    @Test
+    public void bloomFilter_survivesSerialization() throws Exception {
+        BloomFilter filter = filter("sushi", "souvlaki");
+        BloomFilter copy = (BloomFilter) SerializationCompatibilityTest.roundTrip(filter);
+        assertTrue(copy.mightContain("sushi"));
+        assertTrue(copy.mightContain("souvlaki"));
+        assertEquals(filter.getSizeBytes(), copy.getSizeBytes());
+        assertEquals(2, copy.getKeyCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bloomFilter_rejectsEmptySize() {
+        new BloomFilter(0, 3);
+    }
+
+    @Test
+    public void lookupsGoToTheMasterUntilFiltersArrive() {
+        NegativeCache cache = new NegativeCache();
+        assertFalse(cache.isUnknownCategory("pizzeria"));
+        assertFalse(cache.isUnknownEmail("a@example.com"));
+        assertEquals(2, cache.getLookups());
+        assertEquals(0, cache.getAnsweredLocally());
+        assertEquals(0.0, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void unknownKeysAreAnsweredLocally() {
+        NegativeCache cache = new NegativeCache();
+        cache.update(new KnownKeys(filter("pizzeria", "sushi"), filter("a@example.com"), 1L));
+
+        assertFalse(cache.isUnknownCategory("Pizzeria"));
+        assertTrue(cache.isUnknownCategory("burgers"));
+        assertFalse(cache.isUnknownEmail("a@example.com"));
+        assertTrue(cache.isUnknownEmail("b@example.com"));
+
+        assertEquals(4, cache.getLookups());
+        assertEquals(2, cache.getAnsweredLocally());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void missingFilterKindGoesToTheMaster() {
+        NegativeCache cache = new NegativeCache();
+        cache.update(new KnownKeys(filter("pizzeria"), null, 1L));
+
+        assertFalse(cache.isUnknownEmail("b@example.com"));
+        assertEquals(0, cache.getAnsweredLocally());
+    }
+
+    @Test
+    public void emptyAnswersThatPassedTheFilterAreFalsePositives() {
+        NegativeCache cache = new NegativeCache();
+        cache.update(new KnownKeys(filter("pizzeria"), filter("a@example.com"), 1L));
+
+        assertFalse(cache.isUnknownCategory("pizzeria"));
+        cache.categoryNotFound("pizzeria");
+        assertFalse(cache.isUnknownEmail("a@example.com"));
+        assertTrue(cache.isUnknownEmail("b@example.com"));
+
+        // Only misses of keys the filter let through count
+        cache.emailNotFound("b@example.com");
+
+        assertEquals(1, cache.getFalsePositives());
+        assertEquals(0.5, cache.getFalsePositiveRate(), 1e-9);
+    }
+
+    private static Purchase purchase(String email, String... categories) {
+        ArrayList<Product> products = new ArrayList<>();
+        for (String category : categories) {
+            products.add(new Product("item", category, 1, 5.0));
+        }
+        return new Purchase("Customer", email, products);
+    }
+
+    @Test
+    public void keysOfASubmittedPurchase_goToTheMasterUntilPublished() {
+        NegativeCache cache = new NegativeCache();
+        cache.update(new KnownKeys(filter("pizzeria"), filter("a@example.com"), 1L));
+
+        cache.purchaseWritten(purchase("New@Example.com ", "sushi"));
+
+        assertFalse(cache.isUnknownEmail("new@example.com"));
+        assertFalse(cache.isUnknownCategory("Sushi"));
+        assertTrue(cache.isUnknownEmail("other@example.com"));
+        assertTrue(cache.isUnknownCategory("burgers"));
+    }
+
+    @Test
+    public void writtenKeys_stayBypassedUntilFiltersHoldThem() {
+        NegativeCache cache = new NegativeCache();
+        cache.update(new KnownKeys(filter("pizzeria"), filter("a@example.com"), 1L));
+        cache.purchaseWritten(purchase("new@example.com", "sushi"));
+
+        // Built before the upload landed on the master
+        cache.update(new KnownKeys(filter("pizzeria"), filter("a@example.com"), 2L));
+        assertFalse(cache.isUnknownEmail("new@example.com"));
+
+        cache.update(new KnownKeys(filter("pizzeria", "sushi"), filter("a@example.com", "new@example.com"), 3L));
+        // The filters answer for them now, the keys are no longer tracked
+        cache.update(new KnownKeys(filter("pizzeria"), filter("a@example.com"), 4L));
+        assertTrue(cache.isUnknownEmail("new@example.com"));
+        assertTrue(cache.isUnknownCategory("sushi"));
+    }
+
+    @Test
+    public void filters_keepTheirSerialVersionUIDs() {
+        assertEquals(2792631455367108960L, ObjectStreamClass.lookup(BloomFilter.class).getSerialVersionUID());
+        assertEquals(-5959201653286390074L, ObjectStreamClass.lookup(KnownKeys.class).getSerialVersionUID());
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * NioTransport against a stand-in master that writes the response the way the request's
+ * one param asks for: "split" in small pieces with pauses, "cut" only the first half
+ * before closing, "garbage" bytes that are not an object stream, "large" a response of
+ * a few megabytes and "silent" nothing at all. Any other param is echoed back.
+ */
+public class NioTransportTest {
+    private static final int TIMEOUT_MS = 10000;
+
+    private ServerSocket server;
+    private NioTransport transport;
+
+    @Before
+    public void startMaster() throws IOException {
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        transport = new NioTransport("127.0.0.1", server.getLocalPort());
+    }
+
+    @After
+    public void stopMaster() throws IOException {
+        transport.shutdown();
+        server.close();
+    }
+
+    private static void serve(Socket socket) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            in.readObject();
+            String param = (String) in.readObject();
+            OutputStream out = socket.getOutputStream();
+            switch (param) {
+                case "split":
+                    byte[] response = encode("answer:" + param);
+                    for (int i = 0; i < response.length; i += 3) {
+                        out.write(response, i, Math.min(3, response.length - i));
+                        out.flush();
+                        Thread.sleep(5);
+                    }
+                    break;
+                case "cut":
+                    byte[] whole = encode(large());
+                    out.write(whole, 0, whole.length / 2);
+                    out.flush();
+                    return;
+                case "garbage":
+                    out.write("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes("UTF-8"));
+                    out.flush();
+                    break;
+                case "large":
+                    out.write(encode(large()));
+                    out.flush();
+                    break;
+                case "silent":
+                    break;
+                default:
+                    out.write(encode("answer:" + param));
+                    out.flush();
+            }
+            // Keep the connection open until the client closes it
+            socket.getInputStream().read();
+        } catch (IOException | ClassNotFoundException | InterruptedException e) {
+            // Client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static byte[] encode(Object response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(response);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ArrayList<String> large() {
+        ArrayList<String> rows = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            rows.add("store-" + i + "-with-a-longer-name");
+        }
+        return rows;
+    }
+
+    private CompletableFuture<Object> send(String param) {
+        return transport.send("echo", new Object[]{param}, TIMEOUT_MS);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Expected the request to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return MasterClient.unwrap(e);
+        }
+    }
+
+    @Test
+    public void responseSplitAcrossManyWrites_isDecodedOnce() throws Exception {
+        assertEquals("answer:split", send("split").get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void largeResponse_isDecoded() throws Exception {
+        assertEquals(large(), send("large").get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void concurrentRequests_eachGetTheirOwnResponse() throws Exception {
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(send("request-" + i));
+        }
+        futures.add(send("split"));
+        for (int i = 0; i < 20; i++) {
+            assertEquals("answer:request-" + i, futures.get(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        assertEquals("answer:split", futures.get(20).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void corruptResponse_failsWithoutWaitingForTheTimeout() throws Exception {
+        long start = System.currentTimeMillis();
+
+        Throwable error = failure(send("garbage"));
+
+        assertTrue(error.toString(), error instanceof StreamCorruptedException);
+        assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS / 2);
+    }
+
+    @Test
+    public void connectionClosedMidResponse_failsTheRequest() throws Exception {
+        Throwable error = failure(send("cut"));
+
+        assertTrue(error instanceof IOException);
+        assertTrue(error.getMessage().contains("before the whole response arrived"));
+    }
+
+    @Test
+    public void shutdown_failsTheRequestsInFlightAndQueued() throws Exception {
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        futures.add(send("silent"));
+        Thread.sleep(200);
+        for (int i = 0; i < 50; i++) {
+            futures.add(send("silent"));
+        }
+        transport.shutdown();
+
+        for (CompletableFuture<Object> future : futures) {
+            Throwable error = failure(future);
+            assertEquals("Transport is shut down", error.getMessage());
+        }
+        assertEquals("Transport is shut down", failure(send("after")).getMessage());
+    }
+
+    @Test
+    public void warmUp_afterShutdown_fails() throws Exception {
+        transport.warmUp().get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        transport.shutdown();
+
+        assertEquals("Transport is shut down", failure(transport.warmUp()).getMessage());
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * PipelinedTransport against a stand-in master that queues every request frame it reads,
+ * so each test decides when, in which order and how each one is answered.
+ */
+public class PipelinedTransportTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    private ServerSocket server;
+    private PipelinedTransport transport;
+    private final BlockingQueue<Request> received = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Socket> accepted = new LinkedBlockingQueue<>();
+
+    /**
+     * One request frame as the master read it
+     */
+    private static final class Request {
+        final Socket socket;
+        final long requestId;
+        final String param;
+
+        Request(Socket socket, long requestId, String param) {
+            this.socket = socket;
+            this.requestId = requestId;
+            this.param = param;
+        }
+    }
+
+    @Before
+    public void startMaster() throws IOException {
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    accepted.add(socket);
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        transport = new PipelinedTransport("127.0.0.1", server.getLocalPort());
+    }
+
+    @After
+    public void stopMaster() throws IOException {
+        transport.shutdown();
+        server.close();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != PipelinedTransport.PROTOCOL_MAGIC) {
+                // Not a pipelined connection, no request is ever queued
+                socket.close();
+                return;
+            }
+            while (true) {
+                int length = in.readInt();
+                long requestId = in.readLong();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                ObjectInputStream request = new ObjectInputStream(new ByteArrayInputStream(payload));
+                request.readObject();
+                received.add(new Request(socket, requestId, (String) request.readObject()));
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            // Connection closed
+        }
+    }
+
+    private Request nextRequest() throws InterruptedException {
+        Request request = received.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("No request arrived", request);
+        return request;
+    }
+
+    private static byte[] frame(long requestId, Object response) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        ObjectOutputStream objects = new ObjectOutputStream(payload);
+        objects.writeObject(response);
+        objects.flush();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(payload.size());
+        frame.writeLong(requestId);
+        payload.writeTo(frame);
+        frame.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void answer(Request request) throws IOException {
+        OutputStream out = request.socket.getOutputStream();
+        out.write(frame(request.requestId, "answer:" + request.param));
+        out.flush();
+    }
+
+    private CompletableFuture<Object> send(String param, int timeoutMs) {
+        return transport.send("echo", new Object[]{param}, timeoutMs);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Expected the request to fail");
+            return null;
+        } catch (ExecutionException e) {
+            return MasterClient.unwrap(e);
+        }
+    }
+
+    @Test
+    public void responsesOutOfOrder_goToTheCallerOfTheirRequestId() throws Exception {
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(send("request-" + i, TIMEOUT_MS));
+        }
+        for (int i = 0; i < 3; i++) {
+            requests.add(nextRequest());
+        }
+
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            answer(requests.get(i));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("answer:request-" + i, futures.get(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+        // All of them went over the one connection
+        assertEquals(1, accepted.size());
+    }
+
+    @Test
+    public void frameSplitAcrossWrites_isReadWhole() throws Exception {
+        CompletableFuture<Object> future = send("split", TIMEOUT_MS);
+        Request request = nextRequest();
+        byte[] response = frame(request.requestId, "answer:split");
+        OutputStream out = request.socket.getOutputStream();
+
+        // Part of the header, the rest of the header, then the payload a few bytes at a time
+        out.write(response, 0, 6);
+        out.flush();
+        Thread.sleep(50);
+        out.write(response, 6, 6);
+        out.flush();
+        for (int i = 12; i < response.length; i += 5) {
+            Thread.sleep(5);
+            out.write(response, i, Math.min(5, response.length - i));
+            out.flush();
+        }
+
+        assertEquals("answer:split", future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void connectionLost_failsEveryPendingRequestAndTheNextOneReconnects() throws Exception {
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(send("request-" + i, TIMEOUT_MS));
+        }
+        Request last = null;
+        for (int i = 0; i < 3; i++) {
+            last = nextRequest();
+        }
+
+        last.socket.close();
+
+        for (CompletableFuture<Object> future : futures) {
+            assertTrue(failure(future) instanceof IOException);
+        }
+        CompletableFuture<Object> next = send("again", TIMEOUT_MS);
+        answer(nextRequest());
+        assertEquals("answer:again", next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(2, accepted.size());
+    }
+
+    @Test
+    public void lateResponseOfATimedOutRequest_isDropped() throws Exception {
+        CompletableFuture<Object> slow = send("slow", 100);
+        Request slowRequest = nextRequest();
+        assertTrue(failure(slow) instanceof SocketTimeoutException);
+
+        CompletableFuture<Object> next = send("next", TIMEOUT_MS);
+        Request nextRequest = nextRequest();
+        answer(slowRequest);
+        answer(nextRequest);
+
+        assertEquals("answer:next", next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, accepted.size());
+    }
+
+    @Test
+    public void shutdown_failsThePendingRequests() throws Exception {
+        CompletableFuture<Object> pending = send("pending", TIMEOUT_MS);
+        nextRequest();
+
+        transport.shutdown();
+
+        assertEquals("Transport is shut down", failure(pending).getMessage());
+        assertEquals("Transport is shut down", failure(send("after", TIMEOUT_MS)).getMessage());
+    }
+}
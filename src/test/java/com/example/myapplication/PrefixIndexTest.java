@@ -0,0 +1,182 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Matching and ranking of PrefixIndex, checked against a scan of every name
+ */
+public class PrefixIndexTest {
+
+    private static List<String> texts(List<PrefixIndex.Suggestion> suggestions) {
+        ArrayList<String> texts = new ArrayList<>();
+        for (PrefixIndex.Suggestion suggestion : suggestions) {
+            texts.add(suggestion.getText());
+        }
+        return texts;
+    }
+
+    @Test
+    public void suggest_matchesEveryWordOfAName() {
+        PrefixIndex index = new PrefixIndex.Builder(false)
+                .add("Pizza Hut", PrefixIndex.Kind.STORE, 10)
+                .add("Burger King", PrefixIndex.Kind.STORE, 5)
+                .build();
+
+        assertEquals(Collections.singletonList("Pizza Hut"), texts(index.suggest("piz", 5, null)));
+        assertEquals(Collections.singletonList("Pizza Hut"), texts(index.suggest("HUT", 5, null)));
+        assertEquals(Collections.singletonList("Burger King"), texts(index.suggest("ki", 5, null)));
+        assertTrue(index.suggest("za", 5, null).isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void suggest_ranksExactThenWeightThenLength() {
+        PrefixIndex index = new PrefixIndex.Builder(false)
+                .add("Caf", PrefixIndex.Kind.PRODUCT, 1)
+                .add("Cafe Latte", PrefixIndex.Kind.PRODUCT, 3)
+                .add("Cafe", PrefixIndex.Kind.PRODUCT, 3)
+                .add("Cafeteria", PrefixIndex.Kind.PRODUCT, 7)
+                .build();
+
+        assertEquals(Arrays.asList("Caf", "Cafeteria", "Cafe", "Cafe Latte"),
+                texts(index.suggest("caf", 10, null)));
+    }
+
+    @Test
+    public void suggest_foldsAccentsAndFinalSigma() {
+        PrefixIndex index = new PrefixIndex.Builder(true)
+                .add("Καφές", PrefixIndex.Kind.CATEGORY, 1)
+                .add("Café", PrefixIndex.Kind.STORE, 1)
+                .build();
+
+        assertEquals(Collections.singletonList("Καφές"), texts(index.suggest("καφε", 5, null)));
+        assertEquals(Collections.singletonList("Καφές"), texts(index.suggest("ΚΑΦΕΣ", 5, null)));
+        assertEquals(Collections.singletonList("Café"), texts(index.suggest("cafe", 5, null)));
+
+        PrefixIndex exact = new PrefixIndex.Builder(false)
+                .add("Café", PrefixIndex.Kind.STORE, 1)
+                .build();
+        assertTrue(exact.suggest("cafe", 5, null).isEmpty());
+    }
+
+    @Test
+    public void suggest_filtersByKindAndSumsWeights() {
+        PrefixIndex index = new PrefixIndex.Builder(false)
+                .add("Pizza", PrefixIndex.Kind.CATEGORY, 1)
+                .add("Pizza", PrefixIndex.Kind.CATEGORY, 1)
+                .add("Pizza Margherita", PrefixIndex.Kind.PRODUCT, 1)
+                .add("Pizza Fan", PrefixIndex.Kind.STORE, 40)
+                .build();
+
+        List<PrefixIndex.Suggestion> categories = index.suggest("pi", 5, PrefixIndex.Kind.CATEGORY);
+        assertEquals(1, categories.size());
+        assertEquals(PrefixIndex.Kind.CATEGORY, categories.get(0).getKind());
+        assertEquals(2, categories.get(0).getWeight());
+
+        assertEquals(Collections.singletonList("Pizza Fan"), texts(index.suggest("pi", 1, null)));
+        assertEquals(3, index.suggest("pi", 5, null).size());
+    }
+
+    @Test
+    public void suggest_ignoresBlankInputAndZeroLimit() {
+        PrefixIndex index = new PrefixIndex.Builder(false)
+                .add("Sushi", PrefixIndex.Kind.CATEGORY, 1)
+                .add("   ", PrefixIndex.Kind.CATEGORY, 1)
+                .add(null, PrefixIndex.Kind.CATEGORY, 1)
+                .build();
+
+        assertEquals(1, index.size());
+        assertTrue(index.suggest("  ", 5, null).isEmpty());
+        assertTrue(index.suggest("su", 0, null).isEmpty());
+    }
+
+    @Test
+    public void suggest_randomNames_matchesScan() {
+        Random random = new Random(7);
+        String letters = "abcde";
+        PrefixIndex.Builder builder = new PrefixIndex.Builder(false);
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<Integer> weights = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        while (names.size() < 400) {
+            StringBuilder name = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    name.append(' ');
+                }
+                int length = 2 + random.nextInt(4);
+                for (int i = 0; i < length; i++) {
+                    name.append(letters.charAt(random.nextInt(letters.length())));
+                }
+            }
+            if (seen.add(name.toString())) {
+                // Distinct weights, so the expected order does not depend on ties
+                int weight = names.size() * 7919 % 100003;
+                names.add(name.toString());
+                weights.add(weight);
+                builder.add(name.toString(), PrefixIndex.Kind.PRODUCT, weight);
+            }
+        }
+        PrefixIndex index = builder.build();
+
+        for (int query = 0; query < 200; query++) {
+            StringBuilder prefix = new StringBuilder();
+            int length = 1 + random.nextInt(3);
+            for (int i = 0; i < length; i++) {
+                prefix.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            int limit = 1 + random.nextInt(8);
+
+            ArrayList<Integer> exact = new ArrayList<>();
+            ArrayList<Integer> partial = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                boolean matches = false;
+                boolean isExact = false;
+                for (String word : wordSuffixes(names.get(i))) {
+                    if (word.startsWith(prefix.toString())) {
+                        matches = true;
+                        isExact |= word.length() == prefix.length();
+                    }
+                }
+                if (isExact) {
+                    exact.add(i);
+                } else if (matches) {
+                    partial.add(i);
+                }
+            }
+            Collections.sort(exact, (a, b) -> Integer.compare(weights.get(b), weights.get(a)));
+            Collections.sort(partial, (a, b) -> Integer.compare(weights.get(b), weights.get(a)));
+            ArrayList<String> expected = new ArrayList<>();
+            for (int i : exact) {
+                expected.add(names.get(i));
+            }
+            for (int i : partial) {
+                expected.add(names.get(i));
+            }
+
+            assertEquals("prefix " + prefix + " limit " + limit,
+                    expected.subList(0, Math.min(limit, expected.size())),
+                    texts(index.suggest(prefix.toString(), limit, null)));
+        }
+    }
+
+    private static List<String> wordSuffixes(String name) {
+        ArrayList<String> suffixes = new ArrayList<>();
+        for (int i = 0; i < name.length(); i++) {
+            if (i == 0 || name.charAt(i - 1) == ' ') {
+                suffixes.add(name.substring(i));
+            }
+        }
+        return suffixes;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cents, totals, group-by, filters and Product views of ProductTable
+ */
+public class ProductTableTest {
+
+    private static ProductTable table() {
+        return ProductTable.fromProducts(Arrays.asList(
+                new Product("Margherita", "pizza", 2, 8.5),
+                new Product("Gyros", "souvlaki", 3, 3.2),
+                new Product("Special", "pizza", 1, 12.0),
+                new Product("Margherita", "pizza", 4, 8.5)));
+    }
+
+    @Test
+    public void toCents_roundsToTheNearestCent() {
+        assertEquals(30, ProductTable.toCents(0.1 + 0.2));
+        assertEquals(1999, ProductTable.toCents(19.99));
+        assertEquals(101, ProductTable.toCents(1.005 + 0.001));
+        assertEquals(0, ProductTable.toCents(0.004));
+        assertEquals(-250, ProductTable.toCents(-2.5));
+    }
+
+    @Test
+    public void totals_areSummedInCents() {
+        ProductTable table = table();
+
+        assertEquals(10, table.totalQuantity());
+        // 2 * 850 + 3 * 320 + 1 * 1200 + 4 * 850
+        assertEquals(7260, table.totalAmountCents());
+        assertEquals(960, table.getAmountCents(1));
+    }
+
+    @Test
+    public void groupBy_keepsTheOrderOfFirstAppearance() {
+        ProductTable table = table();
+
+        LinkedHashMap<String, Long> quantities = table.quantityByCategory();
+        LinkedHashMap<String, Long> amounts = table.amountCentsByCategory();
+
+        assertEquals(Arrays.asList("pizza", "souvlaki"), Arrays.asList(quantities.keySet().toArray()));
+        assertEquals(Long.valueOf(7), quantities.get("pizza"));
+        assertEquals(Long.valueOf(3), quantities.get("souvlaki"));
+        assertEquals(Long.valueOf(6300), amounts.get("pizza"));
+        assertEquals(Long.valueOf(960), amounts.get("souvlaki"));
+    }
+
+    @Test
+    public void filteredTables_shareTheDictionaries() {
+        ProductTable table = table();
+
+        ProductTable pizza = table.filterByCategory("pizza");
+        ProductTable margherita = pizza.filter(row -> "Margherita".equals(pizza.getName(row)));
+
+        assertEquals(3, pizza.size());
+        assertEquals(2, margherita.size());
+        assertEquals(table.nameCount(), margherita.nameCount());
+        assertEquals(table.getNameId(0), margherita.getNameId(1));
+        assertSame(table.getName(0), margherita.getName(1));
+        assertEquals(6, margherita.totalQuantity());
+    }
+
+    @Test
+    public void filterByUnknownCategory_isEmpty() {
+        ProductTable none = table().filterByCategory("sushi");
+
+        assertEquals(0, none.size());
+        assertTrue(none.quantityByCategory().isEmpty());
+    }
+
+    @Test
+    public void productViews_holdTheDictionaryStrings() {
+        ProductTable table = table();
+        String name = new String("Margherita");
+        table.add(name, "pizza", 1, 850);
+
+        List<Product> products = table.asList();
+        Product last = products.get(products.size() - 1);
+
+        assertEquals(5, products.size());
+        assertSame(table.getName(0), last.getName());
+        assertSame(StringPool.intern("pizza"), last.getCategory());
+        assertEquals(8.5, last.getPrice(), 0.0);
+        assertEquals(Product.Status.VISIBLE, last.getStatusFlag());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void listView_rejectsRowsPastTheEnd() {
+        ProductTable table = table();
+
+        table.asList().get(table.size());
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        ProductTable table = new ProductTable(1);
+        for (int i = 0; i < 100; i++) {
+            table.add("store-" + (i % 7), "pizza", 1, 100);
+        }
+
+        assertEquals(100, table.size());
+        assertEquals(7, table.nameCount());
+        assertEquals(10000, table.totalAmountCents());
+    }
+}
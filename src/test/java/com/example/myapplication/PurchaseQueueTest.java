@@ -0,0 +1,202 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * PurchaseQueue recovery after the app is killed, with the log and the confirmed
+ * length left as a crash would leave them
+ */
+public class PurchaseQueueTest {
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("purchases").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static Purchase purchase(String customer) {
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("Margherita", "pizza", 2, 8.5));
+        return new Purchase(customer, customer + "@example.com", products);
+    }
+
+    private static List<String> customers(List<PurchaseQueue.Entry> entries) {
+        ArrayList<String> customers = new ArrayList<>();
+        for (PurchaseQueue.Entry entry : entries) {
+            customers.add(entry.getPurchase().getCustomerName());
+        }
+        return customers;
+    }
+
+    private File logFile() {
+        return new File(directory, "purchases.log");
+    }
+
+    @Test
+    public void purchases_surviveReopening() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.append(purchase("a"));
+        queue.append(purchase("b"));
+        queue.close();
+
+        PurchaseQueue reopened = new PurchaseQueue(directory);
+        List<PurchaseQueue.Entry> entries = reopened.read(reopened.getAcked(), 10);
+
+        assertEquals(2, reopened.getPending());
+        assertEquals(Arrays.asList("a", "b"), customers(entries));
+        assertNotNull(entries.get(0).getPurchase().getPurchaseId());
+        assertNotEquals(entries.get(0).getPurchase().getPurchaseId(), entries.get(1).getPurchase().getPurchaseId());
+        assertTrue(entries.get(0).getPurchase().getPurchaseTime() <= entries.get(1).getPurchase().getPurchaseTime());
+        reopened.close();
+    }
+
+    @Test
+    public void tornLastRecord_isCutOff() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.append(purchase("a"));
+        queue.append(purchase("b"));
+        long whole = logFile().length();
+        queue.append(purchase("c"));
+        queue.close();
+        // Killed halfway through writing the third record
+        try (RandomAccessFile log = new RandomAccessFile(logFile(), "rw")) {
+            log.setLength(whole + (log.length() - whole) / 2);
+        }
+
+        PurchaseQueue reopened = new PurchaseQueue(directory);
+
+        assertEquals(whole, logFile().length());
+        assertEquals(2, reopened.getPending());
+        assertEquals(Arrays.asList("a", "b"), customers(reopened.read(0, 10)));
+
+        // New purchases go after the last whole record
+        reopened.append(purchase("d"));
+        assertEquals(Arrays.asList("a", "b", "d"), customers(reopened.read(0, 10)));
+        reopened.close();
+    }
+
+    @Test
+    public void lastRecordFailingItsChecksum_isCutOff() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.append(purchase("a"));
+        long whole = logFile().length();
+        queue.append(purchase("b"));
+        queue.close();
+        try (RandomAccessFile log = new RandomAccessFile(logFile(), "rw")) {
+            log.seek(log.length() - 1);
+            int last = log.read();
+            log.seek(log.length() - 1);
+            log.write(last ^ 0xFF);
+        }
+
+        PurchaseQueue reopened = new PurchaseQueue(directory);
+
+        assertEquals(whole, logFile().length());
+        assertEquals(Arrays.asList("a"), customers(reopened.read(0, 10)));
+        reopened.close();
+    }
+
+    @Test
+    public void acknowledgedPurchases_areNotReadAgainAfterReopening() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.append(purchase("a"));
+        queue.append(purchase("b"));
+        queue.append(purchase("c"));
+        List<PurchaseQueue.Entry> entries = queue.read(queue.getAcked(), 2);
+        queue.acknowledge(entries.get(1).getEnd());
+        assertEquals(1, queue.getPending());
+        queue.close();
+
+        PurchaseQueue reopened = new PurchaseQueue(directory);
+
+        assertEquals(1, reopened.getPending());
+        assertEquals(Arrays.asList("c"), customers(reopened.read(reopened.getAcked(), 10)));
+        reopened.close();
+    }
+
+    @Test
+    public void acknowledgingEverything_emptiesTheLogAndKeepsPositionsGrowing() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.appendAll(Arrays.asList(purchase("a"), purchase("b")));
+        List<PurchaseQueue.Entry> entries = queue.read(queue.getAcked(), 10);
+        long end = entries.get(1).getEnd();
+
+        queue.acknowledge(end);
+
+        assertEquals(0, logFile().length());
+        assertEquals(0, queue.getPending());
+        assertEquals(end, queue.getAcked());
+
+        queue.append(purchase("c"));
+        List<PurchaseQueue.Entry> after = queue.read(queue.getAcked(), 10);
+        assertEquals(Arrays.asList("c"), customers(after));
+        assertTrue(after.get(0).getEnd() > end);
+
+        // An older position acknowledged late changes nothing
+        queue.acknowledge(entries.get(0).getEnd());
+        assertEquals(1, queue.getPending());
+        queue.close();
+    }
+
+    @Test
+    public void logEmptiedBeforeTheConfirmedLengthWasWritten_isEmpty() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.append(purchase("a"));
+        queue.append(purchase("b"));
+        queue.acknowledge(queue.read(0, 1).get(0).getEnd());
+        queue.close();
+        // Killed after emptying the log but before writing the new confirmed length
+        try (RandomAccessFile log = new RandomAccessFile(logFile(), "rw")) {
+            log.setLength(0);
+        }
+
+        PurchaseQueue reopened = new PurchaseQueue(directory);
+
+        assertEquals(0, reopened.getPending());
+        assertEquals(0, reopened.getAcked());
+        reopened.append(purchase("c"));
+        assertEquals(Arrays.asList("c"), customers(reopened.read(reopened.getAcked(), 10)));
+        reopened.close();
+    }
+
+    @Test
+    public void unreadableConfirmedLength_uploadsTheWholeLogAgain() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.append(purchase("a"));
+        queue.append(purchase("b"));
+        queue.acknowledge(queue.read(0, 1).get(0).getEnd());
+        queue.close();
+        try (RandomAccessFile acked = new RandomAccessFile(new File(directory, "purchases.acked"), "rw")) {
+            acked.setLength(3);
+        }
+
+        PurchaseQueue reopened = new PurchaseQueue(directory);
+
+        assertEquals(2, reopened.getPending());
+        assertEquals(Arrays.asList("a", "b"), customers(reopened.read(reopened.getAcked(), 10)));
+        reopened.close();
+    }
+}
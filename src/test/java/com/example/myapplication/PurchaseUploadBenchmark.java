@@ -0,0 +1,259 @@
+package com.example.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of the purchase upload from a plain JVM, against a stand-in master on
+ * localhost that answers every request after a simulated network latency.
+ *
+ *   java com.example.myapplication.PurchaseUploadBenchmark 5000 20
+ *
+ * Uploads the given number of purchases of three products each, with the given latency
+ * in milliseconds, three ways: one purchase per request waiting for each answer (at most
+ * 200 of them, it is slow), only appending to a PurchaseQueue, and a PurchaseUploader
+ * draining a full queue. The master drops purchase ids it has already stored, and each
+ * run checks it stored every purchase exactly once.
+ */
+public final class PurchaseUploadBenchmark {
+    private static final int MAX_WAITING_PURCHASES = 200;
+    private static final long TIMEOUT_MS = 5 * 60 * 1000;
+
+    /**
+     * Stand-in master speaking the PipelinedTransport framing, storing uploads by purchase id
+     */
+    private static final class Master {
+        final ServerSocket server;
+        final long latencyMs;
+        final Set<String> stored = ConcurrentHashMap.newKeySet();
+        final AtomicLong requests = new AtomicLong();
+        final ScheduledExecutorService answers = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Master-answers");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Master(long latencyMs) throws IOException {
+            this.server = new ServerSocket(0);
+            this.latencyMs = latencyMs;
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        Thread connection = new Thread(() -> serve(socket));
+                        connection.setDaemon(true);
+                        connection.start();
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        void close() throws IOException {
+            answers.shutdownNow();
+            server.close();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void serve(final Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (in.readInt() != PipelinedTransport.PROTOCOL_MAGIC) {
+                    return;
+                }
+                final OutputStream out = socket.getOutputStream();
+                while (true) {
+                    int length = in.readInt();
+                    final long requestId = in.readLong();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    ObjectInputStream request = new ObjectInputStream(new ByteArrayInputStream(payload));
+                    request.readObject();
+                    int added = 0;
+                    for (Purchase purchase : (List<Purchase>) request.readObject()) {
+                        if (stored.add(purchase.getPurchaseId())) {
+                            added++;
+                        }
+                    }
+                    requests.incrementAndGet();
+                    final byte[] response = frame(requestId, added);
+                    // Answered in arrival order, each after the latency
+                    answers.schedule(() -> {
+                        try {
+                            synchronized (out) {
+                                out.write(response);
+                                out.flush();
+                            }
+                        } catch (IOException e) {
+                            // Client gone
+                        }
+                    }, latencyMs, TimeUnit.MILLISECONDS);
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                // Connection closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+
+    private PurchaseUploadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        System.out.println(count + " purchases, " + latencyMs + " ms latency, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+
+        waiting(Math.min(count, MAX_WAITING_PURCHASES), latencyMs);
+        appending(count);
+        uploading(count, latencyMs);
+    }
+
+    /**
+     * One purchase per request, each sent once the previous one was answered
+     */
+    private static void waiting(int count, long latencyMs) throws Exception {
+        Master master = new Master(latencyMs);
+        PipelinedTransport transport = new PipelinedTransport("127.0.0.1", master.getPort());
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                ArrayList<Purchase> batch = new ArrayList<>();
+                Purchase purchase = purchase(i);
+                purchase.setPurchaseId(UUID.randomUUID().toString());
+                batch.add(purchase);
+                transport.send(PurchaseUploader.REQUEST_UPLOAD_PURCHASES, new Object[]{batch}, (int) TIMEOUT_MS)
+                        .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            report("one purchase per request, waiting", count, System.nanoTime() - start, master);
+        } finally {
+            transport.shutdown();
+            master.close();
+        }
+    }
+
+    /**
+     * Appending to the queue one purchase at a time, each synced to disk
+     */
+    private static void appending(int count) throws IOException {
+        File directory = Files.createTempDirectory("purchases").toFile();
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                queue.append(purchase(i));
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("%-40s %8.0f purchases/s", "append + sync, one at a time",
+                    count / (elapsed / 1e9)));
+        } finally {
+            queue.close();
+            delete(directory);
+        }
+    }
+
+    /**
+     * The uploader draining a queue that already holds every purchase
+     */
+    private static void uploading(int count, long latencyMs) throws Exception {
+        File directory = Files.createTempDirectory("purchases").toFile();
+        ArrayList<Purchase> purchases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            purchases.add(purchase(i));
+        }
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.appendAll(purchases);
+        queue.close();
+
+        Master master = new Master(latencyMs);
+        PipelinedTransport transport = new PipelinedTransport("127.0.0.1", master.getPort());
+        PurchaseUploader uploader = new PurchaseUploader(directory, transport);
+        try {
+            long start = System.nanoTime();
+            uploader.start();
+            long waitUntil = System.currentTimeMillis() + TIMEOUT_MS;
+            while (uploader.getUploaded() < count && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(1);
+            }
+            report("uploader, " + count + " queued purchases", count, System.nanoTime() - start, master);
+        } finally {
+            uploader.shutdown();
+            transport.shutdown();
+            master.close();
+            delete(directory);
+        }
+    }
+
+    private static void report(String name, int count, long elapsedNanos, Master master) {
+        if (master.stored.size() != count) {
+            throw new IllegalStateException(name + ": master stored " + master.stored.size() + " of " + count);
+        }
+        System.out.println(String.format("%-40s %8.0f purchases/s in %d requests", name,
+                count / (elapsedNanos / 1e9), master.requests.get()));
+    }
+
+    private static Purchase purchase(int i) {
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("Margherita", "pizza", 2, 8.5));
+        products.add(new Product("Marinara", "pizza", 1, 7.0));
+        products.add(new Product("Coca-Cola", "drinks", 2, 1.5));
+        return new Purchase("Customer " + i, "customer" + i + "@example.com", products);
+    }
+
+    private static byte[] frame(long requestId, Object response) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        ObjectOutputStream objects = new ObjectOutputStream(payload);
+        objects.writeObject(response);
+        objects.flush();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(payload.size());
+        frame.writeLong(requestId);
+        payload.writeTo(frame);
+        frame.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
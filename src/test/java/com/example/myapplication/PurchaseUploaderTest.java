@@ -0,0 +1,229 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * PurchaseUploader over a stand-in transport that holds every batch until the test
+ * answers or fails it, with the queue checked on disk after the uploader stopped
+ */
+public class PurchaseUploaderTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    /**
+     * One upload request, held until the test completes its future
+     */
+    private static final class Upload {
+        final List<Purchase> purchases;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Upload(List<Purchase> purchases) {
+            this.purchases = purchases;
+        }
+    }
+
+    private File directory;
+    private PurchaseUploader uploader;
+    private final List<Upload> uploads = Collections.synchronizedList(new ArrayList<Upload>());
+
+    private final Transport transport = new Transport() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+            Upload upload = new Upload(new ArrayList<>((List<Purchase>) params[0]));
+            uploads.add(upload);
+            return upload.future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("purchases").toFile();
+        uploader = new PurchaseUploader(directory, transport);
+    }
+
+    @After
+    public void deleteDirectory() throws InterruptedException {
+        stopUploader();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Shut the uploader down and wait until its thread has closed the queue
+     */
+    private void stopUploader() throws InterruptedException {
+        uploader.shutdown();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("PurchaseUploader".equals(thread.getName())) {
+                thread.join(TIMEOUT_MS);
+            }
+        }
+    }
+
+    /**
+     * Put purchases c0, c1... in the queue before the uploader opens it
+     */
+    private void queue(int count) throws IOException {
+        ArrayList<Purchase> purchases = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ArrayList<Product> products = new ArrayList<>();
+            products.add(new Product("Margherita", "pizza", 1, 8.5));
+            purchases.add(new Purchase("c" + i, "c" + i + "@example.com", products));
+        }
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        queue.appendAll(purchases);
+        queue.close();
+    }
+
+    private Upload awaitUpload(int index) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + TIMEOUT_MS;
+        while (uploads.size() <= index && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertTrue("Upload " + index + " was not sent", uploads.size() > index);
+        return uploads.get(index);
+    }
+
+    private void awaitUploaded(long count) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + TIMEOUT_MS;
+        while (uploader.getUploaded() < count && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, uploader.getUploaded());
+    }
+
+    private static void confirm(Upload upload) {
+        upload.future.complete(upload.purchases.size());
+    }
+
+    private static List<String> ids(Upload upload) {
+        List<String> ids = new ArrayList<>();
+        for (Purchase purchase : upload.purchases) {
+            ids.add(purchase.getPurchaseId());
+        }
+        return ids;
+    }
+
+    /**
+     * @return Customers of the purchases still waiting in the queue on disk
+     */
+    private List<String> pendingCustomers() throws IOException {
+        PurchaseQueue queue = new PurchaseQueue(directory);
+        try {
+            List<String> customers = new ArrayList<>();
+            for (PurchaseQueue.Entry entry : queue.read(queue.getAcked(), Integer.MAX_VALUE)) {
+                customers.add(entry.getPurchase().getCustomerName());
+            }
+            assertEquals(queue.getPending(), customers.size());
+            return customers;
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void queuedPurchases_goInPipelinedBatchesInPurchaseTimeOrder() throws Exception {
+        queue(250);
+
+        uploader.start();
+        Upload first = awaitUpload(0);
+        Upload second = awaitUpload(1);
+        Upload third = awaitUpload(2);
+
+        assertEquals(100, first.purchases.size());
+        assertEquals(100, second.purchases.size());
+        assertEquals(50, third.purchases.size());
+        for (int i = 1; i < first.purchases.size(); i++) {
+            assertTrue(first.purchases.get(i - 1).getPurchaseTime() <= first.purchases.get(i).getPurchaseTime());
+        }
+        assertEquals("c0", first.purchases.get(0).getCustomerName());
+        assertEquals("c100", second.purchases.get(0).getCustomerName());
+    }
+
+    @Test
+    public void answersOutOfOrder_onlyAcknowledgeTheConfirmedPrefix() throws Exception {
+        queue(250);
+        uploader.start();
+        Upload first = awaitUpload(0);
+        Upload second = awaitUpload(1);
+        Upload third = awaitUpload(2);
+
+        confirm(third);
+        confirm(second);
+        Thread.sleep(200);
+        assertEquals(0, uploader.getUploaded());
+
+        confirm(first);
+        awaitUploaded(250);
+        stopUploader();
+        assertTrue(pendingCustomers().isEmpty());
+    }
+
+    @Test
+    public void failedBatch_isSentAgainWithTheSameIds() throws Exception {
+        queue(10);
+        uploader.start();
+        Upload first = awaitUpload(0);
+
+        first.future.completeExceptionally(new IOException("Connection reset"));
+        Upload again = awaitUpload(1);
+
+        assertEquals(ids(first), ids(again));
+        assertFalse(ids(first).contains(null));
+        assertEquals(1, uploader.getRetries());
+        confirm(again);
+        awaitUploaded(10);
+    }
+
+    @Test
+    public void unexpectedAnswer_isRetriedLikeAFailure() throws Exception {
+        queue(3);
+        uploader.start();
+        Upload first = awaitUpload(0);
+
+        first.future.complete("not a count");
+        Upload again = awaitUpload(1);
+
+        assertEquals(ids(first), ids(again));
+        assertEquals(0, uploader.getUploaded());
+    }
+
+    @Test
+    public void shutdown_keepsTheUnconfirmedPurchases() throws Exception {
+        queue(250);
+        uploader.start();
+        Upload first = awaitUpload(0);
+        awaitUpload(2);
+
+        confirm(first);
+        awaitUploaded(100);
+        stopUploader();
+        // Answered after the shutdown, too late to be recorded
+        confirm(uploads.get(1));
+
+        List<String> pending = pendingCustomers();
+        assertEquals(150, pending.size());
+        assertEquals("c100", pending.get(0));
+    }
+}
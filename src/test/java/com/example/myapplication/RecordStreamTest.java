@@ -0,0 +1,183 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Outcomes of RecordStream against a stand-in master that writes the records it is
+ * given one at a time, resetting after each, and ends with null
+ */
+public class RecordStreamTest {
+    private static final int TIMEOUT_MS = 5000;
+    private static final int BUDGET_BYTES = 8192;
+
+    private ServerSocket server;
+    private volatile List<Object> records;
+    private volatile boolean wholeList;
+    private volatile String receivedType;
+
+    @Before
+    public void startMaster() throws IOException {
+        server = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopMaster() throws IOException {
+        server.close();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            receivedType = (String) in.readObject();
+            in.readObject();
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (wholeList) {
+                out.writeObject(new ArrayList<>(records));
+            } else {
+                for (Object record : records) {
+                    out.writeObject(record);
+                    out.reset();
+                }
+                out.writeObject(null);
+            }
+            out.flush();
+        } catch (IOException | ClassNotFoundException e) {
+            // Client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static Store store(String name, int products) {
+        ArrayList<Product> items = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            items.add(new Product("Product " + i + " of " + name, "pizza", 1, 8.5));
+        }
+        return new Store(name, 0, 0, "pizza", 4, 10, "", items);
+    }
+
+    private RecordStream.Result stream(int budgetBytes, int stopAfter, List<String> names) throws Exception {
+        return RecordStream.open(new Endpoint("127.0.0.1", server.getLocalPort()), MasterClient.REQUEST_CLIENT_STREAM,
+                new Object[]{new MapReduceRequest()}, Store.class, budgetBytes, TIMEOUT_MS, store -> {
+                    names.add(store.getStoreName());
+                    return names.size() < stopAfter;
+                }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void everyRecordRead_isComplete() throws Exception {
+        records = Arrays.<Object>asList(store("a", 3), store("b", 3), store("c", 3));
+        ArrayList<String> names = new ArrayList<>();
+
+        RecordStream.Result result = stream(BUDGET_BYTES, Integer.MAX_VALUE, names);
+
+        assertEquals(RecordStream.Outcome.COMPLETE, result.getOutcome());
+        assertFalse(result.isTruncated());
+        assertEquals(3, result.getRecords());
+        assertEquals(Arrays.asList("a", "b", "c"), names);
+        assertTrue(result.getBytesRead() > 0);
+        assertEquals(MasterClient.REQUEST_CLIENT_STREAM, receivedType);
+    }
+
+    @Test
+    public void consumerStopping_isStopped() throws Exception {
+        records = Arrays.<Object>asList(store("a", 3), store("b", 3), store("c", 3));
+        ArrayList<String> names = new ArrayList<>();
+
+        RecordStream.Result result = stream(BUDGET_BYTES, 2, names);
+
+        assertEquals(RecordStream.Outcome.STOPPED, result.getOutcome());
+        assertTrue(result.isTruncated());
+        assertEquals(2, result.getRecords());
+        assertEquals(Arrays.asList("a", "b"), names);
+    }
+
+    @Test
+    public void recordLargerThanTheBudget_isOverBudget() throws Exception {
+        records = Arrays.<Object>asList(store("a", 3), store("huge", 2000), store("c", 3));
+        ArrayList<String> names = new ArrayList<>();
+
+        RecordStream.Result result = stream(BUDGET_BYTES, Integer.MAX_VALUE, names);
+
+        assertEquals(RecordStream.Outcome.OVER_BUDGET, result.getOutcome());
+        assertTrue(result.isTruncated());
+        assertEquals(1, result.getRecords());
+        assertEquals(Arrays.asList("a"), names);
+        // Decoding stopped at the budget instead of reading the whole record
+        assertTrue(result.getBytesRead() < 2 * BUDGET_BYTES);
+    }
+
+    @Test
+    public void wholeListFromAnOlderMaster_isDeliveredOneByOne() throws Exception {
+        records = Arrays.<Object>asList(store("a", 3), store("b", 3));
+        wholeList = true;
+        ArrayList<String> names = new ArrayList<>();
+
+        RecordStream.Result result = stream(BUDGET_BYTES, Integer.MAX_VALUE, names);
+
+        assertEquals(RecordStream.Outcome.COMPLETE, result.getOutcome());
+        assertEquals(Arrays.asList("a", "b"), names);
+    }
+
+    @Test
+    public void wholeListOverTheBudget_isOverBudget() throws Exception {
+        records = Arrays.<Object>asList(store("a", 200), store("b", 200));
+        wholeList = true;
+        ArrayList<String> names = new ArrayList<>();
+
+        RecordStream.Result result = stream(BUDGET_BYTES, Integer.MAX_VALUE, names);
+
+        assertEquals(RecordStream.Outcome.OVER_BUDGET, result.getOutcome());
+        assertEquals(0, result.getRecords());
+    }
+
+    @Test
+    public void unexpectedRecord_failsWithProtocolException() throws Exception {
+        records = Arrays.<Object>asList(store("a", 1), "not a store");
+        ArrayList<String> names = new ArrayList<>();
+
+        try {
+            stream(BUDGET_BYTES, Integer.MAX_VALUE, names);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ProtocolException);
+        }
+        assertEquals(Arrays.asList("a"), names);
+    }
+}
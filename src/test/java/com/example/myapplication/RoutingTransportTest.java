@@ -0,0 +1,259 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Routing and failover of RoutingTransport over stand-in transports
+ */
+public class RoutingTransportTest {
+
+    /**
+     * Answers with its own name, or fails with the error it is given
+     */
+    private static class StubTransport implements Transport {
+        final String name;
+        volatile IOException error;
+        final ArrayList<CompletableFuture<Object>> held = new ArrayList<>();
+        volatile boolean hold;
+        int requests;
+
+        StubTransport(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public synchronized CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+            requests++;
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            if (hold) {
+                held.add(future);
+            } else if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(name);
+            }
+            return future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private final HashMap<String, StubTransport> stubs = new HashMap<>();
+
+    private RoutingTransport routing(RoutingTransport.Strategy strategy, String... names) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            endpoints.add(new Endpoint(names[i], 5000 + i));
+            stubs.put(names[i], new StubTransport(names[i]));
+        }
+        return new RoutingTransport(endpoints, strategy, endpoint -> stubs.get(endpoint.getHost()));
+    }
+
+    private static Object get(CompletableFuture<Object> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static Endpoint endpoint(RoutingTransport routing, String host) {
+        for (Endpoint endpoint : routing.getEndpoints()) {
+            if (endpoint.getHost().equals(host)) {
+                return endpoint;
+            }
+        }
+        throw new AssertionError(host);
+    }
+
+    private int totalRequests() {
+        int total = 0;
+        for (StubTransport stub : stubs.values()) {
+            total += stub.requests;
+        }
+        return total;
+    }
+
+    @Test
+    public void consistentHash_sendsAKeyToTheSameMaster() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b", "c");
+        String expected = routing.route("pizzeria").getHost();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected, get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY,
+                    new Object[]{"pizzeria"}, 1000)));
+        }
+        assertEquals(5, stubs.get(expected).requests);
+    }
+
+    @Test
+    public void timeout_marksTheMasterDownWithoutFailingOver() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b", "c");
+        String first = routing.route("pizzeria").getHost();
+        stubs.get(first).error = new SocketTimeoutException("Read timed out");
+
+        try {
+            get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"pizzeria"}, 1000));
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertEquals(1, totalRequests());
+        assertFalse(endpoint(routing, first).isHealthy());
+        // Later requests for the key skip the master while it is down
+        String next = routing.route("pizzeria").getHost();
+        assertNotEquals(first, next);
+        assertEquals(next, get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"pizzeria"}, 1000)));
+    }
+
+    @Test
+    public void upload_isNotFailedOver() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b");
+        stubs.get("a").error = new ConnectException("Connection reset");
+        stubs.get("b").error = new ConnectException("Connection reset");
+
+        try {
+            get(routing.send(PurchaseUploader.REQUEST_UPLOAD_PURCHASES, new Object[]{new ArrayList<Purchase>()}, 1000));
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+        assertEquals(1, totalRequests());
+    }
+
+    @Test
+    public void resentUpload_goesToTheSameMasterWhileItIsDown() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.LEAST_OUTSTANDING, "a", "b", "c");
+        Object[] batch = new Object[]{new ArrayList<Purchase>()};
+        stubs.get("a").error = new ConnectException("Connection reset");
+        stubs.get("b").error = new ConnectException("Connection reset");
+        stubs.get("c").error = new ConnectException("Connection reset");
+        try {
+            get(routing.send(PurchaseUploader.REQUEST_UPLOAD_PURCHASES, batch, 1000));
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+        String owner = null;
+        for (StubTransport stub : stubs.values()) {
+            stub.error = null;
+            if (stub.requests == 1) {
+                owner = stub.name;
+            }
+        }
+        assertFalse(endpoint(routing, owner).isHealthy());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(owner, get(routing.send(PurchaseUploader.REQUEST_UPLOAD_PURCHASES, batch, 1000)));
+        }
+        assertEquals(4, stubs.get(owner).requests);
+    }
+
+    @Test
+    public void requestPastItsDeadline_isNotFailedOver() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b");
+        stubs.get("a").error = new ConnectException("Connection refused");
+        stubs.get("b").error = new ConnectException("Connection refused");
+        MapReduceRequest request = new MapReduceRequest();
+        request.setDeadline(System.currentTimeMillis() - 1);
+
+        try {
+            get(routing.send(MasterClient.REQUEST_CLIENT, new Object[]{request}, 1000));
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+        assertEquals(1, totalRequests());
+    }
+
+    @Test
+    public void connectionError_failsOver() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b");
+        String first = routing.route("sushi").getHost();
+        stubs.get(first).error = new ConnectException("Connection refused");
+
+        Object answer = get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"sushi"}, 1000));
+
+        assertNotEquals(first, answer);
+        assertFalse(endpoint(routing, first).isHealthy());
+    }
+
+    @Test
+    public void everyMasterFailing_reportsTheLastError() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b");
+        stubs.get("a").error = new ConnectException("a refused");
+        stubs.get("b").error = new ConnectException("b refused");
+
+        try {
+            get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"sushi"}, 1000));
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+        assertEquals(1, stubs.get("a").requests);
+        assertEquals(1, stubs.get("b").requests);
+    }
+
+    @Test
+    public void protocolError_isNotRetried() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a", "b");
+        String first = routing.route("sushi").getHost();
+        stubs.get(first).error = new ProtocolException("Unexpected response");
+
+        try {
+            get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"sushi"}, 1000));
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ProtocolException);
+        }
+        assertEquals(0, stubs.get(first.equals("a") ? "b" : "a").requests);
+        assertTrue(endpoint(routing, first).isHealthy());
+    }
+
+    @Test
+    public void leastOutstanding_picksTheIdlerMaster() throws Exception {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.LEAST_OUTSTANDING, "a", "b");
+        stubs.get("a").hold = true;
+        stubs.get("b").hold = true;
+        routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"x"}, 1000);
+        routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"x"}, 1000);
+        routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"x"}, 1000);
+        assertEquals(Arrays.asList(2, 1), Arrays.asList(
+                Math.max(stubs.get("a").requests, stubs.get("b").requests),
+                Math.min(stubs.get("a").requests, stubs.get("b").requests)));
+
+        // Finish the requests of the busy master, it is then the idler one
+        String busy = stubs.get("a").requests == 2 ? "a" : "b";
+        String idle = busy.equals("a") ? "b" : "a";
+        for (CompletableFuture<Object> future : stubs.get(busy).held) {
+            future.complete(busy);
+        }
+        stubs.get(busy).hold = false;
+        assertEquals(busy, get(routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY, new Object[]{"x"}, 1000)));
+        assertEquals(1, endpoint(routing, idle).getOutstanding());
+    }
+
+    @Test
+    public void cancelling_cancelsTheRequestInFlight() {
+        RoutingTransport routing = routing(RoutingTransport.Strategy.CONSISTENT_HASH, "a");
+        stubs.get("a").hold = true;
+        CompletableFuture<Object> result = routing.send(MasterClient.REQUEST_PRODUCT_CATEGORY,
+                new Object[]{"x"}, 1000);
+
+        result.cancel(true);
+
+        assertTrue(stubs.get("a").held.get(0).isCancelled());
+        assertEquals(0, endpoint(routing, "a").getOutstanding());
+    }
+}
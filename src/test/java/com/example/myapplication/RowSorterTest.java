@@ -0,0 +1,151 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Orders, tie breaking, category subtotals and kept orders of RowSorter
+ */
+public class RowSorterTest {
+
+    private static Product row(String store, String category, int quantity, double price) {
+        return new Product(store, category, quantity, price);
+    }
+
+    private static Product total(int quantity, double price) {
+        Product total = new Product("Σύνολο", "", quantity, price);
+        total.setRowKind(Product.RowKind.TOTAL);
+        return total;
+    }
+
+    private static List<String> names(List<Product> rows) {
+        ArrayList<String> names = new ArrayList<>();
+        for (Product row : rows) {
+            names.add(row.getName());
+        }
+        return names;
+    }
+
+    private static List<Product> rows() {
+        return Arrays.asList(
+                row("Napoli", "pizza", 5, 8.0),
+                row("beta", "souvlaki", 7, 3.0),
+                row("Alpha", "pizza", 7, 9.0),
+                total(19, 6.0),
+                row("Gamma", "souvlaki", 2, 4.5));
+    }
+
+    @Test
+    public void quantityDescending_breaksTiesByStoreName() {
+        RowSorter sorter = new RowSorter(rows());
+
+        List<Product> sorted = sorter.sorted(new RowSorter.Order(RowSorter.SortKey.QUANTITY, true, false));
+
+        assertEquals(Arrays.asList("Alpha", "beta", "Napoli", "Gamma", "Σύνολο"), names(sorted));
+    }
+
+    @Test
+    public void storeName_ignoresCase() {
+        RowSorter sorter = new RowSorter(rows());
+
+        List<Product> sorted = sorter.sorted(new RowSorter.Order(RowSorter.SortKey.STORE_NAME, false, false));
+
+        assertEquals(Arrays.asList("Alpha", "beta", "Gamma", "Napoli", "Σύνολο"), names(sorted));
+    }
+
+    @Test
+    public void amount_isPriceTimesQuantity() {
+        RowSorter sorter = new RowSorter(rows());
+        RowSorter.Order ascending = new RowSorter.Order(RowSorter.SortKey.AMOUNT, false, false);
+
+        // 9.00, 21.00, 40.00, 63.00
+        assertEquals(Arrays.asList("Gamma", "beta", "Napoli", "Alpha", "Σύνολο"), names(sorter.sorted(ascending)));
+        assertEquals(Arrays.asList("Alpha", "Napoli", "beta", "Gamma", "Σύνολο"),
+                names(sorter.sorted(ascending.reversed())));
+    }
+
+    @Test
+    public void groupedByCategory_addsASubtotalAfterEachGroup() {
+        RowSorter sorter = new RowSorter(rows());
+
+        List<Product> sorted = sorter.sorted(new RowSorter.Order(RowSorter.SortKey.QUANTITY, false, true));
+
+        assertEquals(Arrays.asList("Napoli", "Alpha", "Σύνολο", "Gamma", "beta", "Σύνολο", "Σύνολο"), names(sorted));
+        Product pizza = sorted.get(2);
+        assertEquals(Product.RowKind.SUBTOTAL, pizza.getRowKind());
+        assertEquals("pizza", pizza.getCategory());
+        assertEquals(12, pizza.getQuantity());
+        // 40.00 + 63.00 over 12 items
+        assertEquals(103.0, pizza.getPrice() * pizza.getQuantity(), 1e-9);
+        Product souvlaki = sorted.get(5);
+        assertEquals(Product.RowKind.SUBTOTAL, souvlaki.getRowKind());
+        assertEquals(9, souvlaki.getQuantity());
+        assertEquals(30.0, souvlaki.getPrice() * souvlaki.getQuantity(), 1e-9);
+        assertEquals(Product.RowKind.TOTAL, sorted.get(6).getRowKind());
+    }
+
+    @Test
+    public void subtotalRowsReceived_areDropped() {
+        Product subtotal = row("Σύνολο", "pizza", 12, 8.5);
+        subtotal.setRowKind(Product.RowKind.SUBTOTAL);
+        RowSorter sorter = new RowSorter(Arrays.asList(row("Napoli", "pizza", 5, 8.0), subtotal));
+
+        assertEquals(Collections.singletonList("Napoli"),
+                names(sorter.sorted(new RowSorter.Order(RowSorter.SortKey.QUANTITY, true, false))));
+    }
+
+    @Test
+    public void orders_areKeptOnceSorted() {
+        RowSorter sorter = new RowSorter(rows());
+        RowSorter.Order order = new RowSorter.Order(RowSorter.SortKey.CATEGORY, false, false);
+        assertFalse(sorter.isSorted(order));
+
+        List<Product> first = sorter.sorted(order);
+
+        assertTrue(sorter.isSorted(order));
+        assertSame(first, sorter.sorted(new RowSorter.Order(RowSorter.SortKey.CATEGORY, false, false)));
+        assertFalse(sorter.isSorted(order.reversed()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void sortedRows_cannotBeChanged() {
+        new RowSorter(rows()).sorted(new RowSorter.Order(RowSorter.SortKey.QUANTITY, true, false)).clear();
+    }
+
+    @Test
+    public void rowOrder_doesNotDependOnArrivalOrder() {
+        List<Product> rows = new ArrayList<>(rows());
+        RowSorter.Order order = new RowSorter.Order(RowSorter.SortKey.QUANTITY, true, true);
+        List<String> expected = names(new RowSorter(rows).sorted(order));
+
+        Collections.reverse(rows);
+
+        assertEquals(expected, names(new RowSorter(rows).sorted(order)));
+    }
+
+    @Test
+    public void largeList_isSortedInParallelTheSameWay() {
+        Random random = new Random(5);
+        ArrayList<Product> rows = new ArrayList<>();
+        for (int i = 0; i < RowSorter.PARALLEL_THRESHOLD + 500; i++) {
+            rows.add(row(String.format("store%06d", i), "c" + random.nextInt(20), random.nextInt(50), 1.0));
+        }
+
+        List<Product> sorted = new RowSorter(rows).sorted(new RowSorter.Order(RowSorter.SortKey.QUANTITY, true, false));
+
+        assertEquals(rows.size(), sorted.size());
+        for (int i = 1; i < sorted.size(); i++) {
+            Product previous = sorted.get(i - 1);
+            Product row = sorted.get(i);
+            assertTrue(previous.getQuantity() > row.getQuantity()
+                    || previous.getQuantity() == row.getQuantity() && previous.getName().compareTo(row.getName()) < 0);
+        }
+    }
+}
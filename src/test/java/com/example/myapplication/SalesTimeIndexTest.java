@@ -0,0 +1,141 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Minute and hour buckets of SalesTimeIndex, queried as of a fixed time so the tests
+ * do not depend on the clock
+ */
+public class SalesTimeIndexTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    // Start of an hour
+    private static final long T0 = 472222L * HOUR;
+
+    private final SalesTimeIndex index = new SalesTimeIndex();
+
+    private void sold(long time, String store, String category, int quantity) {
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("Margherita", category, quantity, 8.5));
+        Purchase purchase = new Purchase("Maria", "maria@pizza.gr", products);
+        purchase.setPurchaseTime(time);
+        index.add(store, purchase);
+    }
+
+    @Test
+    public void recentPurchases_areCountedPerMinute() {
+        sold(T0 + 10 * MINUTE + 5000, "Napoli", "pizza", 2);
+        sold(T0 + 30 * MINUTE, "Roma", "pizza", 3);
+        long now = T0 + 40 * MINUTE;
+
+        SalesWindow both = index.range("pizza", T0 + 10 * MINUTE + 30000, now, now);
+        SalesWindow later = index.range("pizza", T0 + 11 * MINUTE, now, now);
+
+        assertEquals(5, both.getTotalSales());
+        // The start is rounded down to its minute, which holds the first purchase
+        assertEquals(T0 + 10 * MINUTE, both.getFrom());
+        assertEquals(now, both.getTo());
+        assertEquals(3, later.getTotalSales());
+        assertEquals(Integer.valueOf(3), later.getSalesByStore().get("Roma"));
+    }
+
+    @Test
+    public void purchase_rollsOverFromItsMinuteToItsHourBucket() {
+        sold(T0 + 10 * MINUTE, "Napoli", "pizza", 2);
+
+        SalesWindow soon = index.range("pizza", T0, T0 + HOUR, T0 + 20 * MINUTE);
+        SalesWindow hoursLater = index.range("pizza", T0, T0 + HOUR, T0 + 3 * HOUR);
+
+        assertEquals(2, soon.getTotalSales());
+        // Not past the minute the query was made in
+        assertEquals(T0 + 21 * MINUTE, soon.getTo());
+        assertEquals(2, hoursLater.getTotalSales());
+        assertEquals(T0, hoursLater.getFrom());
+        assertEquals(T0 + HOUR, hoursLater.getTo());
+    }
+
+    @Test
+    public void rangeOverHoursAndMinutes_countsEachPurchaseOnce() {
+        sold(T0 + 10 * MINUTE, "Napoli", "pizza", 2);
+        sold(T0 + 2 * HOUR + 30 * MINUTE, "Napoli", "pizza", 3);
+        long now = T0 + 3 * HOUR + 5 * MINUTE;
+
+        SalesWindow window = index.range("pizza", T0, now, now);
+
+        assertEquals(5, window.getTotalSales());
+        assertEquals(T0, window.getFrom());
+        assertEquals(now, window.getTo());
+    }
+
+    @Test
+    public void rangeOlderThanAWeek_isClipped() {
+        sold(T0 + 10 * MINUTE, "Napoli", "pizza", 2);
+        sold(T0 + 100 * HOUR, "Roma", "pizza", 3);
+        long now = T0 + 200 * HOUR;
+
+        SalesWindow window = index.range("pizza", T0, now, now);
+
+        assertEquals(3, window.getTotalSales());
+        assertEquals(T0 + (200 - 167) * HOUR, window.getFrom());
+        assertEquals(now, window.getTo());
+    }
+
+    @Test
+    public void reusedBuckets_forgetTheirOlderPeriod() {
+        sold(T0 + 10 * MINUTE, "Napoli", "pizza", 2);
+        // A week later both its minute and its hour slot come round again
+        long weekLater = T0 + 168 * HOUR;
+        sold(weekLater + 10 * MINUTE, "Roma", "pizza", 3);
+
+        SalesWindow minutes = index.range("pizza", weekLater, weekLater + 20 * MINUTE, weekLater + 20 * MINUTE);
+        SalesWindow hours = index.range("pizza", weekLater, weekLater + HOUR, weekLater + 3 * HOUR);
+
+        assertEquals(3, minutes.getTotalSales());
+        assertNull(minutes.getSalesByStore().get("Napoli"));
+        assertEquals(3, hours.getTotalSales());
+        assertNull(hours.getSalesByStore().get("Napoli"));
+    }
+
+    @Test
+    public void purchaseOlderThanAWeek_isDropped() {
+        long now = T0 + 168 * HOUR + 10 * MINUTE;
+        sold(now, "Roma", "pizza", 3);
+
+        sold(T0 + 10 * MINUTE, "Napoli", "pizza", 2);
+
+        assertEquals(3, index.range("pizza", T0, now + MINUTE, now).getTotalSales());
+        assertEquals(3, index.range("pizza", now, now + MINUTE, now).getTotalSales());
+    }
+
+    @Test
+    public void latePurchase_stillCountsInItsHour() {
+        sold(T0 + 5 * HOUR, "Roma", "pizza", 3);
+
+        // Three hours late, its minute is no longer kept
+        sold(T0 + 2 * HOUR + 10 * MINUTE, "Napoli", "pizza", 2);
+
+        SalesWindow window = index.range("pizza", T0 + 2 * HOUR, T0 + 3 * HOUR, T0 + 5 * HOUR);
+        assertEquals(Integer.valueOf(2), window.getSalesByStore().get("Napoli"));
+    }
+
+    @Test
+    public void categories_matchIgnoringCase() {
+        sold(T0 + 10 * MINUTE, "Napoli", "Pizza", 2);
+        sold(T0 + 11 * MINUTE, "Zen", "sushi", 4);
+
+        SalesWindow window = index.range("PIZZA", T0, T0 + 20 * MINUTE, T0 + 20 * MINUTE);
+
+        assertEquals("PIZZA", window.getCategory());
+        assertEquals(2, window.getTotalSales());
+    }
+
+    @Test
+    public void salesWindow_keepsItsSerialVersionUID() {
+        assertEquals(-2971569482096174290L, ObjectStreamClass.lookup(SalesWindow.class).getSerialVersionUID());
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ObjectStreamClass;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * ScatterGather over stand-in worker transports. A worker answers with what the test
+ * put in answers for it, fails with its error, or never answers if it has neither.
+ */
+public class ScatterGatherTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    /**
+     * Transport of one stand-in worker
+     */
+    private class StubTransport implements Transport {
+        final String worker;
+        volatile Object[] lastParams;
+        final List<CompletableFuture<Object>> held = Collections.synchronizedList(new ArrayList<CompletableFuture<Object>>());
+
+        StubTransport(String worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public CompletableFuture<Object> send(String requestType, Object[] params, int readTimeoutMs) {
+            lastParams = params;
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            if (answers.containsKey(worker)) {
+                future.complete(answers.get(worker));
+            } else if (errors.containsKey(worker)) {
+                future.completeExceptionally(errors.get(worker));
+            } else {
+                held.add(future);
+            }
+            return future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private final HashMap<String, Object> answers = new HashMap<>();
+    private final HashMap<String, IOException> errors = new HashMap<>();
+    private final HashMap<String, StubTransport> stubs = new HashMap<>();
+    // Workers told to stop, in the order the cancels were sent
+    private final List<String> cancelled = Collections.synchronizedList(new ArrayList<String>());
+    private final WastedWork wastedWork = new WastedWork();
+    private final ScatterGather scatterGather = new ScatterGather(endpoint -> {
+        StubTransport stub = new StubTransport(endpoint.toString());
+        stubs.put(endpoint.toString(), stub);
+        return stub;
+    }, wastedWork, (worker, work) -> cancelled.add(((StubTransport) worker).worker));
+
+    private static ShardMap shards(String... workers) {
+        return new ShardMap(new ArrayList<>(Arrays.asList(workers)), 1);
+    }
+
+    private static HashMap<String, Integer> sales(String store, int quantity) {
+        HashMap<String, Integer> sales = new HashMap<>();
+        sales.put(store, quantity);
+        return sales;
+    }
+
+    private static ArrayList<Store> stores(String... names) {
+        ArrayList<Store> stores = new ArrayList<>();
+        for (String name : names) {
+            stores.add(new Store(name, 0, 0, "pizza", 4, 1, null, new ArrayList<Product>()));
+        }
+        return stores;
+    }
+
+    private static List<String> names(List<Store> stores) {
+        List<String> names = new ArrayList<>();
+        for (Store store : stores) {
+            names.add(store.getStoreName());
+        }
+        return names;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<PartialResult<HashMap<String, Integer>>> gatherSales(ShardMap shards, int shardTimeoutMs) {
+        return scatterGather.gather(shards, MasterClient.REQUEST_PRODUCT_CATEGORY,
+                new Object[]{new MapReduceRequest()}, shardTimeoutMs,
+                response -> (HashMap<String, Integer>) response, ScatterGather::mergeSales);
+    }
+
+    @Test
+    public void everyWorkerAnswering_isComplete() throws Exception {
+        answers.put("a:1", sales("Napoli", 2));
+        answers.put("b:1", sales("Napoli", 3));
+        answers.put("c:1", sales("Roma", 1));
+
+        PartialResult<HashMap<String, Integer>> result = gatherSales(shards("a:1", "b:1", "c:1"), TIMEOUT_MS)
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertTrue(result.isComplete());
+        assertEquals(Integer.valueOf(5), result.getValue().get("Napoli"));
+        assertEquals(Integer.valueOf(1), result.getValue().get("Roma"));
+    }
+
+    @Test
+    public void workerMissingItsTimeLimit_isLeftOutAndListed() throws Exception {
+        answers.put("a:1", sales("Napoli", 2));
+        answers.put("c:1", sales("Roma", 1));
+
+        PartialResult<HashMap<String, Integer>> result = gatherSales(shards("a:1", "b:1", "c:1"), 200)
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertFalse(result.isComplete());
+        assertEquals(Collections.singletonList("b:1"), result.getMissingShards());
+        assertEquals(2, result.getAnsweredShards());
+        assertEquals(Integer.valueOf(2), result.getValue().get("Napoli"));
+        assertEquals(Integer.valueOf(1), result.getValue().get("Roma"));
+        assertEquals(1, wastedWork.getDeadlinesMissed());
+    }
+
+    @Test
+    public void failingWorker_isLeftOutAndListed() throws Exception {
+        answers.put("a:1", sales("Napoli", 2));
+        errors.put("b:1", new ConnectException("Connection refused"));
+
+        PartialResult<HashMap<String, Integer>> result = gatherSales(shards("a:1", "b:1"), TIMEOUT_MS)
+                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(Collections.singletonList("b:1"), result.getMissingShards());
+        assertEquals(0, wastedWork.getDeadlinesMissed());
+    }
+
+    @Test
+    public void everyWorkerFailing_failsTheGather() throws Exception {
+        errors.put("a:1", new ConnectException("a refused"));
+        errors.put("b:1", new ConnectException("b refused"));
+
+        try {
+            gatherSales(shards("a:1", "b:1"), TIMEOUT_MS).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Expected the gather to fail");
+        } catch (ExecutionException e) {
+            Throwable cause = MasterClient.unwrap(e);
+            assertTrue(cause instanceof ConnectException);
+            assertEquals("a refused", cause.getMessage());
+        }
+    }
+
+    @Test
+    public void everyWorkerTimingOut_failsTheGather() throws Exception {
+        try {
+            gatherSales(shards("a:1", "b:1"), 100).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Expected the gather to fail");
+        } catch (ExecutionException e) {
+            assertTrue(MasterClient.unwrap(e) instanceof TimeoutException);
+        }
+        assertEquals(2, wastedWork.getDeadlinesMissed());
+    }
+
+    @Test
+    public void mergeStores_keepsTheShardOrder() throws Exception {
+        String[] workers = new String[9];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = "w" + i + ":1";
+            answers.put(workers[i], stores("store-" + i, "shared"));
+        }
+
+        PartialResult<ArrayList<Store>> result = scatterGather.gather(shards(workers),
+                MasterClient.REQUEST_CLIENT, new Object[]{new MapReduceRequest()}, TIMEOUT_MS,
+                ScatterGatherTest::castStores,
+                ScatterGather::mergeStores).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("store-0", "shared", "store-1", "store-2", "store-3", "store-4",
+                "store-5", "store-6", "store-7", "store-8"), names(result.getValue()));
+    }
+
+    @Test
+    public void mergeTask_keepsTheShardOrderOnManyThreads() {
+        List<ArrayList<Store>> parts = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 37; i++) {
+            parts.add(stores("store-" + i));
+            expected.add("store-" + i);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int run = 0; run < 20; run++) {
+                List<ArrayList<Store>> copies = new ArrayList<>();
+                for (ArrayList<Store> part : parts) {
+                    copies.add(new ArrayList<>(part));
+                }
+                ArrayList<Store> merged = pool.invoke(new ScatterGather.MergeTask<>(copies, 0, copies.size(),
+                        ScatterGather::mergeStores));
+                assertEquals(expected, names(merged));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelling_stopsOnlyTheWorkersStillRunning() throws Exception {
+        answers.put("a:1", sales("Napoli", 2));
+        CompletableFuture<PartialResult<HashMap<String, Integer>>> result =
+                gatherSales(shards("a:1", "b:1", "c:1"), TIMEOUT_MS);
+
+        assertTrue(result.cancel(true));
+
+        Collections.sort(cancelled);
+        assertEquals(Arrays.asList("b:1", "c:1"), cancelled);
+        assertTrue(stubs.get("b:1").held.get(0).isCancelled());
+        assertTrue(stubs.get("c:1").held.get(0).isCancelled());
+        assertEquals(2, wastedWork.getCancelled());
+    }
+
+    @Test
+    public void workers_getAStampedCopyOfTheRequest() throws Exception {
+        answers.put("a:1", sales("Napoli", 2));
+        MapReduceRequest request = new MapReduceRequest();
+        Object[] params = {request};
+        long before = System.currentTimeMillis();
+
+        scatterGather.gather(shards("a:1"), MasterClient.REQUEST_PRODUCT_CATEGORY, params, 300,
+                response -> response, (first, second) -> first).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        MapReduceRequest work = (MapReduceRequest) stubs.get("a:1").lastParams[0];
+        assertTrue(work.getDeadline() >= before + 300);
+        assertNotNull(work.getCancelToken());
+        assertSame(request, params[0]);
+        assertEquals(0, request.getDeadline());
+        assertNull(request.getCancelToken());
+    }
+
+    @Test
+    public void serialVersionUIDs_areKept() {
+        assertEquals(1334041476612362622L, ObjectStreamClass.lookup(ShardMap.class).getSerialVersionUID());
+        assertEquals(-7436554345566958586L,
+                ObjectStreamClass.lookup(ScatterGather.MergeTask.class).getSerialVersionUID());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Store> castStores(Object response) {
+        return (ArrayList<Store>) response;
+    }
+}
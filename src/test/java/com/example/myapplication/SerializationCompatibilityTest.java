@@ -0,0 +1,206 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+/**
+ * Objects exchanged with the master must still decode from and to masters built
+ * with the baseline classes. The streams below were written by those classes.
+ */
+public class SerializationCompatibilityTest {
+
+    // new Product("Margherita", "pizza", 3, 8.5) with status "hidden"
+    private static final String BASELINE_PRODUCT =
+            "rO0ABXNyACFjb20uZXhhbXBsZS5teWFwcGxpY2F0aW9uLlByb2R1Y3SHTKhzExP+xAIABUQABXByaWNlSQAIcXVhbnRpdHlM"
+                    + "AAhjYXRlZ29yeXQAEkxqYXZhL2xhbmcvU3RyaW5nO0wABG5hbWVxAH4AAUwABnN0YXR1c3EAfgABeHBAIQAAAAAAAAAAAAN0"
+                    + "AAVwaXp6YXQACk1hcmdoZXJpdGF0AAZoaWRkZW4=";
+
+    // new Purchase("Maria", "maria@example.com", [Margherita x2 at 8.5, Greek salad x1 at 6.0]) at 1700000000000
+    private static final String BASELINE_PURCHASE =
+            "rO0ABXNyACJjb20uZXhhbXBsZS5teWFwcGxpY2F0aW9uLlB1cmNoYXNlm8ryGt4/olECAAVKAAxwdXJjaGFzZVRpbWVEAAp0b3Rh"
+                    + "bFByaWNlTAANY3VzdG9tZXJFbWFpbHQAEkxqYXZhL2xhbmcvU3RyaW5nO0wADGN1c3RvbWVyTmFtZXEAfgABTAARcHVyY2hhc2Vk"
+                    + "UHJvZHVjdHN0ABVMamF2YS91dGlsL0FycmF5TGlzdDt4cAAAAYvP5WgAQDcAAAAAAAB0ABFtYXJpYUBleGFtcGxlLmNvbXQABU1h"
+                    + "cmlhc3IAE2phdmEudXRpbC5BcnJheUxpc3R4gdIdmcdhnQMAAUkABHNpemV4cAAAAAJ3BAAAAAJzcgAhY29tLmV4YW1wbGUubXlh"
+                    + "cHBsaWNhdGlvbi5Qcm9kdWN0h0yocxMT/sQCAAVEAAVwcmljZUkACHF1YW50aXR5TAAIY2F0ZWdvcnlxAH4AAUwABG5hbWVxAH4A"
+                    + "AUwABnN0YXR1c3EAfgABeHBAIQAAAAAAAAAAAAJ0AAVwaXp6YXQACk1hcmdoZXJpdGF0AAd2aXNpYmxlc3EAfgAIQBgAAAAAAAAA"
+                    + "AAABdAAFc2FsYWR0AAtHcmVlayBzYWxhZHEAfgAMeA==";
+
+    // new MapReduceRequest(37.98, 23.73, [pizza, salad], 3.5, "$$", 5.0, "req-1")
+    private static final String BASELINE_MAP_REDUCE_REQUEST =
+            "rO0ABXNyACpjb20uZXhhbXBsZS5teWFwcGxpY2F0aW9uLk1hcFJlZHVjZVJlcXVlc3Qxl/EEhBptwAIAB0QADmNsaWVudExhdGl0"
+                    + "dWRlRAAPY2xpZW50TG9uZ2l0dWRlRAAIbWluU3RhcnNEAAZyYWRpdXNMAA5mb29kQ2F0ZWdvcmllc3QAFUxqYXZhL3V0aWwvQXJy"
+                    + "YXlMaXN0O0wADXByaWNlQ2F0ZWdvcnl0ABJMamF2YS9sYW5nL1N0cmluZztMAAlyZXF1ZXN0SWRxAH4AAnhwQEL9cKPXCj1AN7rh"
+                    + "R64Ue0AMAAAAAAAAQBQAAAAAAABzcgATamF2YS51dGlsLkFycmF5TGlzdHiB0h2Zx2GdAwABSQAEc2l6ZXhwAAAAAncEAAAAAnQA"
+                    + "BXBpenphdAAFc2FsYWR4dAACJCR0AAVyZXEtMQ==";
+
+    static Object read(String base64) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(base64)))) {
+            return in.readObject();
+        }
+    }
+
+    static Object roundTrip(Object value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    public void product_keepsBaselineSerialVersionUID() {
+        assertEquals(-8697391568164487484L, ObjectStreamClass.lookup(Product.class).getSerialVersionUID());
+    }
+
+    @Test
+    public void product_readsBaselineStream() throws Exception {
+        Product product = (Product) read(BASELINE_PRODUCT);
+
+        assertEquals("Margherita", product.getName());
+        assertEquals("pizza", product.getCategory());
+        assertEquals(3, product.getQuantity());
+        assertEquals(8.5, product.getPrice(), 0.0);
+        assertEquals("hidden", product.getStatus());
+        assertEquals(Product.Status.HIDDEN, product.getStatusFlag());
+        assertEquals(Product.RowKind.ITEM, product.getRowKind());
+    }
+
+    @Test
+    public void product_keepsBaselineFields() {
+        ObjectStreamClass descriptor = ObjectStreamClass.lookup(Product.class);
+
+        assertEquals(5, descriptor.getFields().length);
+        assertEquals(double.class, descriptor.getField("price").getType());
+        assertEquals(int.class, descriptor.getField("quantity").getType());
+        assertEquals(String.class, descriptor.getField("name").getType());
+        assertEquals(String.class, descriptor.getField("category").getType());
+        assertEquals(String.class, descriptor.getField("status").getType());
+    }
+
+    @Test
+    public void product_roundTripsStatusAndPoolsStrings() throws Exception {
+        Product product = new Product("Margherita", "pizza", 3, 8.5);
+        product.setStatusFlag(Product.Status.HIDDEN);
+
+        Product copy = (Product) roundTrip(product);
+
+        assertEquals(Product.Status.HIDDEN, copy.getStatusFlag());
+        assertSame(product.getName(), copy.getName());
+        assertSame(product.getCategory(), copy.getCategory());
+    }
+
+    @Test
+    public void product_sendsAnUnknownStatusBackUnchanged() throws Exception {
+        Product product = new Product("Margherita", "pizza", 3, 8.5);
+        product.setStatus("archived");
+
+        Product copy = (Product) roundTrip(product);
+
+        assertEquals(Product.Status.UNKNOWN, copy.getStatusFlag());
+        assertEquals("archived", copy.getStatus());
+    }
+
+    @Test
+    public void product_withoutStatus_staysWithoutStatus() throws Exception {
+        Product product = new Product("Margherita", "pizza", 3, 8.5);
+        product.setStatus(null);
+
+        Product copy = (Product) roundTrip(product);
+
+        assertEquals(Product.Status.UNKNOWN, copy.getStatusFlag());
+        assertNull(copy.getStatus());
+    }
+
+    @Test
+    public void product_statusNamesAreMatchedExactly() {
+        assertEquals(Product.Status.VISIBLE, Product.Status.fromWireName("visible"));
+        assertEquals(Product.Status.HIDDEN, Product.Status.fromWireName("hidden"));
+        assertEquals(Product.Status.UNKNOWN, Product.Status.fromWireName("Hidden"));
+    }
+
+    @Test
+    public void store_keepsBaselineSerialVersionUID() {
+        assertEquals(-2512227591635007582L, ObjectStreamClass.lookup(Store.class).getSerialVersionUID());
+    }
+
+    @Test
+    public void purchase_keepsBaselineSerialVersionUID() {
+        assertEquals(-7220692855323385263L, ObjectStreamClass.lookup(Purchase.class).getSerialVersionUID());
+    }
+
+    @Test
+    public void purchase_readsBaselineStreamWithoutId() throws Exception {
+        Purchase purchase = (Purchase) read(BASELINE_PURCHASE);
+
+        assertNull(purchase.getPurchaseId());
+        assertEquals("Maria", purchase.getCustomerName());
+        assertEquals("maria@example.com", purchase.getCustomerEmail());
+        assertEquals(1700000000000L, purchase.getPurchaseTime());
+        assertEquals(23.0, purchase.getTotalPrice(), 1e-9);
+        assertEquals(2, purchase.getPurchasedProducts().size());
+        assertEquals("Greek salad", purchase.getPurchasedProducts().get(1).getName());
+    }
+
+    @Test
+    public void purchase_roundTripsId() throws Exception {
+        ArrayList<Product> products = new ArrayList<>();
+        products.add(new Product("Margherita", "pizza", 2, 8.5));
+        Purchase purchase = new Purchase("Maria", "maria@example.com", products);
+        purchase.setPurchaseId("purchase-1");
+
+        Purchase copy = (Purchase) roundTrip(purchase);
+
+        assertEquals("purchase-1", copy.getPurchaseId());
+        assertEquals(17.0, copy.getTotalPrice(), 1e-9);
+    }
+
+    @Test
+    public void mapReduceRequest_keepsBaselineSerialVersionUID() {
+        assertEquals(3573589831040265664L, ObjectStreamClass.lookup(MapReduceRequest.class).getSerialVersionUID());
+    }
+
+    @Test
+    public void mapReduceRequest_readsBaselineStreamWithoutDeadline() throws Exception {
+        MapReduceRequest request = (MapReduceRequest) read(BASELINE_MAP_REDUCE_REQUEST);
+
+        assertEquals(37.98, request.getClientLatitude(), 0.0);
+        assertEquals(23.73, request.getClientLongitude(), 0.0);
+        assertEquals(Arrays.asList("pizza", "salad"), request.getFoodCategories());
+        assertEquals(3.5, request.getMinStars(), 0.0);
+        assertEquals("$$", request.getPriceCategory());
+        assertEquals(5.0, request.getRadius(), 0.0);
+        assertEquals("req-1", request.getRequestId());
+        assertEquals(0, request.getDeadline());
+        assertNull(request.getCancelToken());
+        assertFalse(request.isExpired());
+    }
+
+    @Test
+    public void mapReduceRequest_roundTripsDeadlineAndCancelToken() throws Exception {
+        MapReduceRequest request = new MapReduceRequest(37.98, 23.73,
+                new ArrayList<>(Arrays.asList("pizza")), 3.5, "$$", 5.0, "req-2");
+        request.setDeadline(System.currentTimeMillis() - 1000);
+        request.setCancelToken("token-1");
+
+        MapReduceRequest copy = (MapReduceRequest) roundTrip(request);
+
+        assertEquals(request.getDeadline(), copy.getDeadline());
+        assertEquals("token-1", copy.getCancelToken());
+        assertTrue(copy.isExpired());
+        assertEquals("req-2", copy.getRequestId());
+        assertEquals(Arrays.asList("pizza"), copy.getFoodCategories());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * SessionTransport against a stand-in master, on a session or one connection per request.
+ * The master answers a "page" request with a page of five products and any other
+ * request with the request type and the toString() of its one param.
+ */
+public class SessionTransportTest {
+    private static final int TIMEOUT_MS = 5000;
+
+    private ServerSocket server;
+    private Thread acceptor;
+
+    @Before
+    public void startMaster() throws IOException {
+        server = new ServerSocket(0);
+        acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    Thread connection = new Thread(() -> serve(socket));
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            } catch (IOException e) {
+                // Server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopMaster() throws IOException {
+        server.close();
+    }
+
+    private static void serve(Socket socket) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            String requestType = (String) in.readObject();
+            boolean session = SessionTransport.REQUEST_SESSION.equals(requestType);
+            do {
+                if (session) {
+                    requestType = (String) in.readObject();
+                }
+                Object param = in.readObject();
+                out.writeObject("page".equals(requestType) ? page((String) param) : requestType + ":" + param);
+                out.flush();
+            } while (session);
+        } catch (IOException | ClassNotFoundException e) {
+            // Client closed the connection
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static ResultPage page(String cursor) {
+        ArrayList<Product> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new Product("Margherita", "pizza", i + 1, 8.5));
+        }
+        return new ResultPage(items, cursor + "+5");
+    }
+
+    @Test
+    public void changedParam_isSentWithItsNewState() throws Exception {
+        SessionTransport transport = new SessionTransport("127.0.0.1", server.getLocalPort());
+        ArrayList<String> products = new ArrayList<>();
+        products.add("pizza");
+
+        assertEquals("echo:[pizza]", transport.send("echo", new Object[]{products}, TIMEOUT_MS).get());
+        products.add("salad");
+        assertEquals("echo:[pizza, salad]", transport.send("echo", new Object[]{products}, TIMEOUT_MS).get());
+        transport.shutdown();
+    }
+
+    @Test
+    public void session_sendsFewerBytesThanOneConnectionPerRequest() throws Exception {
+        SessionTransport session = new SessionTransport("127.0.0.1", server.getLocalPort());
+        BlockingTransport blocking = new BlockingTransport("127.0.0.1", server.getLocalPort());
+        for (int i = 0; i < 200; i++) {
+            String cursor = String.valueOf(i * 5);
+            ResultPage fromSession = (ResultPage) session.send("page", new Object[]{cursor}, TIMEOUT_MS).get();
+            ResultPage fromBlocking = (ResultPage) blocking.send("page", new Object[]{cursor}, TIMEOUT_MS).get();
+            assertEquals(cursor + "+5", fromSession.getNextCursor());
+            assertEquals(5, fromSession.getItems().size());
+            assertEquals(fromBlocking.getNextCursor(), fromSession.getNextCursor());
+        }
+
+        // The stream header and class descriptors are only sent once per session
+        assertEquals(200, session.getStats().getRequests());
+        assertTrue(session.getStats().getBytesSentPerRequest() < blocking.getStats().getBytesSentPerRequest());
+        assertTrue(session.getStats().getBytesReceivedPerRequest() < blocking.getStats().getBytesReceivedPerRequest() / 2);
+        session.shutdown();
+        blocking.shutdown();
+    }
+}
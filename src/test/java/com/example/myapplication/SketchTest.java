@@ -0,0 +1,221 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Error bounds and merging of CountMinSketch, HyperLogLog, TDigest and CategorySketch,
+ * checked against exact counts of the same data
+ */
+public class SketchTest {
+
+    @Test
+    public void countMin_neverUnderestimatesAndStaysWithinTheBound() {
+        CountMinSketch sketch = CountMinSketch.create(0.001, 0.01, 10);
+        HashMap<String, Long> exact = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 50000; i++) {
+            // Skewed keys, a few heavy and many light
+            String key = "store" + (int) Math.pow(random.nextInt(1000), 2) / 1000;
+            long count = 1 + random.nextInt(5);
+            sketch.add(key, count);
+            exact.merge(key, count, Long::sum);
+        }
+
+        long total = 0;
+        int overBound = 0;
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            assertTrue(entry.getKey(), estimate >= entry.getValue());
+            if (estimate - entry.getValue() > sketch.getErrorBound()) {
+                overBound++;
+            }
+            total += entry.getValue();
+        }
+        assertEquals(total, sketch.getTotalCount());
+        assertTrue("over bound " + overBound, overBound <= Math.max(1, exact.size() * 0.02));
+    }
+
+    @Test
+    public void countMin_tracksTheHeaviestKeys() {
+        CountMinSketch sketch = new CountMinSketch(1000, 5, 3);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("light" + i, 1);
+        }
+        sketch.add("heavy1", 500);
+        sketch.add("heavy2", 300);
+        sketch.add("heavy3", 200);
+
+        List<Map.Entry<String, Long>> heavy = sketch.getHeavyHitters();
+        assertEquals(3, heavy.size());
+        assertEquals("heavy1", heavy.get(0).getKey());
+        assertEquals("heavy2", heavy.get(1).getKey());
+        assertEquals("heavy3", heavy.get(2).getKey());
+    }
+
+    @Test
+    public void countMin_mergeAddsTheCounts() {
+        CountMinSketch a = new CountMinSketch(500, 4, 5);
+        CountMinSketch b = new CountMinSketch(500, 4, 5);
+        a.add("pizzeria", 10);
+        b.add("pizzeria", 7);
+        b.add("sushi", 40);
+
+        a.merge(b);
+
+        assertTrue(a.estimate("pizzeria") >= 17);
+        assertTrue(a.estimate("sushi") >= 40);
+        assertEquals(57, a.getTotalCount());
+        assertEquals("sushi", a.getHeavyHitters().get(0).getKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countMin_mergeRejectsOtherDimensions() {
+        new CountMinSketch(100, 4, 0).merge(new CountMinSketch(200, 4, 0));
+    }
+
+    @Test
+    public void hyperLogLog_estimatesWithinThreeStandardErrors() {
+        for (int distinct : new int[]{10, 1000, 100000}) {
+            HyperLogLog counter = new HyperLogLog(10);
+            for (int i = 0; i < distinct; i++) {
+                counter.add("customer" + i + "@example.com");
+                // Repeats do not count
+                counter.add("customer" + i + "@example.com");
+            }
+            double error = Math.abs(counter.estimate() - distinct) / (double) distinct;
+            assertTrue(distinct + " estimated " + counter.estimate(), error <= 3 * counter.getRelativeError());
+        }
+    }
+
+    @Test
+    public void hyperLogLog_mergeCountsTheUnionOnce() {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        for (int i = 0; i < 6000; i++) {
+            a.add("key" + i);
+        }
+        for (int i = 4000; i < 10000; i++) {
+            b.add("key" + i);
+        }
+
+        long estimate = a.merge(b).estimate();
+
+        assertEquals(10000, estimate, 10000 * 3 * a.getRelativeError());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hyperLogLog_rejectsPrecisionOutOfRange() {
+        new HyperLogLog(3);
+    }
+
+    @Test
+    public void tDigest_quantilesAreCloseInRank() {
+        TDigest digest = new TDigest(100);
+        double[] values = new double[100000];
+        Random random = new Random(3);
+        for (int i = 0; i < values.length; i++) {
+            // Purchase amounts, skewed to the right
+            values[i] = Math.exp(random.nextGaussian()) * 20;
+            digest.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            double estimate = digest.quantile(q);
+            int rank = Arrays.binarySearch(values, estimate);
+            rank = rank >= 0 ? rank : -rank - 1;
+            assertEquals("q " + q, q, rank / (double) values.length, 0.01);
+        }
+        assertEquals(values[0], digest.quantile(0), 0);
+        assertEquals(values[values.length - 1], digest.quantile(1), 0);
+        assertEquals(values.length, digest.size());
+        assertTrue(digest.getCentroidCount() <= 100);
+    }
+
+    @Test
+    public void tDigest_mergeMatchesOneDigestOfAllValues() throws Exception {
+        TDigest a = new TDigest(100);
+        TDigest b = new TDigest(100);
+        for (int i = 0; i < 10000; i++) {
+            a.add(i);
+            b.add(10000 + i);
+        }
+
+        TDigest merged = a.merge((TDigest) SerializationCompatibilityTest.roundTrip(b));
+
+        assertEquals(20000, merged.size());
+        assertEquals(10000, merged.quantile(0.5), 200);
+        assertEquals(0, merged.quantile(0), 0);
+        assertEquals(19999, merged.quantile(1), 0);
+    }
+
+    @Test
+    public void tDigest_emptyHasNoQuantile() {
+        assertTrue(Double.isNaN(new TDigest(100).quantile(0.5)));
+    }
+
+    private static Purchase purchase(String email, Product... products) {
+        return new Purchase("customer", email, new ArrayList<>(Arrays.asList(products)));
+    }
+
+    @Test
+    public void categorySketch_countsOnlyItsCategory() {
+        CategorySketch sketch = new CategorySketch("pizza");
+        sketch.add("Pizza Fan", purchase("a@example.com",
+                new Product("Margherita", "Pizza", 2, 8.0),
+                new Product("Cola", "Drinks", 3, 1.5)));
+        sketch.add("Pizza Fan", purchase("B@example.com ",
+                new Product("Pepperoni", "pizza", 1, 10.0)));
+        sketch.add("Sushi Bar", purchase("a@example.com",
+                new Product("Maki", "Sushi", 4, 5.0)));
+
+        assertEquals(2, sketch.getPurchaseCount());
+        assertEquals(3, sketch.getTotalQuantity());
+        assertEquals(3, sketch.estimateStoreQuantity("Pizza Fan"));
+        assertEquals(0, sketch.estimateStoreQuantity("Sushi Bar"));
+        assertEquals(2, sketch.estimateProductQuantity("Margherita"));
+        assertEquals(2, sketch.estimateDistinctCustomers("Pizza Fan"));
+        assertEquals(0, sketch.estimateDistinctCustomers("Sushi Bar"));
+        assertEquals(16.0, sketch.spendQuantile(1), 1e-9);
+    }
+
+    @Test
+    public void categorySketch_mergesWorkersAndRanksStores() throws Exception {
+        CategorySketch worker1 = new CategorySketch("pizza");
+        CategorySketch worker2 = new CategorySketch("pizza");
+        worker1.add("Pizza Fan", purchase("a@example.com", new Product("Margherita", "pizza", 5, 8.0)));
+        worker1.add("Napoli", purchase("b@example.com", new Product("Marinara", "pizza", 2, 7.0)));
+        worker2.add("Pizza Fan", purchase("c@example.com", new Product("Margherita", "pizza", 1, 8.0)));
+        worker2.add("Roma", purchase("a@example.com", new Product("Diavola", "pizza", 4, 9.0)));
+
+        CategorySketch merged = worker1.merge((CategorySketch) SerializationCompatibilityTest.roundTrip(worker2));
+        TopKResult top = merged.topStores(new TopKRequest("pizza", 2, true, 0));
+
+        assertEquals(12, top.getTotalSales());
+        assertEquals(2, top.size());
+        assertEquals("Pizza Fan", top.getStoreName(0));
+        assertEquals(6, top.getQuantity(0));
+        assertEquals("Roma", top.getStoreName(1));
+        assertEquals(2, merged.estimateDistinctCustomers("Pizza Fan"));
+        assertEquals("Margherita", merged.topProducts().get(0).getKey());
+        assertEquals(4, merged.getPurchaseCount());
+    }
+
+    @Test
+    public void serialVersionUIDs_areKept() {
+        assertEquals(1630188065920831199L, ObjectStreamClass.lookup(CategorySketch.class).getSerialVersionUID());
+        assertEquals(-1866079035922648259L, ObjectStreamClass.lookup(CountMinSketch.class).getSerialVersionUID());
+        assertEquals(607051114963566835L, ObjectStreamClass.lookup(HyperLogLog.class).getSerialVersionUID());
+        assertEquals(5825794022703783379L, ObjectStreamClass.lookup(TDigest.class).getSerialVersionUID());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.myapplication;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark of StoreRating from a plain JVM.
+ *
+ *   java com.example.myapplication.StoreRatingBenchmark 16 2
+ *
+ * All threads add reviews to one store, the worst case, for the given number of
+ * seconds per run, with 1, 2, 4... up to the given number of threads. StoreRating is
+ * compared with a synchronized sum and count and with one AtomicLong updated by
+ * compare-and-set, and the snapshots are checked against the reviews added.
+ */
+public final class StoreRatingBenchmark {
+
+    /**
+     * One way of counting reviews
+     */
+    private interface Counter {
+        void addReview(double stars);
+
+        StoreRating.Snapshot snapshot();
+    }
+
+    private static final class Synchronized implements Counter {
+        private long hundredths;
+        private int count;
+
+        @Override
+        public synchronized void addReview(double stars) {
+            hundredths += Math.round(stars * 100);
+            count++;
+        }
+
+        @Override
+        public synchronized StoreRating.Snapshot snapshot() {
+            return new StoreRating.Snapshot(count != 0 ? hundredths / 100.0 / count : 0.0, count);
+        }
+    }
+
+    private static final class CompareAndSet implements Counter {
+        private final AtomicLong packed = new AtomicLong();
+
+        @Override
+        public void addReview(double stars) {
+            long delta = (Math.round(stars * 100) << StoreRating.COUNT_BITS) + 1;
+            long current;
+            do {
+                current = packed.get();
+            } while (!packed.compareAndSet(current, current + delta));
+        }
+
+        @Override
+        public StoreRating.Snapshot snapshot() {
+            long value = packed.get();
+            int count = (int) (value & StoreRating.COUNT_MASK);
+            return new StoreRating.Snapshot(count != 0 ? (value >>> StoreRating.COUNT_BITS) / 100.0 / count : 0.0, count);
+        }
+    }
+
+    private StoreRatingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 2 * Runtime.getRuntime().availableProcessors();
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + seconds + " s per run");
+
+        List<String> names = Arrays.asList("synchronized", "compareAndSet", "StoreRating");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            StringBuilder line = new StringBuilder(String.format("%3d threads", threads));
+            for (String name : names) {
+                Counter counter = counter(name);
+                long reviews = run(counter, threads, seconds);
+                StoreRating.Snapshot snapshot = counter.snapshot();
+                if (snapshot.getNoOfReviews() != reviews) {
+                    throw new IllegalStateException(name + " counted " + snapshot.getNoOfReviews() + " of " + reviews);
+                }
+                line.append(String.format("  %s %8.1f M/s", name, reviews / seconds / 1e6));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static Counter counter(String name) {
+        switch (name) {
+            case "synchronized":
+                return new Synchronized();
+            case "compareAndSet":
+                return new CompareAndSet();
+            default:
+                final StoreRating rating = new StoreRating();
+                return new Counter() {
+                    @Override
+                    public void addReview(double stars) {
+                        rating.addReview(stars);
+                    }
+
+                    @Override
+                    public StoreRating.Snapshot snapshot() {
+                        return rating.snapshot();
+                    }
+                };
+        }
+    }
+
+    /**
+     * @return Reviews added by all threads
+     */
+    private static long run(final Counter counter, int threads, double seconds) throws InterruptedException {
+        final LongAdder added = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long end = System.nanoTime() + (long) (seconds * 1e9);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < end) {
+                    // Checking the clock every review would cost more than the review
+                    for (int j = 0; j < 1000; j++) {
+                        counter.addReview(1 + random.nextInt(5));
+                    }
+                    count += 1000;
+                }
+                added.add(count);
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return added.sum();
+    }
+}
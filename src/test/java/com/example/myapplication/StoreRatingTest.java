@@ -0,0 +1,116 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sums, counts and snapshots of StoreRating, alone and under concurrent reviews
+ */
+public class StoreRatingTest {
+
+    @Test
+    public void startsFromTheStoreRating() {
+        Store store = new Store("Pizza Fan", 0, 0, "pizza", 4.5, 10, "", new ArrayList<Product>());
+        StoreRating rating = StoreRating.of(store);
+
+        rating.addReview(1.0);
+        StoreRating.Snapshot snapshot = rating.applyTo(store);
+
+        assertEquals(11, snapshot.getNoOfReviews());
+        assertEquals(46.0 / 11, snapshot.getStars(), 1e-9);
+        assertEquals(11, store.getNoOfReviews());
+        assertEquals(46.0 / 11, store.getStars(), 1e-9);
+    }
+
+    @Test
+    public void noReviews_hasNoStars() {
+        StoreRating.Snapshot snapshot = new StoreRating().snapshot();
+        assertEquals(0, snapshot.getNoOfReviews());
+        assertEquals(0.0, snapshot.getStars(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void starsAboveTheMaximum_areRejected() {
+        new StoreRating().addReview(5.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notANumber_isRejected() {
+        new StoreRating().addReview(Double.NaN);
+    }
+
+    @Test
+    public void reviewsPastTheMaximum_areRefusedWithoutTouchingTheRating() {
+        StoreRating rating = new StoreRating(5.0, (int) StoreRating.MAX_REVIEWS - 1);
+        rating.addReview(5.0);
+
+        try {
+            rating.addReview(5.0);
+            fail("Expected the review to be refused");
+        } catch (IllegalStateException e) {
+            // Full
+        }
+        StoreRating.Snapshot snapshot = rating.snapshot();
+        assertEquals(StoreRating.MAX_REVIEWS, snapshot.getNoOfReviews());
+        assertEquals(5.0, snapshot.getStars(), 1e-9);
+    }
+
+    @Test
+    public void fullRating_keepsRoomForConcurrentAdds() {
+        // The most the count can reach, every racing add past the check included
+        long highest = StoreRating.MAX_REVIEWS + StoreRating.MAX_CONCURRENT_ADDS;
+        assertEquals(StoreRating.COUNT_MASK, highest);
+        assertTrue(highest * Math.round(StoreRating.MAX_STARS * 100) < 1L << (64 - StoreRating.COUNT_BITS));
+    }
+
+    @Test
+    public void concurrentReviews_snapshotsPairSumAndCount() throws Exception {
+        final StoreRating rating = new StoreRating();
+        final int threads = 4;
+        final int reviewsPerThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean inconsistent = new AtomicBoolean();
+        ArrayList<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            // Half the threads give 5 stars, half give 1, so every consistent average lies between
+            final double stars = t % 2 == 0 ? 5.0 : 1.0;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < reviewsPerThread; i++) {
+                    rating.addReview(stars);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        Thread reader = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                StoreRating.Snapshot snapshot = rating.snapshot();
+                if (snapshot.getNoOfReviews() > 0 && (snapshot.getStars() < 1.0 || snapshot.getStars() > 5.0)) {
+                    inconsistent.set(true);
+                }
+            }
+        });
+        reader.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.interrupt();
+        reader.join();
+
+        StoreRating.Snapshot snapshot = rating.snapshot();
+        assertFalse(inconsistent.get());
+        assertEquals(threads * reviewsPerThread, snapshot.getNoOfReviews());
+        assertEquals(3.0, snapshot.getStars(), 1e-9);
+    }
+}
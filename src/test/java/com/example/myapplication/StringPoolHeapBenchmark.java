@@ -0,0 +1,84 @@
+package com.example.myapplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+/**
+ * Heap retained by deserialized products with their strings pooled, from a plain JVM.
+ *
+ *   java com.example.myapplication.StringPoolHeapBenchmark 100000
+ *
+ * Deserializes the products from a stream reset every 100 objects, the way separate
+ * responses arrive, so every response carries its own copy of each name. Prints the
+ * heap the products retain, the heap the name and category copies would take without
+ * the pool, and the pool size once the products are dropped.
+ */
+public final class StringPoolHeapBenchmark {
+
+    private StringPoolHeapBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        byte[] stream = write(count);
+        // Heap without the stream, which is dropped once read
+        long start = usedHeap() - stream.length;
+        int poolBefore = StringPool.size();
+        ArrayList<Product> products = read(stream, count);
+        stream = null;
+        long pooled = usedHeap() - start;
+
+        // What each product would hold on its own: its own name and category copies
+        ArrayList<String> copies = new ArrayList<>(2 * count);
+        for (Product product : products) {
+            copies.add(new String(product.getName().toCharArray()));
+            copies.add(new String(product.getCategory().toCharArray()));
+        }
+        long withCopies = usedHeap() - start;
+
+        System.out.printf("%d products: %.1f MB retained with pooled strings, %.1f MB more for %d unpooled copies%n",
+                products.size(), pooled / 1e6, (withCopies - pooled) / 1e6, copies.size());
+        System.out.println("Pooled strings: " + (StringPool.size() - poolBefore));
+
+        products = null;
+        copies = null;
+        usedHeap();
+        System.out.println("Pooled strings after the products are dropped: " + (StringPool.size() - poolBefore));
+    }
+
+    private static byte[] write(int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (int i = 0; i < count; i++) {
+                if (i % 100 == 0) {
+                    out.reset();
+                }
+                out.writeObject(new Product("Product " + (i % 1000), "Category " + (i % 20), i % 7 + 1, 2.5));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ArrayList<Product> read(byte[] stream, int count) throws IOException, ClassNotFoundException {
+        ArrayList<Product> products = new ArrayList<>(count);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stream))) {
+            for (int i = 0; i < count; i++) {
+                products.add((Product) in.readObject());
+            }
+        }
+        return products;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * StringPool shares equal strings and lets go of the ones nobody uses
+ */
+public class StringPoolTest {
+
+    @Test
+    public void equalStrings_shareOneInstance() {
+        String first = StringPool.intern(new String("Pizza Fan"));
+        String second = StringPool.intern(new String("Pizza Fan"));
+
+        assertSame(first, second);
+        assertNull(StringPool.intern(null));
+    }
+
+    @Test
+    public void unusedStrings_areDropped() throws InterruptedException {
+        int before = StringPool.size();
+        WeakReference<String> pooled = new WeakReference<>(StringPool.intern(new String("Closed store " + System.nanoTime())));
+        for (int i = 0; i < 10000; i++) {
+            StringPool.intern("store " + i + " " + System.nanoTime());
+        }
+
+        for (int attempt = 0; attempt < 50 && (pooled.get() != null || StringPool.size() > before + 100); attempt++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(pooled.get());
+        assertTrue(StringPool.size() <= before + 100);
+    }
+}
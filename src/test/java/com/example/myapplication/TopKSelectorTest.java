@@ -0,0 +1,96 @@
+package com.example.myapplication;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ranking of TopKSelector against a full sort of the same stores
+ */
+public class TopKSelectorTest {
+
+    private static HashMap<String, Integer> sales(Object... storeAndQuantity) {
+        HashMap<String, Integer> sales = new HashMap<>();
+        for (int i = 0; i < storeAndQuantity.length; i += 2) {
+            sales.put((String) storeAndQuantity[i], (Integer) storeAndQuantity[i + 1]);
+        }
+        return sales;
+    }
+
+    @Test
+    public void descending_returnsLargestFirst() {
+        TopKResult result = TopKSelector.select(sales("a", 5, "b", 9, "c", 1, "d", 7),
+                new TopKRequest("pizza", 3, true, 0));
+
+        assertEquals(3, result.size());
+        assertEquals("b", result.getStoreName(0));
+        assertEquals("d", result.getStoreName(1));
+        assertEquals("a", result.getStoreName(2));
+        assertEquals(9, result.getQuantity(0));
+        assertEquals(22, result.getTotalSales());
+        assertEquals(4, result.getMatchingStores());
+    }
+
+    @Test
+    public void ascending_returnsSmallestFirst() {
+        TopKResult result = TopKSelector.select(sales("a", 5, "b", 9, "c", 1, "d", 7),
+                new TopKRequest("pizza", 2, false, 0));
+
+        assertEquals(2, result.size());
+        assertEquals("c", result.getStoreName(0));
+        assertEquals("a", result.getStoreName(1));
+    }
+
+    @Test
+    public void ties_areRankedByStoreName() {
+        TopKResult result = TopKSelector.select(sales("c", 4, "a", 4, "b", 4),
+                new TopKRequest("pizza", 2, true, 0));
+
+        assertEquals("a", result.getStoreName(0));
+        assertEquals("b", result.getStoreName(1));
+    }
+
+    @Test
+    public void minQuantity_filtersRankingButNotTotal() {
+        TopKResult result = TopKSelector.select(sales("a", 1, "b", 2, "c", 3),
+                new TopKRequest("pizza", 10, true, 2));
+
+        assertEquals(2, result.size());
+        assertEquals(2, result.getMatchingStores());
+        assertEquals(6, result.getTotalSales());
+    }
+
+    @Test
+    public void zeroK_countsMatchesOnly() {
+        TopKResult result = TopKSelector.select(sales("a", 1, "b", 2),
+                new TopKRequest("pizza", 0, true, 0));
+
+        assertEquals(0, result.size());
+        assertEquals(2, result.getMatchingStores());
+    }
+
+    @Test
+    public void randomStores_matchFullSort() {
+        Random random = new Random(42);
+        HashMap<String, Integer> sales = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            sales.put("store" + i, random.nextInt(50));
+        }
+        TopKResult result = TopKSelector.select(sales, new TopKRequest("pizza", 25, true, 0));
+
+        String[] sorted = sales.keySet().stream()
+                .sorted((a, b) -> {
+                    int cmp = Integer.compare(sales.get(b), sales.get(a));
+                    return cmp != 0 ? cmp : a.compareTo(b);
+                })
+                .limit(25)
+                .toArray(String[]::new);
+        assertEquals(25, result.size());
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(sorted[i], result.getStoreName(i));
+        }
+    }
+}